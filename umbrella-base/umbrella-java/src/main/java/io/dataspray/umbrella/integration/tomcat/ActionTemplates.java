@@ -0,0 +1,109 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Actions defined once in the config and referenced by name from event responses.
+ * <p>
+ * Templates are copied and made unmodifiable when a config is accepted. A response naming a template
+ * without overriding anything resolves to the very same instance on every request, so integrations can
+ * cache whatever they derive from it, e.g. servlet cookies, by identity.
+ */
+class ActionTemplates {
+
+    static final ActionTemplates EMPTY = new ActionTemplates(Collections.emptyMap());
+
+    private final Map<String, HttpAction> templates;
+
+    private ActionTemplates(Map<String, HttpAction> templates) {
+        this.templates = templates;
+    }
+
+    static ActionTemplates create(Map<String, HttpAction> templates) {
+        if (templates == null || templates.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, HttpAction> prepared = new HashMap<>();
+        templates.forEach((templateId, template) -> prepared.put(templateId, new HttpAction()
+                .templateId(templateId)
+                .requestProcess(template.getRequestProcess())
+                .responseStatus(template.getResponseStatus())
+                .requestMetadata(unmodifiable(template.getRequestMetadata()))
+                .responseHeaders(unmodifiable(template.getResponseHeaders()))
+                .responseCookies(template.getResponseCookies() == null ? List.of() : List.copyOf(template.getResponseCookies()))
+                .verdictTtlSeconds(template.getVerdictTtlSeconds())));
+        return new ActionTemplates(Map.copyOf(prepared));
+    }
+
+    int size() {
+        return templates.size();
+    }
+
+    /**
+     * @return the action with unset fields taken from its template, the action itself if it does not name
+     * one, or empty if the named template is unknown
+     */
+    Optional<HttpAction> resolve(HttpAction action) {
+        if (action.getTemplateId() == null) {
+            return Optional.of(action);
+        }
+        HttpAction template = templates.get(action.getTemplateId());
+        if (template == null) {
+            return Optional.empty();
+        }
+        if (action.getRequestProcess() == template.getRequestProcess()
+            && action.getResponseStatus() == null
+            && isEmpty(action.getRequestMetadata())
+            && isEmpty(action.getResponseHeaders())
+            && (action.getResponseCookies() == null || action.getResponseCookies().isEmpty())
+            && action.getVerdictTtlSeconds() == null) {
+            return Optional.of(template);
+        }
+        return Optional.of(new HttpAction()
+                .templateId(template.getTemplateId())
+                .requestProcess(action.getRequestProcess() != null ? action.getRequestProcess() : template.getRequestProcess())
+                .responseStatus(action.getResponseStatus() != null ? action.getResponseStatus() : template.getResponseStatus())
+                .requestMetadata(isEmpty(action.getRequestMetadata()) ? template.getRequestMetadata() : action.getRequestMetadata())
+                .responseHeaders(isEmpty(action.getResponseHeaders()) ? template.getResponseHeaders() : action.getResponseHeaders())
+                .responseCookies(action.getResponseCookies() == null || action.getResponseCookies().isEmpty()
+                        ? template.getResponseCookies()
+                        : action.getResponseCookies())
+                .verdictTtlSeconds(action.getVerdictTtlSeconds() != null ? action.getVerdictTtlSeconds() : template.getVerdictTtlSeconds()));
+    }
+
+    private static boolean isEmpty(Map<String, String> map) {
+        return map == null || map.isEmpty();
+    }
+
+    private static Map<String, String> unmodifiable(Map<String, String> map) {
+        return map == null ? Map.of() : Map.copyOf(map);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks per-IP behavior over fixed windows and attaches it to each event as {@code HttpMetadata.clientRequests},
+ * {@code clientDistinctUris} and {@code clientDistinctUserAgents}.
+ * <p>
+ * Request counts come from a {@link CountMinSketch} shared by all IPs. Distinct URIs and User-Agents are
+ * counted with a pair of {@link HyperLogLog}s, kept only for the first clients of a window to reach
+ * {@value #MIN_REQUESTS_TO_TRACK} requests, so memory stays bounded no matter how many IPs are seen. Those
+ * counts start once a client is tracked. Nothing here locks.
+ */
+class BehaviorTracker {
+
+    static final int DEFAULT_MAX_CLIENTS = 1024;
+    static final long MIN_REQUESTS_TO_TRACK = 4L;
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SKETCH_STRIPES = 4;
+
+    private final AtomicReference<Window> window;
+
+    BehaviorTracker(long nowMs) {
+        this.window = new AtomicReference<>(new Window(nowMs));
+    }
+
+    /**
+     * Counts the request and sets the behavior fields on it.
+     */
+    void track(HttpMetadata data, long windowMs, int maxClients, long nowMs) {
+        if (data.getIp() == null) {
+            return;
+        }
+        Window current = currentWindow(windowMs, nowMs);
+        long requests = current.requests.increment(mix(data.getIp().hashCode()));
+        data.setClientRequests(requests);
+
+        Client client = current.clients.get(data.getIp());
+        if (client == null
+            && requests >= MIN_REQUESTS_TO_TRACK
+            && current.admitted.get() < maxClients
+            && current.admitted.incrementAndGet() <= maxClients) {
+            client = current.clients.computeIfAbsent(data.getIp(), ip -> new Client());
+        }
+        if (client != null) {
+            if (data.getUri() != null) {
+                client.uris.add(mix(data.getUri().hashCode()));
+            }
+            if (data.gethUserAgent() != null) {
+                client.userAgents.add(mix(data.gethUserAgent().hashCode()));
+            }
+            data.setClientDistinctUris(client.uris.estimate());
+            data.setClientDistinctUserAgents(client.userAgents.estimate());
+        }
+    }
+
+    /**
+     * @return Number of clients whose distinct URIs and User-Agents are counted in the current window
+     */
+    int size() {
+        return window.get().clients.size();
+    }
+
+    private Window currentWindow(long windowMs, long nowMs) {
+        Window current = window.get();
+        if (nowMs >= current.startMs && nowMs - current.startMs < windowMs) {
+            return current;
+        }
+        Window next = new Window(nowMs);
+        return window.compareAndSet(current, next) ? next : window.get();
+    }
+
+    /** Murmur3 finalizer, spreads a weak hash such as {@link String#hashCode} over all 64 bits */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class Window {
+        private final long startMs;
+        private final CountMinSketch requests = new CountMinSketch(SKETCH_WIDTH, SKETCH_STRIPES);
+        private final ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap<>();
+        private final AtomicInteger admitted = new AtomicInteger();
+
+        private Window(long startMs) {
+            this.startMs = startMs;
+        }
+    }
+
+    private static class Client {
+        private final HyperLogLog uris = new HyperLogLog();
+        private final HyperLogLog userAgents = new HyperLogLog();
+    }
+}
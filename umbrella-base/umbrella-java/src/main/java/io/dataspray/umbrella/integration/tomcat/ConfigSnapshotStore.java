@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.JSON;
+import io.dataspray.umbrella.client.model.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Persists the last accepted {@link Config} so a restarted node can resume in its last known mode
+ * without waiting for the first ping.
+ * <p>
+ * File layout is a single header line {@code umbrella-config-v1 <crc32c>} followed by the config JSON.
+ * Writes go to a temporary file in the same directory which is then atomically moved into place, so
+ * readers never observe a partially written snapshot.
+ */
+class ConfigSnapshotStore {
+
+    private static final Logger log = Logger.getLogger(ConfigSnapshotStore.class.getCanonicalName());
+    private static final String HEADER_PREFIX = "umbrella-config-v1 ";
+    private final Path path;
+
+    ConfigSnapshotStore(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    Optional<Config> load() {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException ex) {
+            log.log(Level.FINE, "No Umbrella config snapshot found at {0}", path);
+            return Optional.empty();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Failed to read Umbrella config snapshot " + path, ex);
+            return Optional.empty();
+        }
+
+        int headerEnd = indexOf(bytes, (byte) '\n');
+        String header = headerEnd < 0 ? "" : new String(bytes, 0, headerEnd, StandardCharsets.UTF_8);
+        if (!header.startsWith(HEADER_PREFIX)) {
+            log.log(Level.WARNING, "Ignoring Umbrella config snapshot {0} with unrecognized header", path);
+            return Optional.empty();
+        }
+        byte[] body = Arrays.copyOfRange(bytes, headerEnd + 1, bytes.length);
+        if (!header.substring(HEADER_PREFIX.length()).equals(checksum(body))) {
+            log.log(Level.WARNING, "Ignoring corrupted Umbrella config snapshot {0}", path);
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.ofNullable(JSON.getGson().fromJson(new String(body, StandardCharsets.UTF_8), Config.class));
+        } catch (RuntimeException ex) {
+            log.log(Level.WARNING, "Failed to parse Umbrella config snapshot " + path, ex);
+            return Optional.empty();
+        }
+    }
+
+    void save(Config config) throws IOException {
+        byte[] body = JSON.getGson().toJson(config).getBytes(StandardCharsets.UTF_8);
+        byte[] header = (HEADER_PREFIX + checksum(body) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmpPath = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(header.length + body.length)
+                        .put(header)
+                        .put(body);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private static String checksum(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
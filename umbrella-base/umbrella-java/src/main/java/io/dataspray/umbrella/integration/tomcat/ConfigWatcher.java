@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiCallback;
+import io.dataspray.umbrella.client.ApiException;
+import io.dataspray.umbrella.client.HealthApi;
+import io.dataspray.umbrella.client.model.Config;
+import okhttp3.Call;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-polls the config endpoint so config changes reach this node within seconds instead of on the
+ * next ping. The ETag of the last watched config is sent as If-None-Match, so an unchanged config is
+ * answered with a 304 once the server-side wait elapses. Until the watch has received a config, or once a
+ * ping has moved the config on, the quoted config version stands in for the ETag.
+ * <p>
+ * Requests are issued asynchronously so no thread is held while waiting, each to the currently best
+ * endpoint. If the server does not support watching, the watcher stops and the node relies on pings alone.
+ */
+class ConfigWatcher implements ApiCallback<Config> {
+
+    private static final Logger log = Logger.getLogger(ConfigWatcher.class.getCanonicalName());
+    static final long WAIT_SECONDS = 55L;
+    private static final long MIN_POLL_INTERVAL_MS = 1_000L;
+    private static final long MAX_BACKOFF_MS = 60_000L;
+    private final HealthApi healthApi;
+    private final String orgName;
+    private final Supplier<String> nodeIdentifier;
+    private final ScheduledExecutorService executor;
+    private final Supplier<String> endpointUrl;
+    private final Supplier<Config> currentConfig;
+    private final Consumer<Config> onConfig;
+    private volatile boolean running;
+    private volatile Call call;
+    private volatile long pollStartedAt;
+    /** Only set if the server returned an ETag with the last watched config */
+    private volatile String etag;
+    /** Config version the ETag was returned with */
+    private volatile String etagVersion;
+    private long backoffMs = MIN_POLL_INTERVAL_MS;
+
+    ConfigWatcher(
+            HealthApi healthApi,
+            String orgName,
+            Supplier<String> nodeIdentifier,
+            ScheduledExecutorService executor,
+            Supplier<String> endpointUrl,
+            Supplier<Config> currentConfig,
+            Consumer<Config> onConfig) {
+        this.healthApi = healthApi;
+        this.orgName = orgName;
+        this.nodeIdentifier = nodeIdentifier;
+        this.executor = executor;
+        this.endpointUrl = endpointUrl;
+        this.currentConfig = currentConfig;
+        this.onConfig = onConfig;
+    }
+
+    void start() {
+        running = true;
+        poll();
+    }
+
+    void stop() {
+        running = false;
+        Call inFlight = call;
+        if (inFlight != null) {
+            inFlight.cancel();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void poll() {
+        if (!running) {
+            return;
+        }
+        String version = currentConfig.get().getVersion();
+        pollStartedAt = System.currentTimeMillis();
+        healthApi.setCustomBaseUrl(endpointUrl.get());
+        try {
+            call = healthApi.nodeConfigAsync(
+                    orgName,
+                    nodeIdentifier.get(),
+                    WAIT_SECONDS,
+                    getIfNoneMatch(version),
+                    this);
+        } catch (ApiException ex) {
+            onFailure(ex, ex.getCode(), ex.getResponseHeaders());
+        }
+    }
+
+    private String getIfNoneMatch(String version) {
+        if (version == null) {
+            return null;
+        }
+        String currentEtag = etag;
+        if (currentEtag != null && version.equals(etagVersion)) {
+            return currentEtag;
+        }
+        return "\"" + version + "\"";
+    }
+
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onSuccess(Config result, int statusCode, Map<String, List<String>> responseHeaders) {
+        if (!running) {
+            return;
+        }
+        if (result.getVersion() == null) {
+            log.log(Level.INFO, "Umbrella server does not version config, relying on pings for config changes");
+            running = false;
+            return;
+        }
+        log.log(Level.FINE, "Received Umbrella config version {0}", result.getVersion());
+        etag = getHeader(responseHeaders, "ETag");
+        etagVersion = result.getVersion();
+        onConfig.accept(result);
+        backoffMs = MIN_POLL_INTERVAL_MS;
+        pollAfterMinInterval();
+    }
+
+    @Override
+    public void onFailure(ApiException ex, int statusCode, Map<String, List<String>> responseHeaders) {
+        if (!running) {
+            return;
+        }
+        if (statusCode == 304) {
+            backoffMs = MIN_POLL_INTERVAL_MS;
+            pollAfterMinInterval();
+            return;
+        }
+        if (statusCode == 404 || statusCode == 501) {
+            log.log(Level.INFO, "Umbrella server does not support config watching, relying on pings for config changes");
+            running = false;
+            return;
+        }
+        log.log(Level.FINE, "Failed to watch Umbrella config, retrying in " + backoffMs + "ms", ex);
+        schedulePoll(backoffMs);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+    }
+
+    /**
+     * Guards against a server that answers immediately instead of holding the request.
+     */
+    private void pollAfterMinInterval() {
+        long elapsedMs = System.currentTimeMillis() - pollStartedAt;
+        if (elapsedMs >= MIN_POLL_INTERVAL_MS) {
+            poll();
+        } else {
+            schedulePoll(MIN_POLL_INTERVAL_MS - elapsedMs);
+        }
+    }
+
+    private void schedulePoll(long delayMs) {
+        try {
+            executor.schedule(this::poll, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            running = false;
+        }
+    }
+
+    @Override
+    public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+    }
+
+    @Override
+    public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+    }
+}
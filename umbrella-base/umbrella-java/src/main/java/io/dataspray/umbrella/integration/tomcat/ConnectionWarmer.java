@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a minimum number of connections to the best endpoint open so BLOCKING checks after a quiet period
+ * do not pay for DNS, TCP and TLS setup within the caller's request.
+ * <p>
+ * Every interval, that many HEAD requests are issued at once. Concurrent requests each take their own
+ * connection, so idle connections are reused, which resets their idle timers, and any missing ones are
+ * opened. Connections the server or a load balancer has closed in the meantime are replaced here rather
+ * than on the next user request. The response status is irrelevant, any answer keeps the connection open.
+ * <p>
+ * The client's connection pool evicts a connection once it has been idle for the pool's keep-alive, so the
+ * interval is capped at half of it. Each warm connection is then reused at least once before its idle timer
+ * can run out, even if one round is delayed or fails, and the pool never closes the connections we keep.
+ */
+class ConnectionWarmer {
+
+    private static final Logger log = Logger.getLogger(ConnectionWarmer.class.getCanonicalName());
+    private static final long WARM_CALL_TIMEOUT_SECONDS = 10L;
+    private final OkHttpClient httpClient;
+    private final int minConnections;
+    private final long intervalMs;
+    private final ScheduledExecutorService executor;
+    private final Supplier<String> endpointUrl;
+    private final BooleanSupplier active;
+    private final LongAdder sent;
+    private final LongAdder failed;
+    private volatile ScheduledFuture<?> schedule;
+
+    ConnectionWarmer(
+            OkHttpClient httpClient,
+            int minConnections,
+            long intervalMs,
+            long poolKeepAliveMs,
+            ScheduledExecutorService executor,
+            Supplier<String> endpointUrl,
+            BooleanSupplier active,
+            UmbrellaMetrics metrics) {
+        this.httpClient = httpClient.newBuilder()
+                .callTimeout(WARM_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.minConnections = minConnections;
+        this.intervalMs = Math.max(1L, Math.min(intervalMs, poolKeepAliveMs / 2));
+        this.executor = executor;
+        this.endpointUrl = endpointUrl;
+        this.active = active;
+        this.sent = metrics.counter("keepWarm.sent");
+        this.failed = metrics.counter("keepWarm.failed");
+    }
+
+    long getIntervalMs() {
+        return intervalMs;
+    }
+
+    void start() {
+        try {
+            schedule = executor.scheduleWithFixedDelay(this::warm, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.log(Level.FINE, "Not keeping Umbrella connections warm, executor is shut down", ex);
+        }
+    }
+
+    void stop() {
+        ScheduledFuture<?> current = schedule;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    void warm() {
+        if (!active.getAsBoolean()) {
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(endpointUrl.get())
+                .head()
+                .build();
+        for (int i = 0; i < minConnections; i++) {
+            sent.increment();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                }
+
+                @Override
+                public void onFailure(Call call, IOException ex) {
+                    failed.increment();
+                    log.log(Level.FINE, "Failed to keep Umbrella connection warm", ex);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Count-Min sketch estimating how often each hash was added, never underestimating.
+ * <p>
+ * Each of the {@value #DEPTH} rows is split into stripes picked by the calling thread, so threads counting the
+ * same hot key mostly update different cache lines. An estimate sums a cell's stripes and takes the minimum
+ * over the rows.
+ */
+class CountMinSketch {
+
+    static final int DEPTH = 4;
+    private final AtomicLongArray counters;
+    private final int width;
+    private final int stripes;
+
+    CountMinSketch(int width, int stripes) {
+        if (width < 1 || Integer.bitCount(width) != 1 || stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Count-Min sketch width and stripes must be powers of two, got " + width + " and " + stripes);
+        }
+        this.counters = new AtomicLongArray(width * stripes * DEPTH);
+        this.width = width;
+        this.stripes = stripes;
+    }
+
+    /**
+     * Adds one occurrence of the given hash, which must be well mixed.
+     *
+     * @return Estimate including this occurrence
+     */
+    long increment(long hash) {
+        // Stable for the life of the thread, without the deprecated Thread.getId()
+        int stripe = System.identityHashCode(Thread.currentThread()) & (stripes - 1);
+        for (int row = 0; row < DEPTH; row++) {
+            counters.incrementAndGet(index(stripe, row, hash));
+        }
+        return estimate(hash);
+    }
+
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            long count = 0L;
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                count += counters.get(index(stripe, row, hash));
+            }
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+
+    private int index(int stripe, int row, long hash) {
+        // Row positions derived from both halves of the hash, see Kirsch and Mitzenmacher
+        int column = ((int) hash + row * ((int) (hash >>> 32) | 1)) & (width - 1);
+        return (stripe * DEPTH + row) * width + column;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiClient;
+import io.dataspray.umbrella.client.ApiException;
+import io.dataspray.umbrella.client.HealthApi;
+import io.dataspray.umbrella.client.IngestApi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single Umbrella API endpoint along with its observed health.
+ * <p>
+ * Latency is tracked as an exponentially weighted moving average. The error rate is an EWMA as well but
+ * additionally decays with time, so an endpoint that stopped receiving traffic after failing becomes
+ * eligible again once its failures are old enough.
+ * <p>
+ * Both averages are kept in an immutable snapshot swapped in on each update, so scoring endpoints on the
+ * request path never takes a lock.
+ */
+class Endpoint {
+
+    /** Weight of the newest sample in the moving averages */
+    private static final double EWMA_ALPHA = 0.3d;
+    /** Time constant with which the error rate decays towards zero */
+    private static final long ERROR_DECAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    /** How much a fully failing endpoint is penalized compared to a healthy one of the same latency */
+    private static final double ERROR_PENALTY = 20d;
+    /** Endpoints that failed within this window are only used if every other endpoint also did */
+    static final long FAILURE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ApiClient apiClient;
+    private final HealthApi healthApi;
+    private final IngestApi ingestApi;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicReference<Health> health = new AtomicReference<>(new Health(0d, 0d, 0L));
+    private volatile long lastFailureAt;
+    private volatile boolean failedRecently;
+
+    Endpoint(ApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.healthApi = new HealthApi(apiClient);
+        this.ingestApi = new IngestApi(apiClient);
+    }
+
+    String getUrl() {
+        return apiClient.getBasePath();
+    }
+
+    ApiClient getApiClient() {
+        return apiClient;
+    }
+
+    HealthApi getHealthApi() {
+        return healthApi;
+    }
+
+    IngestApi getIngestApi() {
+        return ingestApi;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    void recordSuccess(long latencyNanos) {
+        requests.increment();
+        long now = System.nanoTime();
+        health.updateAndGet(current -> new Health(
+                updatedLatency(current.latencyEwmaMs, latencyNanos),
+                current.decayedErrorRate(now) * (1d - EWMA_ALPHA),
+                now));
+        failedRecently = false;
+    }
+
+    void recordFailure(long latencyNanos) {
+        requests.increment();
+        failures.increment();
+        long now = System.nanoTime();
+        health.updateAndGet(current -> new Health(
+                // A failure that took longer than usual (e.g. a timeout) also tells us the endpoint got slower
+                TimeUnit.NANOSECONDS.toMillis(latencyNanos) > current.latencyEwmaMs
+                        ? updatedLatency(current.latencyEwmaMs, latencyNanos)
+                        : current.latencyEwmaMs,
+                current.decayedErrorRate(now) * (1d - EWMA_ALPHA) + EWMA_ALPHA,
+                now));
+        lastFailureAt = now;
+        failedRecently = true;
+    }
+
+    double getLatencyEwmaMs() {
+        return health.get().latencyEwmaMs;
+    }
+
+    double getErrorRate() {
+        return health.get().decayedErrorRate(System.nanoTime());
+    }
+
+    /**
+     * Lower is better. Endpoints without samples score best so that each endpoint is tried at least once.
+     */
+    double getScore() {
+        Health current = health.get();
+        return Math.max(1d, current.latencyEwmaMs) * (1d + ERROR_PENALTY * current.decayedErrorRate(System.nanoTime()));
+    }
+
+    boolean isCoolingDown(long now) {
+        return failedRecently && now - lastFailureAt < FAILURE_COOLDOWN_NANOS;
+    }
+
+    private static double updatedLatency(double latencyEwmaMs, long latencyNanos) {
+        double latencyMs = latencyNanos / 1_000_000d;
+        return latencyEwmaMs == 0d
+                ? latencyMs
+                : EWMA_ALPHA * latencyMs + (1d - EWMA_ALPHA) * latencyEwmaMs;
+    }
+
+    /**
+     * Whether the failure says something about this endpoint's health rather than about the request.
+     */
+    static boolean isEndpointFailure(ApiException ex) {
+        return ex.getCode() == 0 || ex.getCode() >= 500;
+    }
+
+    private static class Health {
+        private final double latencyEwmaMs;
+        private final double errorRate;
+        private final long errorRateUpdatedAt;
+
+        private Health(double latencyEwmaMs, double errorRate, long errorRateUpdatedAt) {
+            this.latencyEwmaMs = latencyEwmaMs;
+            this.errorRate = errorRate;
+            this.errorRateUpdatedAt = errorRateUpdatedAt;
+        }
+
+        private double decayedErrorRate(long now) {
+            if (errorRate == 0d) {
+                return 0d;
+            }
+            return errorRate * Math.exp(-(double) (now - errorRateUpdatedAt) / ERROR_DECAY_NANOS);
+        }
+    }
+}
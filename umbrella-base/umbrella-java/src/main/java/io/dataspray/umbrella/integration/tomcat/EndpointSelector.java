@@ -0,0 +1,320 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiCallback;
+import io.dataspray.umbrella.client.ApiException;
+import okhttp3.Call;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Routes API calls to the endpoint with the best observed latency and error rate.
+ * <p>
+ * A failed endpoint is avoided for a short cooldown so the very next request goes elsewhere. If the
+ * failure happened before the request reached the server, e.g. the connection was refused, the same
+ * request is retried once on the next best endpoint.
+ * <p>
+ * Calls may also be hedged: if a call is slower than most, an identical one is issued to the next best
+ * endpoint, or on another connection to the same one, and whichever answers first wins.
+ */
+class EndpointSelector {
+
+    private final List<Endpoint> endpoints;
+    private final LongAdder failovers;
+    private final LongAdder hedges;
+    private final LongAdder hedgeWins;
+
+    EndpointSelector(List<Endpoint> endpoints, UmbrellaMetrics metrics) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.failovers = metrics.counter("endpoint.failovers");
+        this.hedges = metrics.counter("hedge.sent");
+        this.hedgeWins = metrics.counter("hedge.wins");
+        for (Endpoint endpoint : this.endpoints) {
+            String prefix = "endpoint[" + endpoint.getUrl() + "].";
+            metrics.gauge(prefix + "latencyEwmaMs", endpoint::getLatencyEwmaMs);
+            metrics.gauge(prefix + "errorRate", endpoint::getErrorRate);
+            metrics.gauge(prefix + "score", endpoint::getScore);
+            metrics.gauge(prefix + "requests", endpoint::getRequests);
+            metrics.gauge(prefix + "failures", endpoint::getFailures);
+        }
+    }
+
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    Endpoint best() {
+        return bestExcluding(null);
+    }
+
+    <T> T call(EndpointCall<T> call) throws ApiException {
+        Endpoint primary = best();
+        try {
+            return call(primary, call);
+        } catch (ApiException ex) {
+            Endpoint secondary;
+            if (!isConnectFailure(ex) || (secondary = bestExcluding(primary)) == null) {
+                throw ex;
+            }
+            failovers.increment();
+            return call(secondary, call);
+        }
+    }
+
+    private <T> T call(Endpoint endpoint, EndpointCall<T> call) throws ApiException {
+        long startedAt = System.nanoTime();
+        try {
+            T result = call.call(endpoint);
+            endpoint.recordSuccess(System.nanoTime() - startedAt);
+            return result;
+        } catch (ApiException ex) {
+            if (Endpoint.isEndpointFailure(ex)) {
+                endpoint.recordFailure(System.nanoTime() - startedAt);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Same as {@link #call(EndpointCall)} but without blocking the calling thread.
+     */
+    <T> CompletableFuture<T> callAsync(AsyncEndpointCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Endpoint primary = best();
+        callAsync(primary, call, future, ex -> {
+            Endpoint secondary;
+            if (!isConnectFailure(ex) || (secondary = bestExcluding(primary)) == null) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            failovers.increment();
+            callAsync(secondary, call, future, future::completeExceptionally);
+        });
+        return future;
+    }
+
+    private <T> void callAsync(Endpoint endpoint, AsyncEndpointCall<T> call, CompletableFuture<T> future, Consumer<ApiException> onFailure) {
+        long startedAt = System.nanoTime();
+        try {
+            call.call(endpoint, new ApiCallback<T>() {
+                @Override
+                public void onFailure(ApiException ex, int statusCode, Map<String, List<String>> responseHeaders) {
+                    if (future.isDone()) {
+                        // Given up on by the caller once its timeout elapsed, and likely cancelled
+                        return;
+                    }
+                    if (Endpoint.isEndpointFailure(ex)) {
+                        endpoint.recordFailure(System.nanoTime() - startedAt);
+                    }
+                    onFailure.accept(ex);
+                }
+
+                @Override
+                public void onSuccess(T result, int statusCode, Map<String, List<String>> responseHeaders) {
+                    endpoint.recordSuccess(System.nanoTime() - startedAt);
+                    future.complete(result);
+                }
+
+                @Override
+                public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                }
+
+                @Override
+                public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+                }
+            });
+        } catch (ApiException ex) {
+            onFailure.accept(ex);
+        }
+    }
+
+    /**
+     * Same as {@link #callAsync(AsyncEndpointCall)} but issues a second identical call if the first has not
+     * completed within the policy's hedge delay and its budget allows. The first success wins and the
+     * other call is cancelled. The second call doubles as the failover if the first cannot connect.
+     */
+    <T> CompletableFuture<T> callHedged(CancellableEndpointCall<T> call, HedgePolicy policy, ScheduledExecutorService scheduler) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        List<Call> inFlight = new CopyOnWriteArrayList<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean secondIssued = new AtomicBoolean();
+        Endpoint primary = best();
+        Endpoint secondary = bestExcluding(primary);
+        policy.recordCall();
+        callCancellable(primary, call, future, inFlight, policy, false, ex -> {
+            if (isConnectFailure(ex) && secondary != null && secondIssued.compareAndSet(false, true)) {
+                failovers.increment();
+                callCancellable(secondary, call, future, inFlight, policy, false, future::completeExceptionally);
+            } else if (pending.decrementAndGet() == 0) {
+                future.completeExceptionally(ex);
+            }
+        });
+        long delayNanos = policy.getDelayNanos();
+        if (delayNanos >= 0L && !future.isDone()) {
+            try {
+                ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+                    if (future.isDone() || !policy.tryAcquireHedge() || !secondIssued.compareAndSet(false, true)) {
+                        return;
+                    }
+                    pending.incrementAndGet();
+                    hedges.increment();
+                    callCancellable(secondary == null ? primary : secondary, call, future, inFlight, policy, true, ex -> {
+                        if (pending.decrementAndGet() == 0) {
+                            future.completeExceptionally(ex);
+                        }
+                    });
+                }, delayNanos, TimeUnit.NANOSECONDS);
+                future.whenComplete((result, ex) -> hedge.cancel(false));
+            } catch (RejectedExecutionException ex) {
+                // Shutting down, continue without hedging
+            }
+        }
+        future.whenComplete((result, ex) -> inFlight.forEach(Call::cancel));
+        return future;
+    }
+
+    private <T> void callCancellable(
+            Endpoint endpoint,
+            CancellableEndpointCall<T> call,
+            CompletableFuture<T> future,
+            List<Call> inFlight,
+            HedgePolicy policy,
+            boolean isHedge,
+            Consumer<ApiException> onFailure) {
+        long startedAt = System.nanoTime();
+        try {
+            Call issued = call.call(endpoint, new ApiCallback<T>() {
+                @Override
+                public void onFailure(ApiException ex, int statusCode, Map<String, List<String>> responseHeaders) {
+                    if (future.isDone() && !future.isCompletedExceptionally()) {
+                        // Cancelled after the other call won, not the endpoint's fault
+                        return;
+                    }
+                    long elapsedNanos = System.nanoTime() - startedAt;
+                    // Slow failures and timeouts count too, otherwise the delay shrinks just as the API degrades
+                    policy.recordLatency(elapsedNanos);
+                    if (future.isDone()) {
+                        // Given up on by the caller once its timeout elapsed
+                        return;
+                    }
+                    if (Endpoint.isEndpointFailure(ex)) {
+                        endpoint.recordFailure(elapsedNanos);
+                    }
+                    onFailure.accept(ex);
+                }
+
+                @Override
+                public void onSuccess(T result, int statusCode, Map<String, List<String>> responseHeaders) {
+                    long elapsedNanos = System.nanoTime() - startedAt;
+                    endpoint.recordSuccess(elapsedNanos);
+                    policy.recordLatency(elapsedNanos);
+                    if (future.complete(result) && isHedge) {
+                        hedgeWins.increment();
+                    }
+                }
+
+                @Override
+                public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                }
+
+                @Override
+                public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+                }
+            });
+            if (issued != null) {
+                inFlight.add(issued);
+                if (future.isDone()) {
+                    issued.cancel();
+                }
+            }
+        } catch (ApiException ex) {
+            onFailure.accept(ex);
+        }
+    }
+
+    private Endpoint bestExcluding(Endpoint excluded) {
+        long now = System.nanoTime();
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        boolean bestCoolingDown = true;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint == excluded) {
+                continue;
+            }
+            boolean coolingDown = endpoint.isCoolingDown(now);
+            double score = endpoint.getScore();
+            if (best == null
+                || (bestCoolingDown && !coolingDown)
+                || (bestCoolingDown == coolingDown && score < bestScore)) {
+                best = endpoint;
+                bestScore = score;
+                bestCoolingDown = coolingDown;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isConnectFailure(ApiException ex) {
+        if (ex.getCode() != 0) {
+            return false;
+        }
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException
+                || cause instanceof UnknownHostException
+                || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    interface EndpointCall<T> {
+        T call(Endpoint endpoint) throws ApiException;
+    }
+
+    interface AsyncEndpointCall<T> {
+        void call(Endpoint endpoint, ApiCallback<T> callback) throws ApiException;
+    }
+
+    interface CancellableEndpointCall<T> {
+        Call call(Endpoint endpoint, ApiCallback<T> callback) throws ApiException;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs a failure that may repeat on every request, e.g. while the Umbrella API is unreachable, without
+ * letting logging become the bottleneck.
+ * <p>
+ * Only the first few occurrences within an interval are logged with their stack trace. The rest are
+ * counted per exception type and root cause type, and each distinct pair is summarized once per interval
+ * by {@link #flush()}. Reporting a failure seen before does not allocate.
+ */
+class ErrorReporter {
+
+    private final Logger log;
+    private final Level level;
+    private final String message;
+    private final int maxTracesPerInterval;
+    private final LongAdder suppressed;
+    private final AtomicInteger tracesThisInterval = new AtomicInteger();
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, LongAdder>> counts = new ConcurrentHashMap<>();
+    private volatile long intervalStartedAt = System.nanoTime();
+
+    ErrorReporter(Logger log, Level level, String message, int maxTracesPerInterval, UmbrellaMetrics metrics, String metricName) {
+        this.log = log;
+        this.level = level;
+        this.message = message;
+        this.maxTracesPerInterval = maxTracesPerInterval;
+        this.suppressed = metrics.counter(metricName);
+    }
+
+    void report(Throwable ex) {
+        if (!log.isLoggable(level)) {
+            return;
+        }
+        Throwable failure = unwrap(ex);
+        counts.computeIfAbsent(failure.getClass(), type -> new ConcurrentHashMap<>())
+                .computeIfAbsent(rootCause(failure).getClass(), type -> new LongAdder())
+                .increment();
+        if (tracesThisInterval.get() < maxTracesPerInterval
+            && tracesThisInterval.incrementAndGet() <= maxTracesPerInterval) {
+            log.log(level, message, failure);
+        } else {
+            suppressed.increment();
+        }
+    }
+
+    /**
+     * Logs how often each kind of failure occurred since the last flush and starts a new interval.
+     */
+    void flush() {
+        long now = System.nanoTime();
+        long intervalSeconds = TimeUnit.NANOSECONDS.toSeconds(now - intervalStartedAt);
+        intervalStartedAt = now;
+        tracesThisInterval.set(0);
+        for (Map.Entry<Class<?>, ConcurrentHashMap<Class<?>, LongAdder>> byType : counts.entrySet()) {
+            for (Map.Entry<Class<?>, LongAdder> byCause : byType.getValue().entrySet()) {
+                long count = byCause.getValue().sumThenReset();
+                if (count == 0L) {
+                    continue;
+                }
+                log.log(level, "{0}: {1} times in the last {2}s with {3} caused by {4}", new Object[]{
+                        message,
+                        count,
+                        intervalSeconds,
+                        byType.getKey().getName(),
+                        byCause.getKey().getName()});
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private static Throwable rootCause(Throwable ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
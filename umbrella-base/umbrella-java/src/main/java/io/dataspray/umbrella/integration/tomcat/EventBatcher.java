@@ -0,0 +1,191 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects events on the request thread and ships them in batches from a background executor.
+ * <p>
+ * The queue is bounded; once full, new events are dropped rather than slowing down requests. A batch that
+ * fails with a retryable error is kept and retried on the following flushes, up to {@link #MAX_ATTEMPTS}.
+ * On shutdown whatever is still queued gets one last best-effort flush.
+ */
+class EventBatcher<T> {
+
+    private static final Logger log = Logger.getLogger(EventBatcher.class.getCanonicalName());
+    static final int MAX_ATTEMPTS = 3;
+    private final String name;
+    private final ArrayBlockingQueue<T> queue;
+    private final int maxBatchSize;
+    private final long flushIntervalMs;
+    private final BatchSender<T> sender;
+    private final LongAdder dropped;
+    private final LongAdder sent;
+    private final LongAdder failed;
+    private final LongAdder retried;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private List<T> retryBatch;
+    private int retryBatchAttempts;
+    private volatile ScheduledExecutorService executor;
+    private ScheduledFuture<?> flushTask;
+
+    EventBatcher(
+            String name,
+            int capacity,
+            int maxBatchSize,
+            long flushIntervalMs,
+            BatchSender<T> sender,
+            UmbrellaMetrics metrics) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.sender = sender;
+        this.dropped = metrics.counter(name + ".dropped");
+        this.sent = metrics.counter(name + ".sent");
+        this.failed = metrics.counter(name + ".failed");
+        this.retried = metrics.counter(name + ".retried");
+        metrics.gauge(name + ".queueDepth", queue::size);
+    }
+
+    void start(ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.flushTask = executor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Never blocks. Returns false if the event was dropped due to a full queue.
+     */
+    boolean offer(T event) {
+        if (!queue.offer(event)) {
+            dropped.increment();
+            return false;
+        }
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null && queue.size() >= maxBatchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException ex) {
+                flushScheduled.set(false);
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    void flush() {
+        flushScheduled.set(false);
+        synchronized (flushLock) {
+            if (retryBatch != null) {
+                List<T> batch = retryBatch;
+                retryBatch = null;
+                if (!send(batch, retryBatchAttempts + 1)) {
+                    return;
+                }
+            }
+            while (!queue.isEmpty()) {
+                List<T> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+                queue.drainTo(batch, maxBatchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (!send(batch, 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flush and queues a last one on the executor, which the caller is expected to let
+     * drain before shutting it down.
+     */
+    void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException ex) {
+                log.log(Level.FINE, "Executor already shut down, dropping " + queue.size() + " " + name + " events");
+            }
+        }
+    }
+
+    /**
+     * Returns whether to carry on flushing, which is not the case when the server appears unavailable.
+     */
+    private boolean send(List<T> batch, int attempt) {
+        try {
+            sender.send(batch);
+            sent.add(batch.size());
+            return true;
+        } catch (Exception ex) {
+            if (isRetryable(ex) && attempt < MAX_ATTEMPTS) {
+                log.log(Level.FINE, "Failed to send " + batch.size() + " " + name + " events, will retry", ex);
+                retried.increment();
+                retryBatch = batch;
+                retryBatchAttempts = attempt;
+                return false;
+            }
+            log.log(Level.WARNING, "Failed to send " + batch.size() + " " + name + " events, dropping", ex);
+            failed.add(batch.size());
+            return !isRetryable(ex);
+        }
+    }
+
+    private static boolean isRetryable(Exception ex) {
+        if (!(ex instanceof ApiException)) {
+            return false;
+        }
+        int code = ((ApiException) ex).getCode();
+        return code == 0 || code == 429 || code >= 500;
+    }
+
+    interface BatchSender<T> {
+        void send(List<T> batch) throws ApiException;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.Config;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.MetadataField;
+import io.dataspray.umbrella.client.model.RiskScoringConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Extraction plan compiled from {@code Config.fieldMask}, telling integrations which {@link HttpMetadata}
+ * fields to read from each request. Immutable, so a config refresh swaps in a new plan without affecting
+ * requests already being collected; integrations should fetch it once per request.
+ * <p>
+ * Fields read straight from a request header are listed by {@link #getHeaderFields()} so only the headers to
+ * collect are looked up. All other fields are checked with {@link #collects}.
+ */
+public final class FieldMask {
+
+    private static final Map<MetadataField, HeaderField> HEADER_FIELDS = createHeaderFields();
+    public static final FieldMask ALL = new FieldMask(-1L);
+
+    private final long bits;
+    private final List<HeaderField> headerFields;
+
+    private FieldMask(long bits) {
+        this.bits = bits;
+        List<HeaderField> headerFields = new ArrayList<>();
+        for (MetadataField field : MetadataField.values()) {
+            HeaderField headerField = HEADER_FIELDS.get(field);
+            if (headerField != null && (bits & bit(field)) != 0L) {
+                headerFields.add(headerField);
+            }
+        }
+        this.headerFields = Collections.unmodifiableList(headerFields);
+    }
+
+    /**
+     * @return Plan for the given config, adding back the fields local features rely on, or {@link #ALL}
+     * without a mask
+     */
+    static FieldMask create(Config config) {
+        if (config.getFieldMask() == null) {
+            return ALL;
+        }
+        return new FieldMask(config.getFieldMask() | requiredBits(config));
+    }
+
+    private static long requiredBits(Config config) {
+        long bits = 0L;
+        RiskScoringConfig riskScoring = config.getRiskScoring();
+        if (riskScoring != null) {
+            if (isWeighted(riskScoring.getMissingSecFetch())) {
+                bits |= bit(MetadataField.H_SEC_FETCH_DEST)
+                        | bit(MetadataField.H_SEC_FETCH_MODE)
+                        | bit(MetadataField.H_SEC_FETCH_SITE)
+                        | bit(MetadataField.H_SEC_FETCH_USER);
+            }
+            if (isWeighted(riskScoring.getMissingAcceptLanguage())) {
+                bits |= bit(MetadataField.H_ACCEPT_LANGUAGE);
+            }
+            if (isWeighted(riskScoring.getMissingUserAgent())) {
+                bits |= bit(MetadataField.H_USER_AGENT);
+            }
+            if (isWeighted(riskScoring.getAuthorization())) {
+                bits |= bit(MetadataField.H_AUTH_PREFIX);
+            }
+            if (isWeighted(riskScoring.getKnownFingerprint())) {
+                bits |= bit(MetadataField.H_USER_AGENT) | bit(MetadataField.HEADER_NAMES);
+            }
+        }
+        if (config.getBehaviorTracking() != null) {
+            bits |= bit(MetadataField.H_USER_AGENT);
+        }
+        if (config.getFingerprintFilter() != null) {
+            bits |= bit(MetadataField.H_USER_AGENT) | bit(MetadataField.HEADER_NAMES);
+        }
+        return bits;
+    }
+
+    private static boolean isWeighted(Integer weight) {
+        return weight != null && weight != 0;
+    }
+
+    static long bit(MetadataField field) {
+        return 1L << field.ordinal();
+    }
+
+    long getBits() {
+        return bits;
+    }
+
+    public boolean collects(MetadataField field) {
+        return (bits & bit(field)) != 0L;
+    }
+
+    /**
+     * @return Fields set from the first value of a single request header, in the order they appear in
+     * {@link MetadataField}
+     */
+    public List<HeaderField> getHeaderFields() {
+        return headerFields;
+    }
+
+    private static Map<MetadataField, HeaderField> createHeaderFields() {
+        Map<MetadataField, HeaderField> fields = new EnumMap<>(MetadataField.class);
+        fields.put(MetadataField.H_X_FWD_PROTO, new HeaderField("X-Forwarded-Proto", HttpMetadata::sethXFwdProto));
+        fields.put(MetadataField.H_CF_CONN_IP, new HeaderField("CF-Connecting-IP", HttpMetadata::sethCfConnIp));
+        fields.put(MetadataField.H_TRUE_CLIENT_IP, new HeaderField("True-Client-IP", HttpMetadata::sethTrueClientIp));
+        fields.put(MetadataField.H_X_REAL_IP, new HeaderField("X-Real-IP", HttpMetadata::sethXRealIp));
+        fields.put(MetadataField.H_FWD, new HeaderField("Forwarded", HttpMetadata::sethFwd));
+        fields.put(MetadataField.H_X_FWD_FOR, new HeaderField("X-Forwarded-For", HttpMetadata::sethXFwdFor));
+        fields.put(MetadataField.H_VIA, new HeaderField("Via", HttpMetadata::sethVia));
+        fields.put(MetadataField.H_X_FWD_PORT, new HeaderField("X-Forwarded-Port", HttpMetadata::sethXFwdPort));
+        fields.put(MetadataField.H_X_FWD_HOST, new HeaderField("X-Forwarded-Host", HttpMetadata::sethXFwdHost));
+        fields.put(MetadataField.H_X_REQ_WITH, new HeaderField("X-Requested-With", HttpMetadata::sethXReqWith));
+        fields.put(MetadataField.H_USER_AGENT, new HeaderField("User-Agent", HttpMetadata::sethUserAgent));
+        fields.put(MetadataField.H_X_REQ_ID, new HeaderField("X-Request-ID", HttpMetadata::sethXReqId));
+        fields.put(MetadataField.H_ACCEPT, new HeaderField("Accept", HttpMetadata::sethAccept));
+        fields.put(MetadataField.H_ACCEPT_LANGUAGE, new HeaderField("Accept-Language", HttpMetadata::sethAcceptLanguage));
+        fields.put(MetadataField.H_ACCEPT_CHARSET, new HeaderField("Accept-Charset", HttpMetadata::sethAcceptCharset));
+        fields.put(MetadataField.H_ACCEPT_ENCODING, new HeaderField("Accept-Encoding", HttpMetadata::sethAcceptEncoding));
+        fields.put(MetadataField.H_CONNECTION, new HeaderField("Connection", HttpMetadata::sethConnection));
+        fields.put(MetadataField.H_CONTENT_TYPE, new HeaderField("Content-Type", HttpMetadata::sethContentType));
+        fields.put(MetadataField.H_FROM, new HeaderField("From", HttpMetadata::sethFrom));
+        fields.put(MetadataField.H_HOST, new HeaderField("Host", HttpMetadata::sethHost));
+        fields.put(MetadataField.H_ORIGIN, new HeaderField("Origin", HttpMetadata::sethOrigin));
+        fields.put(MetadataField.H_PRAGMA, new HeaderField("Pragma", HttpMetadata::sethPragma));
+        fields.put(MetadataField.H_REFERER, new HeaderField("Referer", HttpMetadata::sethReferer));
+        fields.put(MetadataField.H_SEC_CH_DEV_MEM, new HeaderField("Sec-CH-Device-Memory", HttpMetadata::sethSecChDevMem));
+        fields.put(MetadataField.H_SEC_CH_UA, new HeaderField("Sec-CH-UA", HttpMetadata::sethSecChUa));
+        fields.put(MetadataField.H_SEC_CH_UA_MODEL, new HeaderField("Sec-CH-UA-Model", HttpMetadata::sethSecChUaModel));
+        fields.put(MetadataField.H_SEC_CH_UA_FULL, new HeaderField("Sec-CH-UA-Full-Version", HttpMetadata::sethSecChUaFull));
+        fields.put(MetadataField.H_SEC_CH_UA_MOBILE, new HeaderField("Sec-CH-UA-Mobile", HttpMetadata::sethSecChUaMobile));
+        fields.put(MetadataField.H_SEC_CH_UA_PLATFORM, new HeaderField("Sec-CH-UA-Platform", HttpMetadata::sethSecChUaPlatform));
+        fields.put(MetadataField.H_SEC_CH_UA_ARCH, new HeaderField("Sec-CH-UA-Arch", HttpMetadata::sethSecChUaArch));
+        fields.put(MetadataField.H_SEC_FETCH_DEST, new HeaderField("Sec-Fetch-Dest", HttpMetadata::sethSecFetchDest));
+        fields.put(MetadataField.H_SEC_FETCH_MODE, new HeaderField("Sec-Fetch-Mode", HttpMetadata::sethSecFetchMode));
+        fields.put(MetadataField.H_SEC_FETCH_SITE, new HeaderField("Sec-Fetch-Site", HttpMetadata::sethSecFetchSite));
+        fields.put(MetadataField.H_SEC_FETCH_USER, new HeaderField("Sec-Fetch-User", HttpMetadata::sethSecFetchUser));
+        return fields;
+    }
+
+    public static final class HeaderField {
+        private final String headerName;
+        private final BiConsumer<HttpMetadata, String> setter;
+
+        private HeaderField(String headerName, BiConsumer<HttpMetadata, String> setter) {
+            this.headerName = headerName;
+            this.setter = setter;
+        }
+
+        public String getHeaderName() {
+            return headerName;
+        }
+
+        /**
+         * @param value Header value, or null if the request does not carry the header
+         */
+        public void set(HttpMetadata data, String value) {
+            setter.accept(data, value);
+        }
+    }
+}
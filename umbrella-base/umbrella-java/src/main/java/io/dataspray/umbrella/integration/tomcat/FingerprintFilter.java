@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Immutable Bloom filter of known-bad {@link Fingerprints} as published in {@code Config.fingerprintFilter}.
+ * <p>
+ * Bit {@code i} is bit {@code i % 8} of byte {@code i / 8}. A fingerprint hash sets bits
+ * {@code (low + k * high) mod numBits} for {@code k} in {@code [0, numHashes)}, where {@code low} and
+ * {@code high} are the lower and upper 32 bits of the hash and the sum is taken modulo 2<sup>32</sup>.
+ * The size must be a power of two so the last step is a mask.
+ */
+class FingerprintFilter {
+
+    static final int MAX_HASHES = 16;
+    private final String version;
+    private final int numHashes;
+    private final long[] words;
+    private final int mask;
+
+    private FingerprintFilter(String version, int numHashes, long[] words) {
+        this.version = version;
+        this.numHashes = numHashes;
+        this.words = words;
+        this.mask = words.length * 64 - 1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the parameters do not describe a valid filter
+     */
+    static FingerprintFilter create(String version, int numHashes, byte[] bits) {
+        if (numHashes < 1 || numHashes > MAX_HASHES) {
+            throw new IllegalArgumentException("Fingerprint filter hash count out of range: " + numHashes);
+        }
+        if (bits.length < 8 || Integer.bitCount(bits.length) != 1 || bits.length > 1 << 27) {
+            throw new IllegalArgumentException("Fingerprint filter size must be a power of two of at least 8 bytes, got " + bits.length);
+        }
+        long[] words = new long[bits.length / 8];
+        ByteBuffer.wrap(bits).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+        return new FingerprintFilter(version, numHashes, words);
+    }
+
+    /**
+     * @return Copy of this filter with the given bit positions set
+     * @throws IllegalArgumentException if a position is out of range
+     */
+    FingerprintFilter withAddedBits(String newVersion, List<Long> addedBits) {
+        long[] newWords = words.clone();
+        for (Long bit : addedBits) {
+            if (bit == null || bit < 0L || bit > mask) {
+                throw new IllegalArgumentException("Fingerprint filter bit out of range: " + bit);
+            }
+            newWords[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        return new FingerprintFilter(newVersion, numHashes, newWords);
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Whether any of the request's IP, User-Agent or header order fingerprints might be in the filter
+     */
+    boolean mightContainAny(HttpMetadata data) {
+        return (data.getIp() != null && mightContain(Fingerprints.ip(data.getIp())))
+               || (data.gethUserAgent() != null && mightContain(Fingerprints.userAgent(data.gethUserAgent())))
+               || (data.getHeaderNames() != null && mightContain(Fingerprints.headerOrder(data.getHeaderNames())));
+    }
+
+    boolean mightContain(long fingerprint) {
+        int low = (int) fingerprint;
+        int high = (int) (fingerprint >>> 32);
+        for (int k = 0; k < numHashes; k++) {
+            int bit = (low + k * high) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the bits for a fingerprint; only for building filters in tests, as published filters are immutable.
+     */
+    static byte[] add(byte[] bits, int numHashes, long fingerprint) {
+        int mask = bits.length * 8 - 1;
+        int low = (int) fingerprint;
+        int high = (int) (fingerprint >>> 32);
+        for (int k = 0; k < numHashes; k++) {
+            int bit = (low + k * high) & mask;
+            bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.List;
+
+/**
+ * Request fingerprints shared with the server, each a 64-bit FNV-1a hash over the UTF-8 bytes of
+ * {@code <kind>:<value>}:
+ * <ul>
+ *     <li>{@code ip}: the client IP as reported in {@code HttpMetadata.ip}</li>
+ *     <li>{@code ua}: the User-Agent header</li>
+ *     <li>{@code ho}: header names in the order received, lowercased and joined with commas</li>
+ * </ul>
+ * {@link #headers} additionally covers cookie names for {@code HttpMetadata.headerFp}.
+ * Hashes are computed straight from the strings without allocating.
+ */
+class Fingerprints {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprints() {
+    }
+
+    static long ip(String ip) {
+        return update(update(FNV_OFFSET_BASIS, "ip:", false), ip, false);
+    }
+
+    static long userAgent(String userAgent) {
+        return update(update(FNV_OFFSET_BASIS, "ua:", false), userAgent, false);
+    }
+
+    static long headerOrder(List<String> headerNames) {
+        long hash = update(FNV_OFFSET_BASIS, "ho:", false);
+        for (int i = 0; i < headerNames.size(); i++) {
+            if (i > 0) {
+                hash = updateByte(hash, ',');
+            }
+            hash = update(hash, headerNames.get(i), true);
+        }
+        return hash;
+    }
+
+    /**
+     * Hash identifying the header names in order together with the set of cookie names, as described on
+     * {@code HttpMetadata.headerFp}.
+     */
+    static long headers(List<String> headerNames, List<String> cookieNames) {
+        long hash = update(FNV_OFFSET_BASIS, "hf:", false);
+        if (headerNames != null) {
+            for (int i = 0; i < headerNames.size(); i++) {
+                if (i > 0) {
+                    hash = updateByte(hash, ',');
+                }
+                hash = update(hash, headerNames.get(i), true);
+            }
+        }
+        // Summed so the order cookies arrive in does not change the hash
+        long cookieSum = 0L;
+        if (cookieNames != null) {
+            for (int i = 0; i < cookieNames.size(); i++) {
+                cookieSum += update(update(FNV_OFFSET_BASIS, "ck:", false), cookieNames.get(i), false);
+            }
+        }
+        hash = updateByte(hash, '|');
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            hash = updateByte(hash, (int) (cookieSum >>> shift));
+        }
+        return hash;
+    }
+
+    private static long update(long hash, String value, boolean lowercase) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                hash = updateByte(hash, lowercase && c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+            } else if (c < 0x800) {
+                hash = updateByte(hash, 0xC0 | (c >>> 6));
+                hash = updateByte(hash, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                hash = updateByte(hash, 0xF0 | (codePoint >>> 18));
+                hash = updateByte(hash, 0x80 | ((codePoint >>> 12) & 0x3F));
+                hash = updateByte(hash, 0x80 | ((codePoint >>> 6) & 0x3F));
+                hash = updateByte(hash, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, encoded as '?' like String.getBytes does
+                hash = updateByte(hash, '?');
+            } else {
+                hash = updateByte(hash, 0xE0 | (c >>> 12));
+                hash = updateByte(hash, 0x80 | ((c >>> 6) & 0x3F));
+                hash = updateByte(hash, 0x80 | (c & 0x3F));
+            }
+        }
+        return hash;
+    }
+
+    private static long updateByte(long hash, int b) {
+        return (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+}
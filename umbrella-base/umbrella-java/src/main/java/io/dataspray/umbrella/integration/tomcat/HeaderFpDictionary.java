@@ -0,0 +1,69 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded record of the {@code HttpMetadata.headerFp} hashes whose header and cookie names the server has
+ * already received, so later events can leave the names out.
+ * <p>
+ * Direct-mapped: a hash replaces whichever hash shared its slot, and the replaced one is simply sent in full
+ * again the next time it is seen. Lock-free and does not allocate after construction.
+ */
+class HeaderFpDictionary {
+
+    static final int DEFAULT_CAPACITY = 4096;
+    /** Marks an unused slot, a hash of zero is never remembered */
+    private static final long EMPTY = 0L;
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    HeaderFpDictionary(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Header fingerprint dictionary capacity must be a power of two, got " + capacity);
+        }
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    boolean contains(long hash) {
+        return hash != EMPTY && slots.get(index(hash)) == hash;
+    }
+
+    void add(long hash) {
+        if (hash != EMPTY) {
+            slots.set(index(hash), hash);
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, EMPTY);
+        }
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Verdict store private to this JVM.
+ */
+class HeapVerdictStore extends OpenAddressingVerdictStore {
+
+    private final AtomicLongArray slots;
+
+    HeapVerdictStore(int capacity) {
+        super(capacity);
+        this.slots = new AtomicLongArray(capacity * 2);
+    }
+
+    @Override
+    long getVolatile(int index) {
+        return slots.get(index);
+    }
+
+    @Override
+    void setVolatile(int index, long value) {
+        slots.set(index, value);
+    }
+
+    @Override
+    boolean compareAndSet(int index, long expected, long value) {
+        return slots.compareAndSet(index, expected, value);
+    }
+}
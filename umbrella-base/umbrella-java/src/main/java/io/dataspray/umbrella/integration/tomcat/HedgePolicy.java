@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a BLOCKING check is worth hedging with a second identical call.
+ * <p>
+ * The hedge delay is the 90th percentile of recently observed call latencies, so only the slowest tenth
+ * of calls are hedged. A token bucket credited with a fraction of a token per call and charged a whole
+ * token per hedge caps the extra load at that fraction, allowing a small burst when calls were fast before.
+ */
+class HedgePolicy {
+
+    private static final int SAMPLES = 256;
+    /** Below this many samples the percentile is too noisy to hedge on */
+    static final int MIN_SAMPLES = 32;
+    private static final int RECOMPUTE_EVERY = 32;
+    private static final double PERCENTILE = 0.9d;
+    private static final long TOKEN = 1_000L;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+    private final long creditPerCall;
+    private final long[] samples = new long[SAMPLES];
+    private final AtomicLong tokens = new AtomicLong();
+    /** A long, as an int would overflow after a few days at high request rates */
+    long sampleCount;
+    private volatile long delayNanos = -1L;
+
+    /**
+     * @param budget extra load hedges may add, as a fraction of calls, e.g. 0.05 for at most 5%
+     */
+    HedgePolicy(double budget) {
+        this.creditPerCall = Math.round(budget * TOKEN);
+    }
+
+    synchronized void recordLatency(long nanos) {
+        samples[(int) (sampleCount % SAMPLES)] = nanos;
+        sampleCount++;
+        if (sampleCount >= MIN_SAMPLES && sampleCount % RECOMPUTE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(sampleCount, SAMPLES));
+            Arrays.sort(sorted);
+            delayNanos = sorted[(int) (PERCENTILE * (sorted.length - 1))];
+        }
+    }
+
+    /**
+     * @return how long to wait for a call before hedging it, or a negative value if not enough calls were
+     * observed yet
+     */
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    void recordCall() {
+        tokens.accumulateAndGet(creditPerCall, (current, credit) -> Math.min(current + credit, MAX_TOKENS));
+    }
+
+    boolean tryAcquireHedge() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
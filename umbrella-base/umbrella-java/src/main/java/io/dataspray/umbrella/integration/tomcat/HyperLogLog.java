@@ -0,0 +1,82 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free HyperLogLog estimating the number of distinct hashes added, within about 9% with
+ * {@value #REGISTERS} registers.
+ * <p>
+ * Registers are a byte each, packed eight to a word, so a sketch takes 128 bytes. Adding a hash that does not
+ * raise its register is a single read.
+ */
+class HyperLogLog {
+
+    private static final int PRECISION = 7;
+    static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1.0 + 1.079 / REGISTERS);
+    private final AtomicLongArray words = new AtomicLongArray(REGISTERS / 8);
+
+    /**
+     * @param hash Well mixed hash of the value
+     */
+    void add(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // Position of the first set bit in the remaining bits, guarded so it fits when they are all zero
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        int word = register >>> 3;
+        int shift = (register & 7) * 8;
+        while (true) {
+            long current = words.get(word);
+            if (((current >>> shift) & 0xFFL) >= rank) {
+                return;
+            }
+            long updated = (current & ~(0xFFL << shift)) | ((long) rank << shift);
+            if (words.compareAndSet(word, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    long estimate() {
+        double sum = 0.0;
+        int zeros = 0;
+        for (int word = 0; word < words.length(); word++) {
+            long value = words.get(word);
+            for (int shift = 0; shift < 64; shift += 8) {
+                int rank = (int) ((value >>> shift) & 0xFFL);
+                sum += Math.scalb(1.0, -rank);
+                if (rank == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
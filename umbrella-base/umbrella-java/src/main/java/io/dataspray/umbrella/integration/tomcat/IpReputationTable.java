@@ -0,0 +1,362 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable IP reputation snapshot held off-heap in two primitive open-addressing tables, one keyed by IPv4
+ * addresses as ints and one keyed by IPv6 addresses as pairs of longs.
+ * <p>
+ * Each slot is just the key followed by a one byte score: 5 bytes for IPv4 and 17 bytes for IPv6, at a load
+ * factor of at most 0.75. The all-zero address marks an empty slot, and is never a meaningful client anyway.
+ * Lookups parse the IP string in place and do not allocate.
+ * <p>
+ * Built once by streaming the snapshot in the format described on the {@code ipReputation} operation, then
+ * published by swapping a volatile reference, so readers never need to synchronize.
+ */
+class IpReputationTable {
+
+    static final int MAGIC = 0x554d4952;
+    static final int FORMAT_VERSION = 1;
+    private static final int IPV4_SLOT = 5;
+    private static final int IPV6_SLOT = 17;
+    /** Keeps each table within a single direct buffer */
+    private static final int MAX_IPV4_ENTRIES = 3 << 26;
+    private static final int MAX_IPV6_ENTRIES = 3 << 24;
+    static final IpReputationTable EMPTY = new IpReputationTable(allocate(0, IPV4_SLOT), allocate(0, IPV6_SLOT), 0);
+    private final ByteBuffer ipv4;
+    private final int ipv4Mask;
+    private final ByteBuffer ipv6;
+    private final int ipv6Mask;
+    private final int size;
+
+    private IpReputationTable(ByteBuffer ipv4, ByteBuffer ipv6, int size) {
+        this.ipv4 = ipv4;
+        this.ipv4Mask = ipv4.capacity() / IPV4_SLOT - 1;
+        this.ipv6 = ipv6;
+        this.ipv6Mask = ipv6.capacity() / IPV6_SLOT - 1;
+        this.size = size;
+    }
+
+    /**
+     * Reads a snapshot without buffering it whole; the stream is not closed.
+     *
+     * @throws IOException if the stream fails or is not a supported snapshot
+     */
+    static IpReputationTable read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, 1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an IP reputation snapshot");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported IP reputation snapshot format " + formatVersion);
+        }
+        int size = 0;
+        int ipv4Count = readCount(in, MAX_IPV4_ENTRIES);
+        ByteBuffer ipv4 = allocate(ipv4Count, IPV4_SLOT);
+        int ipv4Mask = ipv4.capacity() / IPV4_SLOT - 1;
+        for (int i = 0; i < ipv4Count; i++) {
+            if (putIpv4(ipv4, ipv4Mask, in.readInt(), in.readUnsignedByte())) {
+                size++;
+            }
+        }
+        int ipv6Count = readCount(in, MAX_IPV6_ENTRIES);
+        ByteBuffer ipv6 = allocate(ipv6Count, IPV6_SLOT);
+        int ipv6Mask = ipv6.capacity() / IPV6_SLOT - 1;
+        for (int i = 0; i < ipv6Count; i++) {
+            if (putIpv6(ipv6, ipv6Mask, in.readLong(), in.readLong(), in.readUnsignedByte())) {
+                size++;
+            }
+        }
+        return new IpReputationTable(ipv4, ipv6, size);
+    }
+
+    /**
+     * Number of distinct addresses in the snapshot.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Off-heap bytes held by this snapshot.
+     */
+    long footprintBytes() {
+        return (long) ipv4.capacity() + ipv6.capacity();
+    }
+
+    /**
+     * @return Score of the given IPv4 or IPv6 address, or -1 if it is unknown or not a valid address
+     */
+    int score(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return -1;
+        }
+        if (ip.indexOf(':') < 0) {
+            long address = parseIpv4(ip, 0, ip.length());
+            return address < 0L ? -1 : ipv4Score((int) address);
+        }
+        return ipv6Score(ip);
+    }
+
+    private int ipv4Score(int address) {
+        if (address == 0) {
+            return -1;
+        }
+        int slot = mix(address) & ipv4Mask;
+        while (true) {
+            int key = ipv4.getInt(slot * IPV4_SLOT);
+            if (key == address) {
+                return ipv4.get(slot * IPV4_SLOT + 4) & 0xFF;
+            }
+            if (key == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & ipv4Mask;
+        }
+    }
+
+    private int ipv6Score(long high, long low) {
+        if (high == 0L && (low >>> 32) == 0xFFFFL) {
+            // IPv4-mapped address
+            return ipv4Score((int) low);
+        }
+        if (high == 0L && low == 0L) {
+            return -1;
+        }
+        int slot = mix(high, low) & ipv6Mask;
+        while (true) {
+            int offset = slot * IPV6_SLOT;
+            long keyHigh = ipv6.getLong(offset);
+            long keyLow = ipv6.getLong(offset + 8);
+            if (keyHigh == high && keyLow == low) {
+                return ipv6.get(offset + 16) & 0xFF;
+            }
+            if (keyHigh == 0L && keyLow == 0L) {
+                return -1;
+            }
+            slot = (slot + 1) & ipv6Mask;
+        }
+    }
+
+    /**
+     * @return Whether the address was not in the table yet
+     */
+    private static boolean putIpv4(ByteBuffer table, int mask, int address, int score) {
+        if (address == 0) {
+            return false;
+        }
+        int slot = mix(address) & mask;
+        while (true) {
+            int key = table.getInt(slot * IPV4_SLOT);
+            if (key == 0 || key == address) {
+                table.putInt(slot * IPV4_SLOT, address);
+                table.put(slot * IPV4_SLOT + 4, (byte) score);
+                return key == 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return Whether the address was not in the table yet
+     */
+    private static boolean putIpv6(ByteBuffer table, int mask, long high, long low, int score) {
+        if (high == 0L && low == 0L) {
+            return false;
+        }
+        int slot = mix(high, low) & mask;
+        while (true) {
+            int offset = slot * IPV6_SLOT;
+            long keyHigh = table.getLong(offset);
+            long keyLow = table.getLong(offset + 8);
+            boolean empty = keyHigh == 0L && keyLow == 0L;
+            if (empty || (keyHigh == high && keyLow == low)) {
+                table.putLong(offset, high);
+                table.putLong(offset + 8, low);
+                table.put(offset + 16, (byte) score);
+                return empty;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Parses an IPv6 address, including {@code ::} compression, an embedded IPv4 tail and a zone id, into
+     * two longs without allocating.
+     */
+    private int ipv6Score(String ip) {
+        int end = ip.indexOf('%');
+        if (end < 0) {
+            end = ip.length();
+        }
+        long high = 0L;
+        long low = 0L;
+        int groups = 0;
+        int compressedAt = -1;
+        int i = 0;
+        if (ip.startsWith("::")) {
+            compressedAt = 0;
+            i = 2;
+        }
+        while (i < end) {
+            int groupEnd = i;
+            int group = 0;
+            while (groupEnd < end && groupEnd - i < 5) {
+                int digit = Character.digit(ip.charAt(groupEnd), 16);
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                groupEnd++;
+            }
+            if (groupEnd < end && ip.charAt(groupEnd) == '.') {
+                // Embedded IPv4 takes up the last two groups
+                long address = parseIpv4(ip, i, end);
+                if (address < 0L || groups > 6) {
+                    return -1;
+                }
+                high = (high << 32) | (low >>> 32);
+                low = (low << 32) | address;
+                groups += 2;
+                i = end;
+                break;
+            }
+            if (groupEnd == i || groupEnd - i > 4 || groups == 8) {
+                return -1;
+            }
+            high = (high << 16) | (low >>> 48);
+            low = (low << 16) | group;
+            groups++;
+            i = groupEnd;
+            if (i == end) {
+                break;
+            }
+            if (ip.charAt(i) != ':') {
+                return -1;
+            }
+            i++;
+            if (i < end && ip.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return -1;
+                }
+                compressedAt = groups;
+                i++;
+            } else if (i == end) {
+                return -1;
+            }
+        }
+        if (compressedAt < 0 ? groups != 8 : groups > 7) {
+            return -1;
+        }
+        if (compressedAt >= 0) {
+            // Shift the groups after "::" into place, leaving zeros in between
+            int trailingGroups = groups - compressedAt;
+            long trailingHigh = trailingGroups >= 4 ? high & mask(16 * (trailingGroups - 4)) : 0L;
+            long trailingLow = trailingGroups >= 4 ? low : low & mask(16 * trailingGroups);
+            long leadingHigh = high;
+            long leadingLow = low;
+            for (int shift = 0; shift < trailingGroups; shift++) {
+                leadingLow = (leadingLow >>> 16) | (leadingHigh << 48);
+                leadingHigh >>>= 16;
+            }
+            for (int shift = 0; shift < 8 - compressedAt; shift++) {
+                leadingHigh = (leadingHigh << 16) | (leadingLow >>> 48);
+                leadingLow <<= 16;
+            }
+            high = leadingHigh | trailingHigh;
+            low = leadingLow | trailingLow;
+        }
+        return ipv6Score(high, low);
+    }
+
+    private static long mask(int bits) {
+        return bits >= 64 ? -1L : (1L << bits) - 1L;
+    }
+
+    /**
+     * @return Address as an unsigned int, or -1 if not a dotted quad
+     */
+    private static long parseIpv4(String ip, int from, int to) {
+        long address = 0L;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int octetEnd = i;
+            int octet = 0;
+            while (octetEnd < to && octetEnd - i < 4 && ip.charAt(octetEnd) >= '0' && ip.charAt(octetEnd) <= '9') {
+                octet = octet * 10 + (ip.charAt(octetEnd) - '0');
+                octetEnd++;
+            }
+            if (octetEnd == i || octetEnd - i > 3 || octet > 255 || octets == 4) {
+                return -1L;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            i = octetEnd;
+            if (i < to) {
+                if (ip.charAt(i) != '.' || i + 1 == to) {
+                    return -1L;
+                }
+                i++;
+            }
+        }
+        return octets == 4 ? address : -1L;
+    }
+
+    private static int readCount(DataInputStream in, int max) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("IP reputation snapshot entry count out of range: " + count);
+        }
+        return count;
+    }
+
+    private static ByteBuffer allocate(int count, int slotSize) {
+        int minCapacity = Math.max(2, count + count / 3 + 1);
+        return ByteBuffer.allocateDirect((Integer.highestOneBit(minCapacity - 1) << 1) * slotSize);
+    }
+
+    private static int mix(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        key *= 0xc2b2ae35;
+        key ^= key >>> 16;
+        return key;
+    }
+
+    private static int mix(long high, long low) {
+        long key = high * 0x9e3779b97f4a7c15L ^ low;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.LoadReport;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Senses when this server is saturated, so BLOCKING checks, which add a round trip to every request, can be
+ * suspended until it recovers rather than deepening a brownout.
+ * <p>
+ * Every {@value #SAMPLE_INTERVAL_MS}ms it samples:
+ * <ul>
+ *     <li>requests in flight through the integration's filter</li>
+ *     <li>how late the sample itself runs on its dedicated thread, which rises with CPU saturation and GC
+ *     pauses. The time requests spend queued before reaching the filter cannot be observed portably, so this
+ *     stands in for it</li>
+ *     <li>optionally the busiest container thread pool, read from Tomcat's {@code ThreadPool} MBeans</li>
+ * </ul>
+ * Pressure is the highest of these relative to its limit. Checks are suspended once pressure stays at or
+ * above 1 for {@value #DEGRADE_AFTER_SAMPLES} samples in a row, and resumed only once it stays below
+ * {@value #RECOVERY_PRESSURE} for {@value #RECOVER_AFTER_SAMPLES}, so a server hovering around its limits
+ * does not flap.
+ */
+class LoadMonitor {
+
+    private static final Logger log = Logger.getLogger(LoadMonitor.class.getCanonicalName());
+    static final long SAMPLE_INTERVAL_MS = 500L;
+    static final int DEGRADE_AFTER_SAMPLES = 4;
+    static final int RECOVER_AFTER_SAMPLES = 20;
+    static final double RECOVERY_PRESSURE = 0.7;
+    private static final ObjectName THREAD_POOL_PATTERN = threadPoolPattern();
+
+    private final LongAdder inFlight = new LongAdder();
+    private final int maxInFlight;
+    private final long maxLagNanos;
+    private final double maxThreadPoolUtilization;
+    private final Runnable onChange;
+    private final LongAdder degradationsCounter;
+    private final AtomicLong degradationsSinceReport = new AtomicLong();
+    private final AtomicLong degradedNanosSinceReport = new AtomicLong();
+    private volatile boolean degraded;
+    private volatile double pressure;
+    private volatile ScheduledFuture<?> schedule;
+    /** Only touched by the sampling thread */
+    private long lastSampleNanos;
+    private int overloadedSamples;
+    private int calmSamples;
+
+    /**
+     * @param maxThreadPoolUtilization Busy fraction of the container thread pool considered overloaded, or 0 to
+     *                                 not read it
+     * @param onChange                 Called on the sampling thread whenever checks are suspended or resumed
+     */
+    LoadMonitor(int maxInFlight, long maxLagMs, double maxThreadPoolUtilization, Runnable onChange, UmbrellaMetrics metrics) {
+        this.maxInFlight = maxInFlight;
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        this.maxThreadPoolUtilization = maxThreadPoolUtilization;
+        this.onChange = onChange;
+        this.degradationsCounter = metrics.counter("load.degradations");
+        metrics.gauge("load.inFlight", inFlight::sum);
+        metrics.gauge("load.pressure", () -> pressure);
+        metrics.gauge("load.degraded", () -> degraded ? 1 : 0);
+    }
+
+    void start(ScheduledExecutorService executor) {
+        lastSampleNanos = System.nanoTime();
+        try {
+            schedule = executor.scheduleWithFixedDelay(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.log(Level.FINE, "Not monitoring load, executor is shut down", ex);
+        }
+    }
+
+    void stop() {
+        ScheduledFuture<?> current = schedule;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestFinished() {
+        inFlight.decrement();
+    }
+
+    boolean isDegraded() {
+        return degraded;
+    }
+
+    private void sample() {
+        long nowNanos = System.nanoTime();
+        long lagNanos = nowNanos - lastSampleNanos - TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS);
+        double threadPoolUtilization = maxThreadPoolUtilization > 0 ? readThreadPoolUtilization() : 0;
+        update(inFlight.sum(), Math.max(0L, lagNanos), threadPoolUtilization, nowNanos);
+    }
+
+    /**
+     * Takes one sample of the signals, which {@link #start} does periodically.
+     *
+     * @param threadPoolUtilization Busy fraction of the busiest container thread pool, 0 if unknown
+     */
+    void update(long currentInFlight, long lagNanos, double threadPoolUtilization, long nowNanos) {
+        double currentPressure = 0;
+        if (maxLagNanos > 0) {
+            currentPressure = (double) lagNanos / maxLagNanos;
+        }
+        if (maxInFlight > 0) {
+            currentPressure = Math.max(currentPressure, (double) currentInFlight / maxInFlight);
+        }
+        if (maxThreadPoolUtilization > 0) {
+            currentPressure = Math.max(currentPressure, threadPoolUtilization / maxThreadPoolUtilization);
+        }
+        pressure = currentPressure;
+        if (degraded) {
+            degradedNanosSinceReport.addAndGet(nowNanos - lastSampleNanos);
+        }
+        lastSampleNanos = nowNanos;
+
+        overloadedSamples = currentPressure >= 1.0 ? overloadedSamples + 1 : 0;
+        calmSamples = currentPressure < RECOVERY_PRESSURE ? calmSamples + 1 : 0;
+        if (!degraded && overloadedSamples >= DEGRADE_AFTER_SAMPLES) {
+            degraded = true;
+            degradationsCounter.increment();
+            degradationsSinceReport.incrementAndGet();
+            log.log(Level.WARNING, "Server overloaded at {0} of its limits, suspending BLOCKING Umbrella checks", currentPressure);
+            onChange.run();
+        } else if (degraded && calmSamples >= RECOVER_AFTER_SAMPLES) {
+            degraded = false;
+            log.log(Level.INFO, "Server load recovered, resuming BLOCKING Umbrella checks");
+            onChange.run();
+        }
+    }
+
+    /**
+     * @return State to report with the next ping, counting since the previous report
+     */
+    LoadReport report() {
+        return new LoadReport()
+                .degraded(degraded)
+                .degradations(degradationsSinceReport.getAndSet(0L))
+                .degradedMs(TimeUnit.NANOSECONDS.toMillis(degradedNanosSinceReport.getAndSet(0L)))
+                .pressure(pressure);
+    }
+
+    private static double readThreadPoolUtilization() {
+        if (THREAD_POOL_PATTERN == null) {
+            return 0;
+        }
+        double busiest = 0;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : server.queryNames(THREAD_POOL_PATTERN, null)) {
+                Object busy = server.getAttribute(name, "currentThreadsBusy");
+                Object max = server.getAttribute(name, "maxThreads");
+                if (busy instanceof Number && max instanceof Number && ((Number) max).intValue() > 0) {
+                    busiest = Math.max(busiest, ((Number) busy).doubleValue() / ((Number) max).doubleValue());
+                }
+            }
+        } catch (JMException | RuntimeException ex) {
+            log.log(Level.FINE, "Failed to read container thread pool utilization", ex);
+        }
+        return busiest;
+    }
+
+    private static ObjectName threadPoolPattern() {
+        try {
+            return new ObjectName("*:type=ThreadPool,*");
+        } catch (MalformedObjectNameException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Verdict store in a memory-mapped file, shared by every JVM on the host that maps the same path so a
+ * verdict reached by one is immediately available to all.
+ * <p>
+ * The file starts with a small header identifying the layout and capacity, followed by the slots. Slots are
+ * accessed with atomic operations directly on the mapping, which the hardware keeps coherent across
+ * processes; a file lock is only taken while creating or validating the header. The mapping is released by
+ * the garbage collector, so there is nothing to close.
+ * <p>
+ * Verdicts in the file are not authenticated, so on POSIX file systems the file is created writable by its
+ * owner only and refused if group or others can write to it, or if another user owns it.
+ */
+class MappedVerdictStore extends OpenAddressingVerdictStore {
+
+    private static final long MAGIC = 0x554d42564552_0001L;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    /** Host-local file, so native order is shared by every process using it */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private MappedVerdictStore(Path path, int capacity, MappedByteBuffer buffer) {
+        super(capacity);
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Maps the store at the given path, creating it if it does not exist yet.
+     *
+     * @param capacity Number of slots, must be a power of two and match the capacity of an existing file
+     * @throws IOException if the file cannot be mapped, was created with a different layout or is writable by
+     *                     other users
+     */
+    static MappedVerdictStore open(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Verdict store capacity must be a power of two, got " + capacity);
+        }
+        long size = HEADER_SIZE + capacity * 16L;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Verdict store capacity too large to map, got " + capacity);
+        }
+        requireOwnerOnlyWritable(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            boolean created = channel.size() == 0L;
+            if (!created && channel.size() != size) {
+                throw new IOException("Verdict store " + path + " has size " + channel.size() + ", expected " + size + " for capacity " + capacity);
+            }
+            // Mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            buffer.order(ByteOrder.nativeOrder());
+            if (created) {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putLong(MAGIC_OFFSET, MAGIC);
+                buffer.force();
+            } else if (buffer.getLong(MAGIC_OFFSET) != MAGIC || buffer.getInt(CAPACITY_OFFSET) != capacity) {
+                throw new IOException("Verdict store " + path + " was not created by this version or has a different capacity");
+            }
+            return new MappedVerdictStore(path, capacity, buffer);
+        }
+    }
+
+    private static void requireOwnerOnlyWritable(Path path) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (FileAlreadyExistsException ex) {
+            // Created by another process, checked below like any existing file
+        }
+        // Planted by another user in a shared directory
+        if (!Files.getOwner(path).getName().equals(System.getProperty("user.name"))) {
+            throw new IOException("Verdict store " + path + " is owned by " + Files.getOwner(path).getName() + ", it must be owned by the server's user");
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("Verdict store " + path + " is writable by other users, it must only be writable by the server's user");
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    long getVolatile(int index) {
+        return (long) LONGS.getVolatile(buffer, offset(index));
+    }
+
+    @Override
+    void setVolatile(int index, long value) {
+        LONGS.setVolatile(buffer, offset(index), value);
+    }
+
+    @Override
+    boolean compareAndSet(int index, long expected, long value) {
+        return LONGS.compareAndSet(buffer, offset(index), expected, value);
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * 8;
+    }
+}
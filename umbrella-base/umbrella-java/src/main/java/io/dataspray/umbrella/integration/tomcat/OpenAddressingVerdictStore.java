@@ -0,0 +1,200 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.RequestProcess;
+
+import java.util.Optional;
+
+/**
+ * Fixed-size open-addressing hash table of verdicts over an array of longs, leaving it to subclasses where
+ * that array lives.
+ * <p>
+ * Each slot is a pair of longs: a 64-bit hash of the IP and a packed value of
+ * {@code expiresAt(32) | status(16) | keyTag(8) | verdict(8)}. Slots are claimed with a compare-and-set on
+ * the key and never emptied again, so probe chains stay intact; a slot whose verdict has expired is reclaimed
+ * for a different key instead. The key tag in the value lets a reader detect that the slot changed hands
+ * between reading the key and the value, in which case it reports a miss rather than another IP's verdict.
+ * <p>
+ * Updates are lock-free and last-writer-wins, which is fine as any recent server verdict is acceptable.
+ */
+abstract class OpenAddressingVerdictStore implements VerdictStore {
+
+    /** Slots inspected before giving up; keeps lookups bounded even when the table is nearly full */
+    static final int MAX_PROBES = 16;
+    private static final long VERDICT_ALLOW = 1L;
+    private static final long VERDICT_BLOCK = 2L;
+    private static final long MAX_EXPIRES_AT = 0xFFFFFFFFL;
+    private static final long MAX_STATUS = 0xFFFFL;
+    private static final Optional<HttpAction> ALLOW = Optional.of(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION);
+    private final int capacity;
+
+    /**
+     * @param capacity Number of slots, must be a power of two
+     */
+    OpenAddressingVerdictStore(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Verdict store capacity must be a power of two, got " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    abstract long getVolatile(int index);
+
+    abstract void setVolatile(int index, long value);
+
+    abstract boolean compareAndSet(int index, long expected, long value);
+
+    @Override
+    public Optional<HttpAction> get(String ip, long nowEpochSeconds) {
+        long key = hash(ip);
+        int slot = (int) key & (capacity - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long slotKey = getVolatile(slot * 2);
+            if (slotKey == 0L) {
+                return Optional.empty();
+            }
+            if (slotKey == key) {
+                long value = getVolatile(slot * 2 + 1);
+                if (getVolatile(slot * 2) != key
+                    || isExpired(value, nowEpochSeconds)
+                    || valueTag(value) != keyTag(key)) {
+                    return Optional.empty();
+                }
+                return decode(value);
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean put(String ip, HttpAction action, long expiresAtEpochSeconds, long nowEpochSeconds) {
+        if (expiresAtEpochSeconds <= nowEpochSeconds || expiresAtEpochSeconds > MAX_EXPIRES_AT) {
+            return false;
+        }
+        long key = hash(ip);
+        long value = encode(action, expiresAtEpochSeconds, keyTag(key));
+        if (value == 0L) {
+            return false;
+        }
+        int slot = (int) key & (capacity - 1);
+        int reclaimSlot = -1;
+        long reclaimKey = 0L;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long slotKey = getVolatile(slot * 2);
+            if (slotKey == 0L) {
+                if (compareAndSet(slot * 2, 0L, key) || getVolatile(slot * 2) == key) {
+                    setVolatile(slot * 2 + 1, value);
+                    return true;
+                }
+                slotKey = getVolatile(slot * 2);
+            }
+            if (slotKey == key) {
+                setVolatile(slot * 2 + 1, value);
+                return true;
+            }
+            // Keep looking for our own key further along, but remember where we could go instead
+            if (reclaimSlot < 0 && isExpired(getVolatile(slot * 2 + 1), nowEpochSeconds)) {
+                reclaimSlot = slot;
+                reclaimKey = slotKey;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        if (reclaimSlot >= 0 && compareAndSet(reclaimSlot * 2, reclaimKey, key)) {
+            setVolatile(reclaimSlot * 2 + 1, value);
+            return true;
+        }
+        return false;
+    }
+
+    private static long encode(HttpAction action, long expiresAtEpochSeconds, long tag) {
+        if (action == null
+            || (action.getRequestMetadata() != null && !action.getRequestMetadata().isEmpty())
+            || (action.getResponseHeaders() != null && !action.getResponseHeaders().isEmpty())
+            || (action.getResponseCookies() != null && !action.getResponseCookies().isEmpty())) {
+            return 0L;
+        }
+        long verdict;
+        long status = 0L;
+        if (action.getRequestProcess() == RequestProcess.ALLOW && action.getResponseStatus() == null) {
+            verdict = VERDICT_ALLOW;
+        } else if (action.getRequestProcess() == RequestProcess.BLOCK) {
+            verdict = VERDICT_BLOCK;
+            if (action.getResponseStatus() != null) {
+                if (action.getResponseStatus() <= 0L || action.getResponseStatus() > MAX_STATUS) {
+                    return 0L;
+                }
+                status = action.getResponseStatus();
+            }
+        } else {
+            return 0L;
+        }
+        return (expiresAtEpochSeconds << 32) | (status << 16) | (tag << 8) | verdict;
+    }
+
+    private static Optional<HttpAction> decode(long value) {
+        if ((value & 0xFFL) == VERDICT_ALLOW) {
+            return ALLOW;
+        }
+        long status = (value >>> 16) & MAX_STATUS;
+        return Optional.of(new HttpAction()
+                .requestProcess(RequestProcess.BLOCK)
+                .responseStatus(status == 0L ? null : status));
+    }
+
+    private static boolean isExpired(long value, long nowEpochSeconds) {
+        return (value >>> 32) <= nowEpochSeconds;
+    }
+
+    private static long keyTag(long key) {
+        return (key >>> 56) & 0xFFL;
+    }
+
+    private static long valueTag(long value) {
+        return (value >>> 8) & 0xFFL;
+    }
+
+    /**
+     * FNV-1a over the characters followed by a finalizer so both the low bits used for the slot and the high
+     * bits used for the tag are well mixed. Zero is reserved for empty slots.
+     */
+    static long hash(String ip) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < ip.length(); i++) {
+            hash ^= ip.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0L ? 1L : hash;
+    }
+}
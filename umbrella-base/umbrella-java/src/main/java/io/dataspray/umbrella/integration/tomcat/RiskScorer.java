@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.RiskPathRule;
+import io.dataspray.umbrella.client.model.RiskScoringConfig;
+
+import java.util.List;
+
+/**
+ * Scores requests from cheap local signals in HYBRID mode, as described on {@code Config.riskScoring}.
+ * <p>
+ * Weights are copied out of the config once when it is accepted. The IP reputation lookup and fingerprint
+ * hashing are skipped unless they carry a weight.
+ */
+class RiskScorer {
+
+    private final int threshold;
+    private final int missingSecFetch;
+    private final int missingAcceptLanguage;
+    private final int missingUserAgent;
+    private final int authorization;
+    private final int ipReputation;
+    private final int knownFingerprint;
+    private final String[] pathPrefixes;
+    private final int[] pathScores;
+
+    private RiskScorer(RiskScoringConfig config) {
+        this.threshold = config.getThreshold();
+        this.missingSecFetch = weight(config.getMissingSecFetch());
+        this.missingAcceptLanguage = weight(config.getMissingAcceptLanguage());
+        this.missingUserAgent = weight(config.getMissingUserAgent());
+        this.authorization = weight(config.getAuthorization());
+        this.ipReputation = weight(config.getIpReputation());
+        this.knownFingerprint = weight(config.getKnownFingerprint());
+        List<RiskPathRule> pathRules = config.getPathRules() == null ? List.of() : config.getPathRules();
+        this.pathPrefixes = new String[pathRules.size()];
+        this.pathScores = new int[pathRules.size()];
+        for (int i = 0; i < pathRules.size(); i++) {
+            pathPrefixes[i] = pathRules.get(i).getPrefix();
+            pathScores[i] = pathRules.get(i).getScore();
+        }
+    }
+
+    /**
+     * @return Scorer for the given config, or null without one, in which case every request is risky
+     */
+    static RiskScorer create(RiskScoringConfig config) {
+        return config == null ? null : new RiskScorer(config);
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    int score(HttpMetadata data, IpReputationTable ipReputationTable, FingerprintFilter fingerprintFilter) {
+        int score = 0;
+        if (data.gethSecFetchSite() == null
+            && data.gethSecFetchMode() == null
+            && data.gethSecFetchDest() == null
+            && data.gethSecFetchUser() == null) {
+            score += missingSecFetch;
+        }
+        if (data.gethAcceptLanguage() == null) {
+            score += missingAcceptLanguage;
+        }
+        if (data.gethUserAgent() == null) {
+            score += missingUserAgent;
+        }
+        if (data.gethAuthPrefix() != null) {
+            score += authorization;
+        }
+        if (ipReputation != 0 && data.getIp() != null && ipReputationTable.score(data.getIp()) > 0) {
+            score += ipReputation;
+        }
+        if (knownFingerprint != 0 && fingerprintFilter != null && fingerprintFilter.mightContainAny(data)) {
+            score += knownFingerprint;
+        }
+        if (data.getUri() != null) {
+            for (int i = 0; i < pathPrefixes.length; i++) {
+                if (data.getUri().startsWith(pathPrefixes[i])) {
+                    score += pathScores[i];
+                    break;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static int weight(Integer weight) {
+        return weight == null ? 0 : weight;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpEventRollup;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Counts MONITOR events per IP, method, normalized URI, User-Agent and header order over a window.
+ * <p>
+ * Memory is bounded by keeping at most a given number of keys using the Space-Saving heavy hitters
+ * algorithm: once full, a new key replaces the one with the lowest count and inherits that count as its
+ * overcount. Any key seen more often than the window's events divided by the number of keys is guaranteed
+ * to be kept, and no count is off by more than its overcount.
+ * <p>
+ * Events are added on request threads, so keys are spread over stripes with a lock and a share of the keys
+ * each, and every stripe keeps its entries in buckets of equal count, making both an increment and finding
+ * the lowest count constant time. The guarantee above then holds per stripe.
+ */
+class RollupAggregator {
+
+    static final int DEFAULT_MAX_KEYS = 1024;
+    private static final int STRIPES = 8;
+    /** Fewer keys than this per stripe are kept in fewer stripes, so small limits stay accurate */
+    private static final int MIN_KEYS_PER_STRIPE = 64;
+    private static final String ID_SEGMENT = ":id";
+    /** Hex segments at least this long, such as hashes and UUIDs, are taken as identifiers */
+    private static final int MIN_HEX_ID_LENGTH = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private volatile long windowStartMs;
+
+    RollupAggregator(long nowMs) {
+        this.windowStartMs = nowMs;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void add(HttpMetadata data, int maxKeys, long nowMs) {
+        long tsMs = data.getTs() == null ? nowMs : data.getTs().toEpochMilli();
+        Key key = new Key(
+                data.getIp(),
+                data.getMethod(),
+                normalizeUri(data.getUri()),
+                data.gethUserAgent() == null ? 0L : Fingerprints.userAgent(data.gethUserAgent()),
+                data.getHeaderNames() == null || data.getHeaderNames().isEmpty() ? 0L : Fingerprints.headerOrder(data.getHeaderNames()));
+        int stripeCount = Math.max(1, Math.min(STRIPES, maxKeys / MIN_KEYS_PER_STRIPE));
+        stripes[(key.hash & Integer.MAX_VALUE) % stripeCount].add(key, Math.max(1, maxKeys / stripeCount), tsMs);
+    }
+
+    long getWindowStartMs() {
+        return windowStartMs;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Takes the counts of the current window and starts a new one.
+     */
+    Window drain(long nowMs) {
+        // Merged by key, as a key may sit in two stripes after the limit changes mid window
+        Map<Key, HttpEventRollup> rollups = new HashMap<>();
+        long evicted = 0L;
+        for (Stripe stripe : stripes) {
+            evicted += stripe.drain(rollups);
+        }
+        Window window = new Window(windowStartMs, nowMs, new ArrayList<>(rollups.values()), evicted);
+        windowStartMs = nowMs;
+        return window;
+    }
+
+    /**
+     * Space-Saving stream summary: entries hang off a list of buckets in increasing count order, each holding
+     * the entries currently at its count.
+     */
+    private static class Stripe {
+        private final Map<Key, Entry> entries = new HashMap<>();
+        /** Bucket with the lowest count, only set if there are any entries */
+        private Bucket lowest;
+        private long evicted;
+
+        synchronized void add(Key key, int maxKeys, long tsMs) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                if (entries.size() >= maxKeys) {
+                    // Reuse the entry with the lowest count, the new key inherits it as its overcount
+                    entry = lowest.head;
+                    entries.remove(entry.key);
+                    entry.key = key;
+                    entry.overcount = lowest.count;
+                    entry.firstTsMs = tsMs;
+                    entry.lastTsMs = tsMs;
+                    evicted++;
+                    increment(entry);
+                } else {
+                    entry = new Entry(key, tsMs);
+                    attach(entry, 1L, null, lowest);
+                }
+                entries.put(key, entry);
+            } else {
+                increment(entry);
+                entry.firstTsMs = Math.min(entry.firstTsMs, tsMs);
+                entry.lastTsMs = Math.max(entry.lastTsMs, tsMs);
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        /**
+         * @return Number of keys evicted during the window
+         */
+        synchronized long drain(Map<Key, HttpEventRollup> rollups) {
+            entries.values().forEach(entry -> rollups.merge(entry.key, new HttpEventRollup()
+                    .ip(entry.key.ip)
+                    .method(entry.key.method)
+                    .uri(entry.key.uri)
+                    .userAgentHash(entry.key.userAgentHash)
+                    .headerOrderHash(entry.key.headerOrderHash)
+                    .count(entry.bucket.count)
+                    .overcount(entry.overcount)
+                    .firstTs(Instant.ofEpochMilli(entry.firstTsMs))
+                    .lastTs(Instant.ofEpochMilli(entry.lastTsMs)), (a, b) -> a
+                    .count(a.getCount() + b.getCount())
+                    .overcount(a.getOvercount() + b.getOvercount())
+                    .firstTs(a.getFirstTs().isBefore(b.getFirstTs()) ? a.getFirstTs() : b.getFirstTs())
+                    .lastTs(a.getLastTs().isAfter(b.getLastTs()) ? a.getLastTs() : b.getLastTs())));
+            long drainedEvicted = evicted;
+            entries.clear();
+            lowest = null;
+            evicted = 0L;
+            return drainedEvicted;
+        }
+
+        private void increment(Entry entry) {
+            Bucket bucket = entry.bucket;
+            long count = bucket.count + 1L;
+            Bucket previous = detach(entry) ? bucket.previous : bucket;
+            attach(entry, count, previous, previous == null ? lowest : previous.next);
+        }
+
+        /**
+         * Adds the entry to the bucket with the given count, placed between the given neighbors.
+         */
+        private void attach(Entry entry, long count, Bucket previous, Bucket next) {
+            Bucket bucket = next;
+            if (bucket == null || bucket.count != count) {
+                bucket = new Bucket(count);
+                bucket.previous = previous;
+                bucket.next = next;
+                if (previous == null) {
+                    lowest = bucket;
+                } else {
+                    previous.next = bucket;
+                }
+                if (next != null) {
+                    next.previous = bucket;
+                }
+            }
+            entry.bucket = bucket;
+            entry.previous = null;
+            entry.next = bucket.head;
+            if (bucket.head != null) {
+                bucket.head.previous = entry;
+            }
+            bucket.head = entry;
+        }
+
+        /**
+         * @return Whether the entry was the last of its bucket, which is then unlinked
+         */
+        private boolean detach(Entry entry) {
+            Bucket bucket = entry.bucket;
+            if (entry.previous == null) {
+                bucket.head = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            }
+            if (bucket.head != null) {
+                return false;
+            }
+            if (bucket.previous == null) {
+                lowest = bucket.next;
+            } else {
+                bucket.previous.next = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.previous = bucket.previous;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Drops the query and replaces numeric and long hex path segments with {@code :id} so requests for
+     * different resources of the same kind share a key. Returns the URI itself if nothing needs replacing.
+     */
+    static String normalizeUri(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        int end = uri.length();
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        StringBuilder normalized = null;
+        int segmentStart = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i < end && uri.charAt(i) != '/') {
+                continue;
+            }
+            if (isIdSegment(uri, segmentStart, i)) {
+                if (normalized == null) {
+                    normalized = new StringBuilder(end).append(uri, 0, segmentStart);
+                }
+                normalized.append(ID_SEGMENT);
+            } else if (normalized != null) {
+                normalized.append(uri, segmentStart, i);
+            }
+            if (i < end && normalized != null) {
+                normalized.append('/');
+            }
+            segmentStart = i + 1;
+        }
+        if (normalized != null) {
+            return normalized.toString();
+        }
+        return end == uri.length() ? uri : uri.substring(0, end);
+    }
+
+    private static boolean isIdSegment(String uri, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        boolean digitsOnly = true;
+        boolean hexOnly = true;
+        for (int i = start; i < end; i++) {
+            char c = uri.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            digitsOnly &= digit;
+            hexOnly &= digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+        }
+        return digitsOnly || (hexOnly && end - start >= MIN_HEX_ID_LENGTH);
+    }
+
+    static class Window {
+        final long startMs;
+        final long endMs;
+        final List<HttpEventRollup> rollups;
+        final long evicted;
+
+        private Window(long startMs, long endMs, List<HttpEventRollup> rollups, long evicted) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.rollups = rollups;
+            this.evicted = evicted;
+        }
+    }
+
+    private static class Bucket {
+        private final long count;
+        private Bucket previous;
+        private Bucket next;
+        private Entry head;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static class Entry {
+        private Key key;
+        private long overcount;
+        private long firstTsMs;
+        private long lastTsMs;
+        private Bucket bucket;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(Key key, long tsMs) {
+            this.key = key;
+            this.firstTsMs = tsMs;
+            this.lastTsMs = tsMs;
+        }
+    }
+
+    private static class Key {
+        private final String ip;
+        private final String method;
+        private final String uri;
+        private final long userAgentHash;
+        private final long headerOrderHash;
+        private final int hash;
+
+        private Key(String ip, String method, String uri, long userAgentHash, long headerOrderHash) {
+            this.ip = ip;
+            this.method = method;
+            this.uri = uri;
+            this.userAgentHash = userAgentHash;
+            this.headerOrderHash = headerOrderHash;
+            this.hash = Objects.hash(ip, method, uri, userAgentHash, headerOrderHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userAgentHash == other.userAgentHash
+                   && headerOrderHash == other.headerOrderHash
+                   && Objects.equals(ip, other.ip)
+                   && Objects.equals(method, other.method)
+                   && Objects.equals(uri, other.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
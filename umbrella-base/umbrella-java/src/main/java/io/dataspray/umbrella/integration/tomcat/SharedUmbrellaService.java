@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-context handle onto a JVM-wide runtime shared by every handle with the same org, API key and endpoints.
+ * The runtime is a single {@link UmbrellaServiceImpl}, so they share one transport, one ping loop and one
+ * batching pipeline, while each handle keeps its own node identity for the events it sends.
+ * <p>
+ * Runtimes are reference-counted and shut down once their last handle is. The options of the handle that
+ * starts a runtime apply to it; those of later handles are ignored, with a warning if they differ.
+ * <p>
+ * A runtime starts with a network call, made outside of the lock all runtimes share, so that an unreachable
+ * API only holds up the handles waiting for that same runtime.
+ * <p>
+ * Runtimes are shared per class loader: to share them across webapps, the Umbrella jars must be loaded by a
+ * common class loader, such as from Tomcat's {@code lib} directory.
+ */
+class SharedUmbrellaService implements UmbrellaService {
+
+    private static final Logger log = Logger.getLogger(SharedUmbrellaService.class.getCanonicalName());
+    private static final Map<RuntimeKey, SharedRuntime> runtimes = new HashMap<>();
+    private SharedRuntime runtime;
+    private String nodeIdentifier;
+    private boolean released;
+
+    @Override
+    public void init(
+            String orgName,
+            String apiKey,
+            List<String> nodeIdentifierParts,
+            List<String> endpointUrls,
+            UmbrellaOptions options) {
+        SharedRuntime sharedRuntime;
+        boolean starting;
+        synchronized (runtimes) {
+            if (runtime != null) {
+                throw new IllegalStateException("Already initialized");
+            }
+            RuntimeKey key = new RuntimeKey(orgName, apiKey, endpointUrls);
+            sharedRuntime = runtimes.get(key);
+            starting = sharedRuntime == null;
+            if (starting) {
+                sharedRuntime = new SharedRuntime(key, new UmbrellaServiceImpl(), options);
+                runtimes.put(key, sharedRuntime);
+            }
+            sharedRuntime.references++;
+            runtime = sharedRuntime;
+        }
+        if (starting) {
+            try {
+                sharedRuntime.service.init(orgName, apiKey, nodeIdentifierParts, endpointUrls, options);
+            } catch (RuntimeException ex) {
+                synchronized (runtimes) {
+                    runtimes.remove(sharedRuntime.key);
+                    runtime = null;
+                }
+                sharedRuntime.started.completeExceptionally(ex);
+                throw ex;
+            }
+            nodeIdentifier = sharedRuntime.service.getNodeIdentifier();
+            sharedRuntime.started.complete(null);
+            return;
+        }
+        try {
+            sharedRuntime.started.join();
+        } catch (CompletionException ex) {
+            synchronized (runtimes) {
+                runtime = null;
+            }
+            throw new IllegalStateException("Shared Umbrella runtime failed to start", ex.getCause());
+        }
+        log.log(Level.INFO, "Sharing existing Umbrella runtime for org {0}", orgName);
+        if (!Objects.equals(sharedRuntime.options, options)) {
+            log.log(Level.WARNING, "Ignoring Umbrella options of context {0}, the shared runtime for org {1} keeps"
+                                   + " the options it was started with", new Object[]{nodeIdentifierParts, orgName});
+        }
+        synchronized (runtimes) {
+            nodeIdentifier = sharedRuntime.service.attachNode(nodeIdentifierParts);
+        }
+    }
+
+    /**
+     * Number of runtimes currently running in this class loader.
+     */
+    static int runtimeCount() {
+        synchronized (runtimes) {
+            return runtimes.size();
+        }
+    }
+
+    UmbrellaServiceImpl getService() {
+        return runtime.service;
+    }
+
+    String getNodeIdentifier() {
+        return nodeIdentifier;
+    }
+
+    @Override
+    public List<String> additionalHeadersToCollect() {
+        return runtime.service.additionalHeadersToCollect();
+    }
+
+    @Override
+    public FieldMask fieldMask() {
+        return runtime.service.fieldMask();
+    }
+
+    @Override
+    public Optional<String> verdictTokenCookieName() {
+        return runtime.service.verdictTokenCookieName();
+    }
+
+    @Override
+    public boolean verifyVerdictToken(String token, String ip) {
+        return runtime.service.verifyVerdictToken(token, ip);
+    }
+
+    @Override
+    public void requestStarted() {
+        runtime.service.requestStarted();
+    }
+
+    @Override
+    public void requestFinished() {
+        runtime.service.requestFinished();
+    }
+
+    @Override
+    public HttpAction httpEvent(HttpMetadata data) {
+        return runtime.service.httpEvent(data, nodeIdentifier);
+    }
+
+    @Override
+    public CompletableFuture<HttpAction> httpEventAsync(HttpMetadata data) {
+        return runtime.service.httpEventAsync(data, nodeIdentifier);
+    }
+
+    @Override
+    public void httpOutcome(HttpOutcome outcome) {
+        runtime.service.httpOutcome(outcome);
+    }
+
+    @Override
+    public void customEvent(String eventType, String key, Map<String, String> metadata) {
+        runtime.service.customEvent(eventType, key, metadata);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> customEventDecision(String eventType, String key, Map<String, String> metadata) {
+        return runtime.service.customEventDecision(eventType, key, metadata, nodeIdentifier);
+    }
+
+    @Override
+    public Map<String, Number> metrics() {
+        return runtime.service.metrics();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (runtimes) {
+            if (runtime == null || released) {
+                return;
+            }
+            released = true;
+            runtime.service.detachNode(nodeIdentifier);
+            if (--runtime.references > 0) {
+                return;
+            }
+            runtimes.remove(runtime.key);
+        }
+        runtime.service.shutdown();
+    }
+
+    private static class SharedRuntime {
+        private final RuntimeKey key;
+        private final UmbrellaServiceImpl service;
+        private final UmbrellaOptions options;
+        /** Completed once the handle starting the runtime has initialized it */
+        private final CompletableFuture<Void> started = new CompletableFuture<>();
+        private int references;
+
+        private SharedRuntime(RuntimeKey key, UmbrellaServiceImpl service, UmbrellaOptions options) {
+            this.key = key;
+            this.service = service;
+            this.options = options;
+        }
+    }
+
+    private static class RuntimeKey {
+        private final String orgName;
+        private final String apiKey;
+        private final List<String> endpointUrls;
+
+        private RuntimeKey(String orgName, String apiKey, List<String> endpointUrls) {
+            this.orgName = orgName;
+            this.apiKey = apiKey;
+            this.endpointUrls = List.copyOf(endpointUrls);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RuntimeKey other = (RuntimeKey) o;
+            return orgName.equals(other.orgName)
+                   && apiKey.equals(other.apiKey)
+                   && endpointUrls.equals(other.endpointUrls);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orgName, apiKey, endpointUrls);
+        }
+    }
+}
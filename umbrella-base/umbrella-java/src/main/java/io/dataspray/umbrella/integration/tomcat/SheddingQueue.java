@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue that, once full, sheds its least valuable elements first.
+ * <p>
+ * Each {@link Priority} has its own lock-free queue and all share one capacity. An element offered to a full
+ * queue replaces the oldest element of the lowest priority below its own, or is itself shed if there is none.
+ * Elements are taken highest priority first. Shed elements are counted per priority under
+ * {@code <metricPrefix>.<priority>}.
+ */
+class SheddingQueue<T> {
+
+    enum Priority {
+        /** E.g. a static asset requested by a client seen before */
+        LOW,
+        NORMAL,
+        /** E.g. a client not seen before, a login or a known-bad client */
+        HIGH
+    }
+
+    enum Offer {
+        ADDED,
+        /** Added in place of a lower priority element, the queue did not grow */
+        REPLACED,
+        SHED
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    private final ConcurrentLinkedQueue<T>[] queues;
+    private final LongAdder[] shed;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    @SuppressWarnings("unchecked")
+    SheddingQueue(int capacity, UmbrellaMetrics metrics, String metricPrefix) {
+        this.capacity = capacity;
+        this.queues = new ConcurrentLinkedQueue[PRIORITIES.length];
+        this.shed = new LongAdder[PRIORITIES.length];
+        for (Priority priority : PRIORITIES) {
+            queues[priority.ordinal()] = new ConcurrentLinkedQueue<>();
+            shed[priority.ordinal()] = metrics.counter(metricPrefix + "." + priority.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    Offer offer(T element, Priority priority) {
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    queues[priority.ordinal()].offer(element);
+                    return Offer.ADDED;
+                }
+                continue;
+            }
+            for (int lower = 0; lower < priority.ordinal(); lower++) {
+                if (queues[lower].poll() != null) {
+                    shed[lower].increment();
+                    queues[priority.ordinal()].offer(element);
+                    return Offer.REPLACED;
+                }
+            }
+            // Lower priority queues may have drained since the size was read, so only give up if still full
+            if (size.get() < capacity) {
+                continue;
+            }
+            shed[priority.ordinal()].increment();
+            return Offer.SHED;
+        }
+    }
+
+    /**
+     * @return Highest priority element, or null if empty
+     */
+    T poll() {
+        while (true) {
+            for (int priority = PRIORITIES.length - 1; priority >= 0; priority--) {
+                T element = queues[priority].poll();
+                if (element != null) {
+                    size.decrementAndGet();
+                    return element;
+                }
+            }
+            // A counted element is briefly in no queue while it is being added or swapped in for a shed one
+            if (size.get() == 0) {
+                return null;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Takes back an element offered with the given priority, unless it was taken or shed in the meantime.
+     */
+    boolean remove(T element, Priority priority) {
+        if (!queues[priority.ordinal()].remove(element)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    long shedCount() {
+        long total = 0L;
+        for (LongAdder counter : shed) {
+            total += counter.sum();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+
+/**
+ * Ranks MONITOR events by their value to the server, so the least valuable are shed first when telemetry
+ * falls behind. Uses only signals already at hand and does not allocate.
+ */
+class TelemetryPriority {
+
+    /** Matched case-sensitively anywhere in the URI */
+    private static final String[] AUTH_PATH_KEYWORDS = {"login", "logon", "signin", "sign-in", "signup", "sign-up", "register", "auth", "token", "password"};
+    private static final String[] STATIC_ASSET_EXTENSIONS = {"css", "js", "mjs", "map", "png", "jpg", "jpeg", "gif", "svg", "ico", "webp", "avif", "woff", "woff2", "ttf", "eot"};
+
+    private TelemetryPriority() {
+    }
+
+    /**
+     * @param knownClient Whether events with the same header fingerprint were sent before
+     * @param listedIp    Whether the IP is in the IP reputation snapshot
+     */
+    static SheddingQueue.Priority of(HttpMetadata data, boolean knownClient, boolean listedIp) {
+        if (!knownClient || listedIp || data.gethAuthPrefix() != null || isAuthPath(data.getUri())) {
+            return SheddingQueue.Priority.HIGH;
+        }
+        if (isStaticAsset(data.getUri())) {
+            return SheddingQueue.Priority.LOW;
+        }
+        return SheddingQueue.Priority.NORMAL;
+    }
+
+    static boolean isAuthPath(String uri) {
+        if (uri == null) {
+            return false;
+        }
+        for (String keyword : AUTH_PATH_KEYWORDS) {
+            if (uri.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isStaticAsset(String uri) {
+        if (uri == null) {
+            return false;
+        }
+        int end = uri.indexOf('?');
+        if (end < 0) {
+            end = uri.length();
+        }
+        int dot = uri.lastIndexOf('.', end - 1);
+        if (dot < 0 || uri.lastIndexOf('/', end - 1) > dot) {
+            return false;
+        }
+        int length = end - dot - 1;
+        for (String extension : STATIC_ASSET_EXTENSIONS) {
+            if (extension.length() == length && uri.regionMatches(true, dot + 1, extension, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
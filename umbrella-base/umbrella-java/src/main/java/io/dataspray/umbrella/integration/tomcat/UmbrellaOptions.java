@@ -0,0 +1,237 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Optional settings for {@link UmbrellaService#init}. All settings have sensible defaults so an
+ * empty instance behaves the same as not passing any options.
+ */
+public class UmbrellaOptions {
+
+    private Path configSnapshotPath;
+    private boolean configWatch;
+    private Path verdictStorePath;
+    private int verdictStoreCapacity = 1 << 16;
+    private int keepWarmConnections = 2;
+    private long keepWarmIntervalMs = 30_000L;
+    private boolean hedging;
+    private boolean overloadProtection;
+    private int overloadMaxInFlight = 200;
+    private long overloadMaxLagMs = 200L;
+    private double overloadMaxThreadPoolUtilization = 0.9;
+    private double overloadSampleRate;
+
+    /**
+     * Location of the file holding the last accepted {@code Config}. When set, the config is restored
+     * from this file on startup before the first ping and rewritten whenever a new config is accepted.
+     * <p>
+     * The file is only checked for corruption, not authenticated, so whoever can write to it can choose the
+     * startup mode. Keep it in a directory only the server's user can write to, never a shared one such as
+     * {@code /tmp}. Unset by default.
+     */
+    public UmbrellaOptions configSnapshotPath(Path configSnapshotPath) {
+        this.configSnapshotPath = configSnapshotPath;
+        return this;
+    }
+
+    public Optional<Path> getConfigSnapshotPath() {
+        return Optional.ofNullable(configSnapshotPath);
+    }
+
+    /**
+     * Whether to long-poll the server for config changes so they apply within seconds rather than on the
+     * next ping. Falls back to pings alone if the server does not support it.
+     */
+    public UmbrellaOptions configWatch(boolean configWatch) {
+        this.configWatch = configWatch;
+        return this;
+    }
+
+    public boolean isConfigWatch() {
+        return configWatch;
+    }
+
+    /**
+     * Location of a memory-mapped file holding reusable verdicts, shared by every process on this host that
+     * points at the same file. When unset, reusable verdicts are kept in the heap of this process only.
+     * <p>
+     * Verdicts in the file are not authenticated, so whoever can write to it can let any IP past BLOCKING checks
+     * on every process sharing it. Keep it in a directory only the server's user can write to, never a shared one
+     * such as {@code /tmp}. On POSIX file systems a file that group or others can write to, or that another user
+     * owns, is refused, and verdicts are kept in the heap instead.
+     */
+    public UmbrellaOptions verdictStorePath(Path verdictStorePath) {
+        this.verdictStorePath = verdictStorePath;
+        return this;
+    }
+
+    public Optional<Path> getVerdictStorePath() {
+        return Optional.ofNullable(verdictStorePath);
+    }
+
+    /**
+     * Number of client IPs the verdict store can hold, rounded up to a power of two. Every process sharing a
+     * store file must use the same capacity. Each entry takes 16 bytes.
+     */
+    public UmbrellaOptions verdictStoreCapacity(int verdictStoreCapacity) {
+        this.verdictStoreCapacity = verdictStoreCapacity;
+        return this;
+    }
+
+    public int getVerdictStoreCapacity() {
+        return verdictStoreCapacity;
+    }
+
+    /**
+     * Minimum number of connections kept open to the Umbrella API while in BLOCKING mode, so checks after
+     * a quiet period do not pay for connection setup. Zero disables keeping connections warm.
+     */
+    public UmbrellaOptions keepWarmConnections(int keepWarmConnections) {
+        this.keepWarmConnections = keepWarmConnections;
+        return this;
+    }
+
+    public int getKeepWarmConnections() {
+        return keepWarmConnections;
+    }
+
+    /**
+     * How often the warm connections are exercised. Must be shorter than the idle timeout of any proxy or
+     * load balancer in front of the Umbrella API, which is commonly 60 seconds. Capped at half of the
+     * client's connection pool keep-alive, so the pool never evicts the warm connections.
+     */
+    public UmbrellaOptions keepWarmIntervalMs(long keepWarmIntervalMs) {
+        this.keepWarmIntervalMs = keepWarmIntervalMs;
+        return this;
+    }
+
+    public long getKeepWarmIntervalMs() {
+        return keepWarmIntervalMs;
+    }
+
+    /**
+     * Whether a BLOCKING check slower than nine in ten recent ones is repeated on another endpoint or
+     * connection, using whichever answers first. Hedges add at most 5% to the number of checks.
+     */
+    public UmbrellaOptions hedging(boolean hedging) {
+        this.hedging = hedging;
+        return this;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * Whether to suspend BLOCKING checks while this server is overloaded, handling those requests as in
+     * MONITOR mode until it recovers. Requires the integration to report requests entering and leaving it.
+     */
+    public UmbrellaOptions overloadProtection(boolean overloadProtection) {
+        this.overloadProtection = overloadProtection;
+        return this;
+    }
+
+    public boolean isOverloadProtection() {
+        return overloadProtection;
+    }
+
+    /**
+     * Requests in flight through the integration at which this server counts as overloaded. Zero ignores them.
+     */
+    public UmbrellaOptions overloadMaxInFlight(int overloadMaxInFlight) {
+        this.overloadMaxInFlight = overloadMaxInFlight;
+        return this;
+    }
+
+    public int getOverloadMaxInFlight() {
+        return overloadMaxInFlight;
+    }
+
+    /**
+     * Delay in running a periodic task, caused by CPU saturation or GC pauses, at which this server counts as
+     * overloaded. Zero ignores it.
+     */
+    public UmbrellaOptions overloadMaxLagMs(long overloadMaxLagMs) {
+        this.overloadMaxLagMs = overloadMaxLagMs;
+        return this;
+    }
+
+    public long getOverloadMaxLagMs() {
+        return overloadMaxLagMs;
+    }
+
+    /**
+     * Busy fraction of the container's thread pool, read from Tomcat's MBeans over JMX, at which this server
+     * counts as overloaded. Zero does not read it.
+     */
+    public UmbrellaOptions overloadMaxThreadPoolUtilization(double overloadMaxThreadPoolUtilization) {
+        this.overloadMaxThreadPoolUtilization = overloadMaxThreadPoolUtilization;
+        return this;
+    }
+
+    public double getOverloadMaxThreadPoolUtilization() {
+        return overloadMaxThreadPoolUtilization;
+    }
+
+    /**
+     * Fraction of requests still checked synchronously while overloaded, between 0 and 1.
+     */
+    public UmbrellaOptions overloadSampleRate(double overloadSampleRate) {
+        this.overloadSampleRate = overloadSampleRate;
+        return this;
+    }
+
+    public double getOverloadSampleRate() {
+        return overloadSampleRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UmbrellaOptions other = (UmbrellaOptions) o;
+        return configWatch == other.configWatch
+               && verdictStoreCapacity == other.verdictStoreCapacity
+               && keepWarmConnections == other.keepWarmConnections
+               && keepWarmIntervalMs == other.keepWarmIntervalMs
+               && hedging == other.hedging
+               && overloadProtection == other.overloadProtection
+               && overloadMaxInFlight == other.overloadMaxInFlight
+               && overloadMaxLagMs == other.overloadMaxLagMs
+               && Double.compare(overloadMaxThreadPoolUtilization, other.overloadMaxThreadPoolUtilization) == 0
+               && Double.compare(overloadSampleRate, other.overloadSampleRate) == 0
+               && Objects.equals(configSnapshotPath, other.configSnapshotPath)
+               && Objects.equals(verdictStorePath, other.verdictStorePath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(configSnapshotPath, configWatch, verdictStorePath, verdictStoreCapacity, keepWarmConnections,
+                keepWarmIntervalMs, hedging, overloadProtection, overloadMaxInFlight, overloadMaxLagMs,
+                overloadMaxThreadPoolUtilization, overloadSampleRate);
+    }
+}
@@ -24,9 +24,12 @@ package io.dataspray.umbrella.integration.tomcat;
 
 import io.dataspray.umbrella.client.model.HttpAction;
 import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface UmbrellaService {
 
@@ -34,15 +37,110 @@ public interface UmbrellaService {
         return new UmbrellaServiceImpl();
     }
 
+    /**
+     * Like {@link #create()}, but once initialized shares a single transport, ping loop and batching pipeline
+     * with every other shared instance of the same org, API key and endpoints in this class loader, while
+     * keeping its own node identity. The shared runtime stops when the last instance is shut down.
+     */
+    static UmbrellaService createShared() {
+        return new SharedUmbrellaService();
+    }
+
+    /**
+     * @deprecated Use {@link #init(String, String, List, List)}, which takes several endpoints to fail over between
+     */
+    @Deprecated
+    default void init(
+            String orgName,
+            String apiKey,
+            List<String> nodeIdentifierParts,
+            Optional<String> endpointUrl) {
+        init(orgName, apiKey, nodeIdentifierParts, endpointUrl.map(List::of).orElseGet(List::of));
+    }
+
+    default void init(
+            String orgName,
+            String apiKey,
+            List<String> nodeIdentifierParts,
+            List<String> endpointUrls) {
+        init(orgName, apiKey, nodeIdentifierParts, endpointUrls, new UmbrellaOptions());
+    }
+
     void init(
             String orgName,
             String apiKey,
             List<String> nodeIdentifierParts,
-            Optional<String> endpointUrl);
+            List<String> endpointUrls,
+            UmbrellaOptions options);
 
     List<String> additionalHeadersToCollect();
 
+    /**
+     * Fields of {@link HttpMetadata} to collect as of the latest config. Fetch it once per request and leave
+     * fields it does not collect unset, so neither the request nor the wire pays for fields the server ignores.
+     */
+    FieldMask fieldMask();
+
+    /**
+     * Name of the cookie carrying a verdict token, if the server issues them and the current mode waits for the
+     * API. Requests with a token that passes {@link #verifyVerdictToken} can skip {@link #httpEvent} altogether.
+     */
+    Optional<String> verdictTokenCookieName();
+
+    /**
+     * Verify a verdict token locally, without calling the Umbrella API. Fails for an IP the local IP reputation
+     * snapshot blocks, so that {@link #httpEvent} gets to block it.
+     *
+     * @param ip Client IP as it would be reported in {@link HttpMetadata#getIp()}
+     */
+    boolean verifyVerdictToken(String token, String ip);
+
+    /**
+     * Report a request entering the integration, used to sense overload when
+     * {@link UmbrellaOptions#overloadProtection} is enabled. Every call must be followed by
+     * {@link #requestFinished()} once the request has been handled, whether or not it was checked.
+     */
+    void requestStarted();
+
+    void requestFinished();
+
     HttpAction httpEvent(HttpMetadata data);
 
+    /**
+     * Non-blocking counterpart of {@link #httpEvent} for event-loop servers.
+     * <p>
+     * The returned future never completes exceptionally: on failure, or once the configured timeout elapses,
+     * it completes with an allow action. It is completed on an I/O or timer thread, so dependent stages must
+     * not block.
+     */
+    CompletableFuture<HttpAction> httpEventAsync(HttpMetadata data);
+
+    /**
+     * Queue the outcome of a request allowed by {@link #httpEvent}. Only expected when the event was given
+     * an {@link HttpMetadata#getEventId() event id}, which happens when the server asks for outcomes.
+     * Never blocks; outcomes are shipped in batches in the background.
+     */
+    void httpOutcome(HttpOutcome outcome);
+
+    /**
+     * Report a custom event such as a login attempt, signup or checkout without waiting for a decision.
+     * Never blocks; events are sampled at the server provided rate and shipped in batches in the background.
+     */
+    void customEvent(String eventType, String key, Map<String, String> metadata);
+
+    /**
+     * Send a custom event and asynchronously receive the action to take for it.
+     * <p>
+     * The returned future never completes exceptionally: when disabled, overloaded, past the configured
+     * timeout (five seconds if unset) or on any failure it completes with an empty action. It is completed on
+     * an I/O or timer thread, so dependent stages must not block.
+     */
+    CompletableFuture<Map<String, String>> customEventDecision(String eventType, String key, Map<String, String> metadata);
+
+    /**
+     * Point-in-time snapshot of internal counters and gauges, keyed by metric name.
+     */
+    Map<String, Number> metrics();
+
     void shutdown();
 }
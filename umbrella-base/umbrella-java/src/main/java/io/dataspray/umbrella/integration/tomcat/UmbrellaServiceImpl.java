@@ -32,29 +32,59 @@ import com.google.gson.JsonSerializer;
 import io.dataspray.umbrella.client.ApiClient;
 import io.dataspray.umbrella.client.ApiException;
 import io.dataspray.umbrella.client.HealthApi;
-import io.dataspray.umbrella.client.IngestApi;
 import io.dataspray.umbrella.client.JSON;
+import io.dataspray.umbrella.client.model.BehaviorTrackingConfig;
 import io.dataspray.umbrella.client.model.Config;
+import io.dataspray.umbrella.client.model.CustomEvent;
+import io.dataspray.umbrella.client.model.CustomEventBatchRequest;
+import io.dataspray.umbrella.client.model.EventRequest;
+import io.dataspray.umbrella.client.model.EventResponse;
+import io.dataspray.umbrella.client.model.FingerprintFilterConfig;
 import io.dataspray.umbrella.client.model.HttpAction;
 import io.dataspray.umbrella.client.model.HttpEventRequest;
 import io.dataspray.umbrella.client.model.HttpEventResponse;
+import io.dataspray.umbrella.client.model.HttpEventRollupRequest;
 import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
+import io.dataspray.umbrella.client.model.HttpOutcomeBatchRequest;
+import io.dataspray.umbrella.client.model.IpReputationConfig;
+import io.dataspray.umbrella.client.model.LoadReport;
+import io.dataspray.umbrella.client.model.MonitorRollupConfig;
 import io.dataspray.umbrella.client.model.OperationMode;
 import io.dataspray.umbrella.client.model.PingRequest;
 import io.dataspray.umbrella.client.model.PingResponse;
 import io.dataspray.umbrella.client.model.RequestProcess;
+import io.dataspray.umbrella.client.model.VerdictTokenConfig;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -64,58 +94,283 @@ class UmbrellaServiceImpl implements UmbrellaService {
 
     private static final Logger log = Logger.getLogger(UmbrellaServiceImpl.class.getCanonicalName());
     private static final long PING_INTERVAL_MINUTES = 10L;
+    private static final long CONFIG_WATCH_READ_TIMEOUT_GRACE_SECONDS = 30L;
+    private static final int EVENT_QUEUE_CAPACITY = 10_000;
+    private static final int EVENT_BATCH_SIZE = 500;
+    private static final long EVENT_FLUSH_INTERVAL_MS = 1_000L;
+    private static final int MAX_PENDING_DECISIONS = 1_000;
+    private static final long DEFAULT_DECISION_TIMEOUT_MS = 5_000L;
+    private static final long IP_REPUTATION_RETRY_DELAY_MS = 60_000L;
+    private static final long IP_REPUTATION_DOWNLOAD_TIMEOUT_SECONDS = 120L;
+    private static final int TELEMETRY_THREADS = 4;
+    private static final int MAX_PENDING_TELEMETRY = 10_000;
+    private static final int MAX_CONCURRENT_BLOCKING_CALLS = 128;
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long CONNECTION_KEEP_ALIVE_MINUTES = 5L;
+    private static final double HEDGE_BUDGET = 0.05d;
+    private static final int MAX_ERROR_TRACES_PER_INTERVAL = 5;
+    private static final long ERROR_SUMMARY_INTERVAL_SECONDS = 60L;
+    private static final long ROLLUP_CHECK_INTERVAL_MS = 1_000L;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_SECONDS = 5L;
     static final HttpAction DEFAULT_ALLOW_ACTION = new HttpAction()
             .requestProcess(RequestProcess.ALLOW);
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
     private String orgName;
-    private HealthApi healthApi;
-    private IngestApi ingestApi;
-    private String nodeIdentifier;
+    EndpointSelector endpointSelector;
+    /** Identity batches and watches are attributed to, re-elected from the attached ones once it detaches */
+    private volatile String nodeIdentifier;
+    /** Node identities pinged on behalf of, in the order they were attached through {@link SharedUmbrellaService} */
+    private final Set<String> nodeIdentifiers = new CopyOnWriteArraySet<>();
+    /**
+     * Base client whose connection pool every endpoint and the config watcher share. Its dispatcher carries the
+     * async calls of BLOCKING checks and custom event decisions; OkHttp's default of 5 calls per host would
+     * otherwise queue them. The dispatcher does not limit synchronous calls, so BLOCKING checks are bounded by
+     * {@link #blockingChecks} instead.
+     */
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .dispatcher(createBlockingLaneDispatcher())
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .build();
+    /** Blocking lane, BLOCKING checks in flight; a check finding no permit is allowed without asking the API */
+    final Semaphore blockingChecks = new Semaphore(MAX_CONCURRENT_BLOCKING_CALLS);
+    private final LongAdder blockingChecksRejected = metrics.counter("lane.blocking.rejected");
+    /** Only set if config watching is enabled, has its own dispatcher so the long poll takes no blocking lane slot */
+    private OkHttpClient watchHttpClient;
+    private Optional<ConfigSnapshotStore> configSnapshotStore = Optional.empty();
+    private volatile Config persistedConfig;
+    ConfigWatcher configWatcher;
+    private ConnectionWarmer connectionWarmer;
+    /** Only set if hedging is enabled */
+    private HedgePolicy hedgePolicy;
+    /** Only set if hedging is enabled, times hedges apart from the lanes so a busy lane cannot delay them */
+    private ScheduledThreadPoolExecutor hedgeExecutor;
+    /** Only set if overload protection is enabled */
+    private LoadMonitor loadMonitor;
+    /** Only set if overload protection is enabled, samples on a thread of its own so its lag reflects the host's */
+    private ScheduledThreadPoolExecutor loadMonitorExecutor;
+    private double overloadSampleRate;
+    private final LongAdder overloadDegradedEvents = metrics.counter("load.degradedEvents");
+    EventBatcher<HttpOutcome> outcomeBatcher;
+    EventBatcher<CustomEvent> customEventBatcher;
+    private final LongAdder customEventsSampledOut = metrics.counter("customEvent.sampledOut");
+    private final Semaphore pendingDecisions = new Semaphore(MAX_PENDING_DECISIONS);
+    private final LongAdder decisionsDropped = metrics.counter("customEventDecision.dropped");
+    private final LongAdder decisionsFailed = metrics.counter("customEventDecision.failed");
+    private final LongAdder decisionsTimedOut = metrics.counter("customEventDecision.timedOut");
+    private final LongAdder verdictTokensAccepted = metrics.counter("verdictToken.accepted");
+    private final LongAdder verdictTokensRejected = metrics.counter("verdictToken.rejected");
+    private volatile VerdictTokenVerifier verdictTokenVerifier;
+    private VerdictStore verdictStore = new HeapVerdictStore(1);
+    private final LongAdder verdictStoreHits = metrics.counter("verdictStore.hits");
+    private final LongAdder verdictStoreMisses = metrics.counter("verdictStore.misses");
+    private final LongAdder verdictStoreFull = metrics.counter("verdictStore.full");
+    private volatile IpReputationTable ipReputationTable = IpReputationTable.EMPTY;
+    private volatile String ipReputationVersion;
+    private volatile FingerprintFilter fingerprintFilter;
+    /** Only set if risk scoring is configured, otherwise every request is risky in HYBRID mode */
+    private volatile RiskScorer riskScorer;
+    private final LongAdder riskHigh = metrics.counter("risk.high");
+    private final LongAdder riskLow = metrics.counter("risk.low");
+    private volatile ActionTemplates actionTemplates = ActionTemplates.EMPTY;
+    private volatile FieldMask fieldMask = FieldMask.ALL;
+    private final LongAdder actionTemplatesMissing = metrics.counter("actionTemplate.missing");
+    private final RollupAggregator rollupAggregator = new RollupAggregator(System.currentTimeMillis());
+    private final LongAdder rollupEvents = metrics.counter("rollup.events");
+    private final LongAdder rollupsSent = metrics.counter("rollup.sent");
+    private final LongAdder rollupsFailed = metrics.counter("rollup.failed");
+    private final BehaviorTracker behaviorTracker = new BehaviorTracker(System.currentTimeMillis());
+    private final HeaderFpDictionary headerFpDictionary = new HeaderFpDictionary(HeaderFpDictionary.DEFAULT_CAPACITY);
+    private final LongAdder headerNamesElided = metrics.counter("headerFp.elided");
+    private final LongAdder fingerprintFilterHits = metrics.counter("fingerprintFilter.hits");
+    private final LongAdder fingerprintFilterMisses = metrics.counter("fingerprintFilter.misses");
+    /** Whether a reload is queued on the loader thread that has not yet read the latest config */
+    private final AtomicBoolean ipReputationReloadPending = new AtomicBoolean();
+    private volatile long ipReputationRetryAtMs;
+    private final LongAdder ipReputationBlocked = metrics.counter("ipReputation.blocked");
+    private final LongAdder ipReputationLoadFailed = metrics.counter("ipReputation.loadFailed");
     volatile Config config = new Config()
             .mode(OperationMode.DISABLED);
+    /** Set when the API rate limits us, disabling every mode until the next config arrives */
+    private volatile boolean rateLimited;
     /**
-     * Used for:
+     * Control lane, kept free of telemetry so config changes are never delayed behind it. Used for:
      * - Background pinging
+     * - Config watch retries
+     */
+    ScheduledThreadPoolExecutor executor;
+    /** Loads IP reputation snapshots one at a time, apart from the control lane as they may be large */
+    private ScheduledThreadPoolExecutor ipReputationExecutor;
+    /**
+     * Telemetry lane, used for:
      * - Async events (in MONITOR mode)
+     * - Flushing batched outcomes and custom events
      */
-    ScheduledExecutorService executor;
+    ScheduledThreadPoolExecutor telemetryExecutor;
+    private final SheddingQueue<MonitorEvent> telemetryQueue = new SheddingQueue<>(MAX_PENDING_TELEMETRY, metrics, "lane.telemetry.shed");
+    private final AtomicInteger sendingTelemetry = new AtomicInteger();
+    /** Failures that can happen on every request are reported through these to keep logging bounded */
+    private final ErrorReporter httpEventErrors = new ErrorReporter(log, Level.SEVERE,
+            "Failed to validate http event", MAX_ERROR_TRACES_PER_INTERVAL, metrics, "httpEvent.tracesSuppressed");
+    private final ErrorReporter publishErrors = new ErrorReporter(log, Level.WARNING,
+            "Failed to publish http event", MAX_ERROR_TRACES_PER_INTERVAL, metrics, "httpEventPublish.tracesSuppressed");
+    private final ErrorReporter customEventErrors = new ErrorReporter(log, Level.WARNING,
+            "Failed to validate custom event", MAX_ERROR_TRACES_PER_INTERVAL, metrics, "customEventDecision.tracesSuppressed");
+
+    static {
+        // Add Gson adapter for Instant since we are using it instead of OffsetDateTime. The Gson instance is
+        // global, so only set it up once rather than wrapping it again on every init.
+        JSON.setGson(JSON.getGson().newBuilder()
+                .registerTypeAdapter(Instant.class, new InstantTypeConverter())
+                .create());
+    }
 
     @Override
     public void init(
             String orgName,
             String apiKey,
             List<String> nodeIdentifierParts,
-            Optional<String> endpointUrl) {
+            List<String> endpointUrls,
+            UmbrellaOptions options) {
 
         this.orgName = orgName;
         this.nodeIdentifier = constructNodeIdentifier(nodeIdentifierParts);
-        ApiClient apiClient = initApiClient(apiKey, endpointUrl);
-        this.healthApi = new HealthApi(apiClient);
-        this.ingestApi = new IngestApi(apiClient);
+        this.nodeIdentifiers.add(nodeIdentifier);
+        List<Optional<String>> urls = endpointUrls.isEmpty()
+                ? Collections.singletonList(Optional.empty())
+                : endpointUrls.stream().map(Optional::of).collect(Collectors.toList());
+        this.endpointSelector = new EndpointSelector(urls.stream()
+                .map(endpointUrl -> new Endpoint(initApiClient(apiKey, endpointUrl)))
+                .collect(Collectors.toList()), metrics);
+        this.outcomeBatcher = new EventBatcher<>(
+                "outcome",
+                EVENT_QUEUE_CAPACITY,
+                EVENT_BATCH_SIZE,
+                EVENT_FLUSH_INTERVAL_MS,
+                batch -> {
+                    HttpOutcomeBatchRequest request = new HttpOutcomeBatchRequest()
+                            .nodeId(nodeIdentifier)
+                            .outcomes(batch);
+                    endpointSelector.call(endpoint -> {
+                        endpoint.getIngestApi().httpOutcomeBatch(orgName, request);
+                        return null;
+                    });
+                },
+                metrics);
+        // Custom events go to their own batch endpoint, so unlike MONITOR events they cannot be sent one by one
+        // from the telemetry queue. They are batched like outcomes instead, flushed on the telemetry lane with
+        // the same endpoint failover and retries, and counted in the lane's pending and dropped metrics.
+        this.customEventBatcher = new EventBatcher<>(
+                "customEvent",
+                EVENT_QUEUE_CAPACITY,
+                EVENT_BATCH_SIZE,
+                EVENT_FLUSH_INTERVAL_MS,
+                batch -> {
+                    CustomEventBatchRequest request = new CustomEventBatchRequest()
+                            .nodeId(nodeIdentifier)
+                            .currentMode(effectiveMode(config))
+                            .events(batch);
+                    endpointSelector.call(endpoint -> {
+                        endpoint.getIngestApi().customEventBatch(orgName, request);
+                        return null;
+                    });
+                },
+                metrics);
+        metrics.gauge("customEventDecision.pending", () -> MAX_PENDING_DECISIONS - pendingDecisions.availablePermits());
+        metrics.gauge("ipReputation.size", () -> ipReputationTable.size());
+        metrics.gauge("lane.control.depth", () -> depth(executor));
+        metrics.gauge("lane.telemetry.depth", () -> depth(telemetryExecutor));
+        metrics.gauge("rollup.keys", rollupAggregator::size);
+        metrics.gauge("behavior.clients", behaviorTracker::size);
+        metrics.gauge("lane.telemetry.pending", () -> telemetryQueue.size() + sendingTelemetry.get()
+                + outcomeBatcher.size() + customEventBatcher.size());
+        metrics.gauge("lane.telemetry.dropped", () -> telemetryQueue.shedCount()
+                + outcomeBatcher.droppedCount() + customEventBatcher.droppedCount());
+        metrics.gauge("lane.blocking.depth", () -> MAX_CONCURRENT_BLOCKING_CALLS - blockingChecks.availablePermits()
+                + MAX_PENDING_DECISIONS - pendingDecisions.availablePermits());
+        metrics.gauge("connectionPool.connections", () -> httpClient.connectionPool().connectionCount());
+        metrics.gauge("connectionPool.idle", () -> httpClient.connectionPool().idleConnectionCount());
+
+        this.verdictStore = createVerdictStore(options);
+
+        // Resume in the last known mode until the server tells us otherwise
+        this.configSnapshotStore = options.getConfigSnapshotPath().map(ConfigSnapshotStore::new);
+        this.configSnapshotStore.flatMap(ConfigSnapshotStore::load).ifPresent(snapshot -> {
+            log.log(Level.INFO, "Restored Umbrella config snapshot in mode {0}", snapshot.getMode());
+            persistedConfig = snapshot;
+            onNewConfig(snapshot);
+        });
 
         try {
             doPing();
         } catch (ApiException ex) {
             if (ex.getCode() == 403) {
                 log.log(Level.SEVERE, "Api key is invalid, continuing with Umbrella Filter disabled", ex);
+                // Do not keep operating on a restored snapshot with a key the server rejects
+                config = new Config()
+                        .mode(OperationMode.DISABLED);
                 return;
             } else {
                 log.log(Level.SEVERE, "Failed to initialize Umbrella, continuing with Umbrella Filter disabled but will retry later", ex);
             }
         }
 
-        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread thread = new Thread(r);
-            thread.setName("Umbrella Service");
-            thread.setDaemon(true);
-            return thread;
-        });
-        executor.scheduleAtFixedRate(() -> {
-            try {
-                doPing();
-            } catch (Exception ex) {
-                log.log(Level.WARNING, "Failed to ping Umbrella", ex);
-            }
-        }, PING_INTERVAL_MINUTES, PING_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        this.executor = createLane("Umbrella Service", 1);
+        this.ipReputationExecutor = createLane("Umbrella IP Reputation", 1);
+        this.telemetryExecutor = createLane("Umbrella Telemetry", TELEMETRY_THREADS);
+        if (options.isHedging()) {
+            this.hedgeExecutor = createLane("Umbrella Hedge", 1);
+            this.hedgePolicy = new HedgePolicy(HEDGE_BUDGET);
+        }
+        if (options.isOverloadProtection()) {
+            this.loadMonitorExecutor = createLane("Umbrella Load Monitor", 1);
+            this.overloadSampleRate = options.getOverloadSampleRate();
+            this.loadMonitor = new LoadMonitor(
+                    options.getOverloadMaxInFlight(),
+                    options.getOverloadMaxLagMs(),
+                    options.getOverloadMaxThreadPoolUtilization(),
+                    // Let the server know right away rather than on the next scheduled ping
+                    this::pingSoon,
+                    metrics);
+            loadMonitor.start(loadMonitorExecutor);
+        }
+        executor.scheduleAtFixedRate(this::tryPing, PING_INTERVAL_MINUTES, PING_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        executor.scheduleAtFixedRate(this::flushErrorReports, ERROR_SUMMARY_INTERVAL_SECONDS, ERROR_SUMMARY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        outcomeBatcher.start(telemetryExecutor);
+        customEventBatcher.start(telemetryExecutor);
+        telemetryExecutor.scheduleWithFixedDelay(() -> flushRollup(false), ROLLUP_CHECK_INTERVAL_MS, ROLLUP_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (options.getKeepWarmConnections() > 0) {
+            this.connectionWarmer = new ConnectionWarmer(
+                    httpClient,
+                    Math.min(options.getKeepWarmConnections(), MAX_IDLE_CONNECTIONS),
+                    options.getKeepWarmIntervalMs(),
+                    TimeUnit.MINUTES.toMillis(CONNECTION_KEEP_ALIVE_MINUTES),
+                    executor,
+                    () -> endpointSelector.best().getUrl(),
+                    () -> canBlock(effectiveMode(config)),
+                    metrics);
+            connectionWarmer.start();
+        }
+        // Config from the initial ping arrived before we could download in the background
+        loadIpReputation(config.getIpReputation());
+
+        if (options.isConfigWatch()) {
+            // Long-poll needs its own client as the shared one may carry a short call timeout
+            ApiClient watchApiClient = initApiClient(apiKey, Optional.empty());
+            this.watchHttpClient = httpClient.newBuilder()
+                    .dispatcher(new Dispatcher())
+                    .readTimeout(ConfigWatcher.WAIT_SECONDS + CONFIG_WATCH_READ_TIMEOUT_GRACE_SECONDS, TimeUnit.SECONDS)
+                    .build();
+            watchApiClient.setHttpClient(watchHttpClient);
+            this.configWatcher = new ConfigWatcher(
+                    new HealthApi(watchApiClient),
+                    orgName,
+                    this::getNodeIdentifier,
+                    executor,
+                    () -> endpointSelector.best().getUrl(),
+                    () -> config,
+                    this::onNewConfig);
+            configWatcher.start();
+        }
     }
 
     @Override
@@ -123,37 +378,99 @@ class UmbrellaServiceImpl implements UmbrellaService {
         return config.getCollectAdditionalHeaders() == null ? Collections.emptyList() : config.getCollectAdditionalHeaders();
     }
 
+    @Override
+    public FieldMask fieldMask() {
+        return fieldMask;
+    }
+
     private ApiClient initApiClient(String apiKey, Optional<String> endpointUrl) {
-        // Add Gson adapter for Instant since we are using it instead of OffsetDateTime
-        JSON.setGson(JSON.getGson().newBuilder()
-                .registerTypeAdapter(Instant.class, new InstantTypeConverter())
-                .create());
-        ApiClient apiClient = new ApiClient();
+        ApiClient apiClient = new ApiClient(httpClient);
         apiClient.setApiKeyPrefix("apikey");
         apiClient.setApiKey(apiKey);
         endpointUrl.ifPresent(apiClient::setBasePath);
         return apiClient;
     }
 
+    @Override
+    public Optional<String> verdictTokenCookieName() {
+        Config currentConfig = config;
+        // Outside of modes that wait for the API there is no check to skip, and MONITOR must still see the request
+        if (!canBlock(effectiveMode(currentConfig))
+            || currentConfig.getVerdictToken() == null
+            || verdictTokenVerifier == null) {
+            return Optional.empty();
+        }
+        return Optional.of(currentConfig.getVerdictToken().getCookieName());
+    }
+
+    @Override
+    public boolean verifyVerdictToken(String token, String ip) {
+        VerdictTokenVerifier verifier = verdictTokenVerifier;
+        if (verifier == null) {
+            return false;
+        }
+        // A token issued before its IP was listed must not get it past the local block
+        IpReputationConfig ipReputationConfig = config.getIpReputation();
+        if (ip != null && ipReputationConfig != null && ipReputationTable.score(ip) >= ipReputationConfig.getBlockScore()) {
+            return false;
+        }
+        if (verifier.verify(token, ip == null ? "" : ip, System.currentTimeMillis() / 1000L)) {
+            verdictTokensAccepted.increment();
+            return true;
+        } else {
+            verdictTokensRejected.increment();
+            return false;
+        }
+    }
+
+    @Override
+    public void requestStarted() {
+        LoadMonitor currentLoadMonitor = loadMonitor;
+        if (currentLoadMonitor != null) {
+            currentLoadMonitor.requestStarted();
+        }
+    }
+
+    @Override
+    public void requestFinished() {
+        LoadMonitor currentLoadMonitor = loadMonitor;
+        if (currentLoadMonitor != null) {
+            currentLoadMonitor.requestFinished();
+        }
+    }
+
     @Override
     public HttpAction httpEvent(HttpMetadata data) {
-        OperationMode currentMode = config.getMode();
+        return httpEvent(data, nodeIdentifier);
+    }
+
+    HttpAction httpEvent(HttpMetadata data, String eventNodeIdentifier) {
+        Config currentConfig = config;
+        trackBehavior(currentConfig, data);
+        if (canBlock(effectiveMode(currentConfig))) {
+            Optional<HttpAction> localAction = getLocalAction(currentConfig, data);
+            if (localAction.isPresent()) {
+                return localAction.get();
+            }
+        }
+        OperationMode currentMode = resolveMode(currentConfig, data);
+        assignEventId(currentConfig, currentMode, data);
         switch (currentMode) {
             case BLOCKING:
+                if (!blockingChecks.tryAcquire()) {
+                    blockingChecksRejected.increment();
+                    return DEFAULT_ALLOW_ACTION;
+                }
                 try {
-                    return doHttpEvent(data, currentMode).getAction();
+                    return doHttpEvent(data, currentMode, eventNodeIdentifier).getAction();
                 } catch (Exception ex) {
-                    log.log(Level.SEVERE, "Failed to validate http event", ex);
+                    httpEventErrors.report(ex);
                     return DEFAULT_ALLOW_ACTION;
+                } finally {
+                    blockingChecks.release();
                 }
             case MONITOR:
-                executor.execute(() -> {
-                    try {
-                        doHttpEvent(data, currentMode);
-                    } catch (Exception ex) {
-                        log.log(Level.WARNING, "Failed to publish http event", ex);
-                    }
-                });
+                monitorEvent(currentConfig, data, eventNodeIdentifier);
                 return DEFAULT_ALLOW_ACTION;
             case DISABLED:
             default:
@@ -161,35 +478,572 @@ class UmbrellaServiceImpl implements UmbrellaService {
         }
     }
 
+    @Override
+    public CompletableFuture<HttpAction> httpEventAsync(HttpMetadata data) {
+        return httpEventAsync(data, nodeIdentifier);
+    }
+
+    CompletableFuture<HttpAction> httpEventAsync(HttpMetadata data, String eventNodeIdentifier) {
+        Config currentConfig = config;
+        trackBehavior(currentConfig, data);
+        if (canBlock(effectiveMode(currentConfig))) {
+            Optional<HttpAction> localAction = getLocalAction(currentConfig, data);
+            if (localAction.isPresent()) {
+                return CompletableFuture.completedFuture(localAction.get());
+            }
+        }
+        OperationMode currentMode = resolveMode(currentConfig, data);
+        assignEventId(currentConfig, currentMode, data);
+        switch (currentMode) {
+            case BLOCKING:
+                if (!blockingChecks.tryAcquire()) {
+                    blockingChecksRejected.increment();
+                    return CompletableFuture.completedFuture(DEFAULT_ALLOW_ACTION);
+                }
+                CompletableFuture<HttpAction> action = doHttpEventAsync(data, currentMode, eventNodeIdentifier)
+                        .whenComplete((response, ex) -> blockingChecks.release())
+                        .handle((response, ex) -> {
+                            if (ex != null) {
+                                httpEventErrors.report(ex);
+                                return DEFAULT_ALLOW_ACTION;
+                            }
+                            return response.getAction();
+                        });
+                // Do not rely on the transport alone to honour the deadline
+                Long timeoutMs = currentConfig.getTimeoutMs();
+                return timeoutMs == null || timeoutMs <= 0L
+                        ? action
+                        : action.completeOnTimeout(DEFAULT_ALLOW_ACTION, timeoutMs, TimeUnit.MILLISECONDS);
+            case MONITOR:
+                monitorEvent(currentConfig, data, eventNodeIdentifier);
+                return CompletableFuture.completedFuture(DEFAULT_ALLOW_ACTION);
+            case DISABLED:
+            default:
+                return CompletableFuture.completedFuture(DEFAULT_ALLOW_ACTION);
+        }
+    }
+
+    private void trackBehavior(Config currentConfig, HttpMetadata data) {
+        BehaviorTrackingConfig trackingConfig = currentConfig.getBehaviorTracking();
+        if (trackingConfig == null || effectiveMode(currentConfig) == OperationMode.DISABLED) {
+            return;
+        }
+        behaviorTracker.track(
+                data,
+                TimeUnit.SECONDS.toMillis(trackingConfig.getWindowSeconds()),
+                trackingConfig.getMaxClients() == null ? BehaviorTracker.DEFAULT_MAX_CLIENTS : trackingConfig.getMaxClients(),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Decides the request without calling the API if the IP is known to be bad or a reusable verdict is stored.
+     */
+    private Optional<HttpAction> getLocalAction(Config currentConfig, HttpMetadata data) {
+        if (data.getIp() == null) {
+            return Optional.empty();
+        }
+        IpReputationConfig ipReputationConfig = currentConfig.getIpReputation();
+        if (ipReputationConfig != null && ipReputationTable.score(data.getIp()) >= ipReputationConfig.getBlockScore()) {
+            ipReputationBlocked.increment();
+            return Optional.of(new HttpAction()
+                    .requestProcess(RequestProcess.BLOCK)
+                    .responseStatus(ipReputationConfig.getBlockStatus() == null ? 403L : ipReputationConfig.getBlockStatus()));
+        }
+        Optional<HttpAction> storedVerdict = verdictStore.get(data.getIp(), System.currentTimeMillis() / 1000L);
+        if (storedVerdict.isPresent()) {
+            verdictStoreHits.increment();
+        } else {
+            verdictStoreMisses.increment();
+        }
+        return storedVerdict;
+    }
+
+    /**
+     * Decides whether to wait for the API on this request, returning the mode to handle it in.
+     */
+    private OperationMode resolveMode(Config currentConfig, HttpMetadata data) {
+        OperationMode currentMode = resolveConfiguredMode(currentConfig, data);
+        // While this server is overloaded, only a sample of requests waits for the API
+        if (currentMode == OperationMode.BLOCKING
+            && loadMonitor != null
+            && loadMonitor.isDegraded()
+            && (overloadSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= overloadSampleRate)) {
+            overloadDegradedEvents.increment();
+            return OperationMode.MONITOR;
+        }
+        return currentMode;
+    }
+
+    private OperationMode resolveConfiguredMode(Config currentConfig, HttpMetadata data) {
+        OperationMode configuredMode = effectiveMode(currentConfig);
+        switch (configuredMode) {
+            case BLOCKING:
+                // Only wait for the API on requests that look suspicious
+                return isSuspicious(data) ? OperationMode.BLOCKING : OperationMode.MONITOR;
+            case HYBRID:
+                RiskScorer scorer = riskScorer;
+                if (scorer != null) {
+                    int score = scorer.score(data, ipReputationTable, fingerprintFilter);
+                    data.setRiskScore(score);
+                    if (score < scorer.getThreshold()) {
+                        riskLow.increment();
+                        return OperationMode.MONITOR;
+                    }
+                }
+                riskHigh.increment();
+                return OperationMode.BLOCKING;
+            default:
+                return configuredMode;
+        }
+    }
+
+    /**
+     * The server-provided mode, unless the API has rate limited us since the config was received.
+     */
+    private OperationMode effectiveMode(Config currentConfig) {
+        return rateLimited ? OperationMode.DISABLED : currentConfig.getMode();
+    }
+
+    /**
+     * @return Whether requests may wait for the API in this mode
+     */
+    private static boolean canBlock(OperationMode mode) {
+        return mode == OperationMode.BLOCKING || mode == OperationMode.HYBRID;
+    }
+
+    /**
+     * Whether any of the request's fingerprints is known-bad and so worth waiting for the API. Always true
+     * without a fingerprint filter.
+     */
+    private boolean isSuspicious(HttpMetadata data) {
+        FingerprintFilter filter = fingerprintFilter;
+        if (filter == null) {
+            return true;
+        }
+        if (filter.mightContainAny(data)) {
+            fingerprintFilterHits.increment();
+            return true;
+        }
+        fingerprintFilterMisses.increment();
+        return false;
+    }
+
+    /**
+     * Fills in the action from the template it names, if any, once the templates of a config refresh carried
+     * by the same response are in place.
+     */
+    private void applyActionTemplate(HttpEventResponse response) {
+        HttpAction action = response.getAction();
+        if (action == null || action.getTemplateId() == null) {
+            return;
+        }
+        Optional<HttpAction> resolved = actionTemplates.resolve(action);
+        if (resolved.isPresent()) {
+            response.setAction(resolved.get());
+        } else {
+            actionTemplatesMissing.increment();
+            log.log(Level.FINE, "Unknown action template {0}, applying action as is", action.getTemplateId());
+        }
+    }
+
+    private void storeVerdict(HttpMetadata data, HttpEventResponse response) {
+        HttpAction action = response.getAction();
+        if (data.getIp() == null || action == null || action.getVerdictTtlSeconds() == null || action.getVerdictTtlSeconds() <= 0L) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000L;
+        if (!verdictStore.put(data.getIp(), action, now + action.getVerdictTtlSeconds(), now)) {
+            verdictStoreFull.increment();
+        }
+    }
+
+    private void monitorEvent(Config currentConfig, HttpMetadata data, String eventNodeIdentifier) {
+        MonitorRollupConfig rollupConfig = currentConfig.getMonitorRollup();
+        if (rollupConfig == null) {
+            publishMonitorEvent(data, eventNodeIdentifier);
+            return;
+        }
+        rollupAggregator.add(
+                data,
+                rollupConfig.getMaxKeys() == null ? RollupAggregator.DEFAULT_MAX_KEYS : rollupConfig.getMaxKeys(),
+                System.currentTimeMillis());
+        rollupEvents.increment();
+    }
+
+    /**
+     * Sends the rolled up events once the configured window has passed, or right away if rolling up was
+     * turned off in the meantime or when forced on shutdown. Events of a window that fails to send are dropped.
+     */
+    private void flushRollup(boolean force) {
+        MonitorRollupConfig rollupConfig = config.getMonitorRollup();
+        long now = System.currentTimeMillis();
+        if (!force && rollupConfig != null && now - rollupAggregator.getWindowStartMs() < TimeUnit.SECONDS.toMillis(rollupConfig.getWindowSeconds())) {
+            return;
+        }
+        if (rollupAggregator.size() == 0) {
+            return;
+        }
+        RollupAggregator.Window window = rollupAggregator.drain(now);
+        HttpEventRollupRequest request = new HttpEventRollupRequest()
+                .nodeId(nodeIdentifier)
+                .windowStart(Instant.ofEpochMilli(window.startMs))
+                .windowEnd(Instant.ofEpochMilli(window.endMs))
+                .rollups(window.rollups)
+                .evictedCount(window.evicted);
+        try {
+            endpointSelector.call(endpoint -> {
+                endpoint.getIngestApi().httpEventRollup(orgName, request);
+                return null;
+            });
+            rollupsSent.increment();
+        } catch (Exception ex) {
+            rollupsFailed.increment();
+            publishErrors.report(ex);
+        }
+    }
+
+    /**
+     * Sends an event from the telemetry lane. Rather than letting the lane's backlog grow without bound, once
+     * it is full the least valuable events are dropped first, see {@link TelemetryPriority}.
+     */
+    private void publishMonitorEvent(HttpMetadata data, String eventNodeIdentifier) {
+        ScheduledThreadPoolExecutor lane = telemetryExecutor;
+        if (lane == null) {
+            return;
+        }
+        if (data.getHeaderFp() == null && (data.getHeaderNames() != null || data.getCookieNames() != null)) {
+            data.setHeaderFp(Fingerprints.headers(data.getHeaderNames(), data.getCookieNames()));
+        }
+        // Without header names, as when masked out, there is no telling whether the client is new
+        SheddingQueue.Priority priority = TelemetryPriority.of(
+                data,
+                data.getHeaderFp() == null || headerFpDictionary.contains(data.getHeaderFp()),
+                data.getIp() != null && ipReputationTable.score(data.getIp()) > 0);
+        // A replacing event is sent by the task already submitted for the one it replaced
+        MonitorEvent event = new MonitorEvent(data, eventNodeIdentifier);
+        if (telemetryQueue.offer(event, priority) != SheddingQueue.Offer.ADDED) {
+            return;
+        }
+        try {
+            lane.execute(this::sendMonitorEvent);
+        } catch (RejectedExecutionException ex) {
+            telemetryQueue.remove(event, priority);
+        }
+    }
+
+    private void sendMonitorEvent() {
+        MonitorEvent event = telemetryQueue.poll();
+        if (event == null) {
+            return;
+        }
+        sendingTelemetry.incrementAndGet();
+        try {
+            doHttpEvent(event.data, OperationMode.MONITOR, event.nodeIdentifier);
+        } catch (Exception ex) {
+            publishErrors.report(ex);
+        } finally {
+            sendingTelemetry.decrementAndGet();
+        }
+    }
+
+    private void assignEventId(Config currentConfig, OperationMode currentMode, HttpMetadata data) {
+        // Rolled up events are never sent on their own, so an outcome would have nothing to refer to
+        if (currentMode == OperationMode.MONITOR && currentConfig.getMonitorRollup() != null) {
+            return;
+        }
+        if (effectiveMode(currentConfig) != OperationMode.DISABLED && Boolean.TRUE.equals(currentConfig.getCollectOutcome())) {
+            data.setEventId(Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX));
+        }
+    }
+
+    @Override
+    public void httpOutcome(HttpOutcome outcome) {
+        if (outcomeBatcher != null && executor != null) {
+            outcomeBatcher.offer(outcome);
+        }
+    }
+
+    @Override
+    public void customEvent(String eventType, String key, Map<String, String> metadata) {
+        Config currentConfig = config;
+        if (effectiveMode(currentConfig) == OperationMode.DISABLED || customEventBatcher == null || executor == null) {
+            return;
+        }
+        double sampleRate = currentConfig.getCustomEventSampleRate() == null
+                ? 1d
+                : Math.max(0d, Math.min(1d, currentConfig.getCustomEventSampleRate()));
+        if (sampleRate < 1d && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            customEventsSampledOut.increment();
+            return;
+        }
+        customEventBatcher.offer(new CustomEvent()
+                .eventType(eventType)
+                .key(key)
+                .ts(Instant.now())
+                .sampleRate(sampleRate < 1d ? sampleRate : null)
+                .metadata(metadata));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> customEventDecision(String eventType, String key, Map<String, String> metadata) {
+        return customEventDecision(eventType, key, metadata, nodeIdentifier);
+    }
+
+    CompletableFuture<Map<String, String>> customEventDecision(String eventType, String key, Map<String, String> metadata, String eventNodeIdentifier) {
+        Config currentConfig = config;
+        OperationMode currentMode = effectiveMode(currentConfig);
+        if (currentMode == OperationMode.DISABLED || endpointSelector == null) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        if (!pendingDecisions.tryAcquire()) {
+            decisionsDropped.increment();
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        EventRequest request = new EventRequest()
+                .nodeId(eventNodeIdentifier)
+                .currentMode(currentMode)
+                .key(key)
+                .metadata(metadata == null ? Collections.emptyMap() : metadata);
+        AtomicReference<okhttp3.Call> inFlight = new AtomicReference<>();
+        // Do not rely on the transport alone to honour the deadline, nor hold a permit forever without one
+        Long timeoutMs = currentConfig.getTimeoutMs();
+        return endpointSelector.<EventResponse>callAsync((endpoint, callback) -> inFlight.set(endpoint.getIngestApi().customEventAsync(orgName, eventType, request, callback)))
+                .orTimeout(timeoutMs == null || timeoutMs <= 0L ? DEFAULT_DECISION_TIMEOUT_MS : timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((response, ex) -> {
+                    pendingDecisions.release();
+                    if (ex instanceof TimeoutException) {
+                        decisionsTimedOut.increment();
+                        okhttp3.Call call = inFlight.get();
+                        if (call != null) {
+                            call.cancel();
+                        }
+                        return Collections.emptyMap();
+                    }
+                    if (ex != null) {
+                        decisionsFailed.increment();
+                        customEventErrors.report(ex);
+                        if (ex instanceof ApiException) {
+                            onApiFailure((ApiException) ex);
+                        }
+                        return Collections.emptyMap();
+                    }
+                    if (response.getConfigRefresh() != null) {
+                        onNewConfig(response.getConfigRefresh());
+                    }
+                    return response.getAction() == null ? Collections.emptyMap() : response.getAction();
+                });
+    }
+
+    @Override
+    public Map<String, Number> metrics() {
+        return metrics.snapshot();
+    }
+
     @Override
     public void shutdown() {
+        if (this.configWatcher != null) {
+            this.configWatcher.stop();
+        }
+        if (this.connectionWarmer != null) {
+            this.connectionWarmer.stop();
+        }
+        if (this.outcomeBatcher != null) {
+            this.outcomeBatcher.shutdown();
+        }
+        if (this.customEventBatcher != null) {
+            this.customEventBatcher.shutdown();
+        }
         if (this.executor != null) {
             this.executor.shutdown();
         }
+        if (this.ipReputationExecutor != null) {
+            this.ipReputationExecutor.shutdown();
+        }
+        if (this.telemetryExecutor != null) {
+            // Best effort: give the batched outcomes, custom events and the rollup window one last send
+            try {
+                this.telemetryExecutor.execute(() -> flushRollup(true));
+            } catch (RejectedExecutionException ex) {
+                log.log(Level.FINE, "Telemetry lane already shut down, dropping rolled up events");
+            }
+            this.telemetryExecutor.shutdown();
+            try {
+                if (!this.telemetryExecutor.awaitTermination(SHUTDOWN_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.log(Level.WARNING, "Timed out sending remaining events on shutdown");
+                    this.telemetryExecutor.shutdownNow();
+                }
+            } catch (InterruptedException ex) {
+                this.telemetryExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.hedgeExecutor != null) {
+            this.hedgeExecutor.shutdown();
+        }
+        if (this.loadMonitor != null) {
+            this.loadMonitor.stop();
+            this.loadMonitorExecutor.shutdown();
+        }
+        flushErrorReports();
+        httpClient.dispatcher().executorService().shutdown();
+        if (this.watchHttpClient != null) {
+            this.watchHttpClient.dispatcher().executorService().shutdown();
+        }
+        httpClient.connectionPool().evictAll();
     }
 
-    private HttpEventResponse doHttpEvent(HttpMetadata data, OperationMode currentMode) throws ApiException {
+    private HttpEventResponse doHttpEvent(HttpMetadata data, OperationMode currentMode, String eventNodeIdentifier) throws ApiException {
+        HttpEventRequest request = createHttpEventRequest(data, currentMode, eventNodeIdentifier);
         try {
-            HttpEventResponse httpEventResponse = ingestApi.httpEvent(orgName, new HttpEventRequest()
-                    .httpMetadata(data)
-                    .nodeId(nodeIdentifier)
-                    .currentMode(currentMode));
+            HttpEventResponse httpEventResponse = currentMode == OperationMode.BLOCKING && hedgePolicy != null
+                    ? awaitHedged(callHttpEventHedged(request))
+                    : endpointSelector.call(endpoint -> endpoint.getIngestApi().httpEvent(orgName, request));
+            rememberHeaderFp(request.getHttpMetadata());
             onNewConfig(httpEventResponse);
+            applyActionTemplate(httpEventResponse);
+            storeVerdict(data, httpEventResponse);
             return httpEventResponse;
         } catch (ApiException exception) {
-            if (exception.getCode() == 429) {
-                log.log(Level.SEVERE, "Rate limited by Umbrella, disabling mode until next ping");
-                config.setMode(OperationMode.DISABLED);
-            }
+            onApiFailure(exception);
             throw exception;
         }
     }
 
+    private void rememberHeaderFp(HttpMetadata data) {
+        if (data.getHeaderFp() != null) {
+            headerFpDictionary.add(data.getHeaderFp());
+        }
+    }
+
+    private CompletableFuture<HttpEventResponse> doHttpEventAsync(HttpMetadata data, OperationMode currentMode, String eventNodeIdentifier) {
+        HttpEventRequest request = createHttpEventRequest(data, currentMode, eventNodeIdentifier);
+        CompletableFuture<HttpEventResponse> call = hedgePolicy != null
+                ? callHttpEventHedged(request)
+                : endpointSelector.<HttpEventResponse>callAsync((endpoint, callback) -> endpoint.getIngestApi().httpEventAsync(orgName, request, callback));
+        return call
+                .whenComplete((response, ex) -> {
+                    if (ex == null) {
+                        rememberHeaderFp(request.getHttpMetadata());
+                        onNewConfig(response);
+                        applyActionTemplate(response);
+                        storeVerdict(data, response);
+                    } else if (ex instanceof ApiException) {
+                        onApiFailure((ApiException) ex);
+                    }
+                });
+    }
+
+    private CompletableFuture<HttpEventResponse> callHttpEventHedged(HttpEventRequest request) {
+        // Both calls carry the same event id, so the server can tell a hedge from a new event
+        return endpointSelector.callHedged(
+                (endpoint, callback) -> endpoint.getIngestApi().httpEventAsync(orgName, request, callback),
+                hedgePolicy,
+                hedgeExecutor);
+    }
+
+    /**
+     * Waits for a hedged call on the caller's thread, honouring the configured timeout across both calls.
+     */
+    private HttpEventResponse awaitHedged(CompletableFuture<HttpEventResponse> response) throws ApiException {
+        Long timeoutMs = config.getTimeoutMs();
+        try {
+            return timeoutMs == null || timeoutMs <= 0L
+                    ? response.get()
+                    : response.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof ApiException
+                    ? (ApiException) ex.getCause()
+                    : new ApiException(ex.getCause());
+        } catch (TimeoutException ex) {
+            response.cancel(false);
+            throw new ApiException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            response.cancel(false);
+            throw new ApiException(ex);
+        }
+    }
+
+    private HttpEventRequest createHttpEventRequest(HttpMetadata data, OperationMode currentMode, String eventNodeIdentifier) {
+        if (data.getHeaderFp() == null && (data.getHeaderNames() != null || data.getCookieNames() != null)) {
+            data.setHeaderFp(Fingerprints.headers(data.getHeaderNames(), data.getCookieNames()));
+        }
+        // The server already knows the names behind this hash, it is remembered only once a send succeeded
+        if (data.getHeaderFp() != null && headerFpDictionary.contains(data.getHeaderFp())) {
+            data.setHeaderNames(null);
+            data.setCookieNames(null);
+            headerNamesElided.increment();
+        }
+        return new HttpEventRequest()
+                .httpMetadata(data)
+                .nodeId(eventNodeIdentifier)
+                .currentMode(currentMode);
+    }
+
+    private void onApiFailure(ApiException exception) {
+        if (exception.getCode() == 429) {
+            log.log(Level.SEVERE, "Rate limited by Umbrella, disabling mode until next ping");
+            rateLimited = true;
+        }
+    }
+
+    private void tryPing() {
+        try {
+            doPing();
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "Failed to ping Umbrella", ex);
+        }
+    }
+
+    private void pingSoon() {
+        try {
+            executor.execute(this::tryPing);
+        } catch (RejectedExecutionException ex) {
+            log.log(Level.FINE, "Not pinging Umbrella, executor is shut down", ex);
+        }
+    }
+
     private void doPing() throws ApiException {
-        PingResponse nodeInitializeResponse = healthApi.nodePing(orgName, new PingRequest()
-                .nodeId(this.nodeIdentifier));
-        log.log(Level.FINEST, "Successfully pinged Umbrella");
-        onNewConfig(nodeInitializeResponse.getConfig());
+        // Taken once, as it counts since the previous report and every attached node shares this server
+        LoadReport loadReport = loadMonitor == null ? null : loadMonitor.report();
+        for (String pingNodeIdentifier : nodeIdentifiers) {
+            FingerprintFilter currentFingerprintFilter = fingerprintFilter;
+            PingRequest request = new PingRequest()
+                    .nodeId(pingNodeIdentifier)
+                    .fingerprintFilterVersion(currentFingerprintFilter == null ? null : currentFingerprintFilter.getVersion())
+                    .load(loadReport);
+            PingResponse nodeInitializeResponse = endpointSelector.call(endpoint -> endpoint.getHealthApi().nodePing(orgName, request));
+            log.log(Level.FINEST, "Successfully pinged Umbrella");
+            onNewConfig(nodeInitializeResponse.getConfig());
+        }
+    }
+
+    /**
+     * Registers another node identity sharing this instance, so it is kept alive by pings and can be passed to
+     * the calls taking a node identifier.
+     */
+    String attachNode(List<String> nodeIdentifierParts) {
+        String attachedNodeIdentifier = constructNodeIdentifier(nodeIdentifierParts);
+        nodeIdentifiers.add(attachedNodeIdentifier);
+        return attachedNodeIdentifier;
+    }
+
+    /**
+     * Stops pinging on behalf of a node identity. If it was the one batches are attributed to, the longest
+     * attached remaining identity takes over. The last identity is kept, as the instance is shut down with it.
+     */
+    void detachNode(String attachedNodeIdentifier) {
+        if (nodeIdentifiers.size() <= 1 || !nodeIdentifiers.remove(attachedNodeIdentifier)) {
+            return;
+        }
+        if (attachedNodeIdentifier.equals(nodeIdentifier)) {
+            nodeIdentifier = nodeIdentifiers.iterator().next();
+            log.log(Level.INFO, "Attributing Umbrella batches to node {0}", nodeIdentifier);
+        }
+    }
+
+    String getNodeIdentifier() {
+        return nodeIdentifier;
     }
 
     private void onNewConfig(HttpEventResponse response) {
@@ -201,17 +1055,223 @@ class UmbrellaServiceImpl implements UmbrellaService {
     private void onNewConfig(Config newConfig) {
         if (!Objects.equals(config.getTimeoutMs(), newConfig.getTimeoutMs())) {
             // Call timeout only set if requested and in blocking mode
-            long callTimeout = newConfig.getTimeoutMs() == null || newConfig.getMode() != OperationMode.BLOCKING
+            long callTimeout = newConfig.getTimeoutMs() == null || !canBlock(newConfig.getMode())
                     ? 0L
                     : newConfig.getTimeoutMs();
-            healthApi.getApiClient().setHttpClient(new OkHttpClient.Builder()
-                    .callTimeout(callTimeout, TimeUnit.MILLISECONDS)
-                    .build());
-            ingestApi.getApiClient().setHttpClient(new OkHttpClient.Builder()
+            // Derived from the base client so all endpoints keep sharing one dispatcher and connection pool
+            OkHttpClient timeoutHttpClient = httpClient.newBuilder()
                     .callTimeout(callTimeout, TimeUnit.MILLISECONDS)
-                    .build());
+                    .build();
+            endpointSelector.getEndpoints().forEach(endpoint -> endpoint.getApiClient().setHttpClient(timeoutHttpClient));
+        }
+        if (!Objects.equals(config.getVerdictToken(), newConfig.getVerdictToken())) {
+            verdictTokenVerifier = createVerdictTokenVerifier(newConfig.getVerdictToken());
+        }
+        if (!Objects.equals(config.getHeaderFpEpoch(), newConfig.getHeaderFpEpoch())) {
+            headerFpDictionary.clear();
+        }
+        if (!Objects.equals(config.getActionTemplates(), newConfig.getActionTemplates())) {
+            actionTemplates = ActionTemplates.create(newConfig.getActionTemplates());
+        }
+        if (!Objects.equals(config.getRiskScoring(), newConfig.getRiskScoring())) {
+            riskScorer = RiskScorer.create(newConfig.getRiskScoring());
+        }
+        if (!Objects.equals(config.getFieldMask(), newConfig.getFieldMask())
+            || !Objects.equals(config.getRiskScoring(), newConfig.getRiskScoring())
+            || !Objects.equals(config.getBehaviorTracking(), newConfig.getBehaviorTracking())
+            || !Objects.equals(config.getFingerprintFilter(), newConfig.getFingerprintFilter())) {
+            fieldMask = FieldMask.create(newConfig);
+        }
+        if (!Objects.equals(config.getFingerprintFilter(), newConfig.getFingerprintFilter())) {
+            fingerprintFilter = updateFingerprintFilter(fingerprintFilter, newConfig.getFingerprintFilter());
         }
         config = newConfig;
+        rateLimited = false;
+        persistConfig(newConfig);
+        loadIpReputation(newConfig.getIpReputation());
+    }
+
+    /**
+     * Downloads the announced IP reputation snapshot on its own thread, as it may be large, and swaps it in
+     * once fully loaded. The previous snapshot keeps being used in the meantime.
+     */
+    private void loadIpReputation(IpReputationConfig ipReputationConfig) {
+        ScheduledThreadPoolExecutor lane = ipReputationExecutor;
+        if (lane == null
+            || Objects.equals(ipReputationConfig == null ? null : ipReputationConfig.getVersion(), ipReputationVersion)
+            || !ipReputationReloadPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lane.execute(this::reloadIpReputation);
+        } catch (RejectedExecutionException ex) {
+            ipReputationReloadPending.set(false);
+            log.log(Level.FINE, "Not loading IP reputation snapshot, executor is shut down", ex);
+        }
+    }
+
+    /**
+     * Reloads run one at a time on the single loader thread and always work from the latest config, so an
+     * older snapshot never replaces a newer one.
+     */
+    private void reloadIpReputation() {
+        // Cleared first, so a config arriving during the download queues another reload
+        ipReputationReloadPending.set(false);
+        IpReputationConfig ipReputationConfig = config.getIpReputation();
+        if (ipReputationConfig == null) {
+            ipReputationVersion = null;
+            ipReputationTable = IpReputationTable.EMPTY;
+            return;
+        }
+        String version = ipReputationConfig.getVersion();
+        if (version.equals(ipReputationVersion) || System.currentTimeMillis() < ipReputationRetryAtMs) {
+            return;
+        }
+        IpReputationTable table;
+        try {
+            table = endpointSelector.call(endpoint -> downloadIpReputation(endpoint, version));
+        } catch (Exception ex) {
+            ipReputationLoadFailed.increment();
+            ipReputationRetryAtMs = System.currentTimeMillis() + IP_REPUTATION_RETRY_DELAY_MS;
+            log.log(Level.WARNING, "Failed to load IP reputation snapshot " + version, ex);
+            return;
+        }
+        // Superseded while downloading, the reload queued for the newer config takes over
+        IpReputationConfig latest = config.getIpReputation();
+        if (latest == null || !latest.getVersion().equals(version)) {
+            log.log(Level.FINE, "Discarding IP reputation snapshot {0}, superseded while loading", version);
+            return;
+        }
+        ipReputationTable = table;
+        ipReputationVersion = version;
+        log.log(Level.INFO, "Loaded IP reputation snapshot {0} with {1} entries", new Object[]{version, table.size()});
+    }
+
+    private IpReputationTable downloadIpReputation(Endpoint endpoint, String version) throws ApiException {
+        okhttp3.Call call = endpoint.getHealthApi().ipReputationCall(orgName, version, null);
+        // The shared client may carry a call timeout meant for blocking checks, far too short for a snapshot
+        OkHttpClient downloadHttpClient = endpoint.getApiClient().getHttpClient().newBuilder()
+                .callTimeout(IP_REPUTATION_DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        try (Response response = downloadHttpClient.newCall(call.request()).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new ApiException(response.code(), "Failed to download IP reputation snapshot: " + response.message());
+            }
+            return IpReputationTable.read(response.body().byteStream());
+        } catch (IOException ex) {
+            throw new ApiException(ex);
+        }
+    }
+
+    private FingerprintFilter updateFingerprintFilter(FingerprintFilter currentFilter, FingerprintFilterConfig filterConfig) {
+        if (filterConfig == null) {
+            return null;
+        }
+        if (currentFilter != null && filterConfig.getVersion().equals(currentFilter.getVersion())) {
+            return currentFilter;
+        }
+        try {
+            if (filterConfig.getBits() != null) {
+                return FingerprintFilter.create(filterConfig.getVersion(), filterConfig.getNumHashes(), Base64.getDecoder().decode(filterConfig.getBits()));
+            }
+            if (currentFilter != null && currentFilter.getVersion().equals(filterConfig.getBaseVersion())) {
+                return currentFilter.withAddedBits(filterConfig.getVersion(), filterConfig.getAddedBits() == null
+                        ? Collections.emptyList()
+                        : filterConfig.getAddedBits());
+            }
+            // Keep the filter we have; the next ping reports its version so the server can send it in full
+            log.log(Level.FINE, "Cannot apply fingerprint filter update {0} on top of {1}",
+                    new Object[]{filterConfig.getVersion(), currentFilter == null ? null : currentFilter.getVersion()});
+        } catch (IllegalArgumentException ex) {
+            log.log(Level.WARNING, "Ignoring invalid fingerprint filter " + filterConfig.getVersion(), ex);
+        }
+        return currentFilter;
+    }
+
+    private VerdictTokenVerifier createVerdictTokenVerifier(VerdictTokenConfig verdictTokenConfig) {
+        if (verdictTokenConfig == null || verdictTokenConfig.getKeys() == null || verdictTokenConfig.getKeys().isEmpty()) {
+            return null;
+        }
+        try {
+            return new VerdictTokenVerifier(verdictTokenConfig.getKeys());
+        } catch (IllegalArgumentException ex) {
+            log.log(Level.WARNING, "Ignoring invalid verdict token keys", ex);
+            return null;
+        }
+    }
+
+    private VerdictStore createVerdictStore(UmbrellaOptions options) {
+        int capacity = Integer.highestOneBit(Math.max(1, options.getVerdictStoreCapacity() - 1)) << 1;
+        if (options.getVerdictStorePath().isPresent()) {
+            try {
+                return MappedVerdictStore.open(options.getVerdictStorePath().get(), capacity);
+            } catch (IOException | IllegalArgumentException ex) {
+                log.log(Level.WARNING, "Failed to open shared verdict store at " + options.getVerdictStorePath().get() + ", keeping verdicts in heap", ex);
+            }
+        }
+        return new HeapVerdictStore(capacity);
+    }
+
+    private void persistConfig(Config newConfig) {
+        if (configSnapshotStore.isEmpty()) {
+            return;
+        }
+        // Keep signing keys off disk, they are handed out again on the first ping
+        Config snapshot = newConfig;
+        if (newConfig.getVerdictToken() != null) {
+            snapshot = JSON.getGson().fromJson(JSON.getGson().toJson(newConfig), Config.class)
+                    .verdictToken(null);
+        }
+        if (Objects.equals(persistedConfig, snapshot)) {
+            return;
+        }
+        try {
+            configSnapshotStore.get().save(snapshot);
+            persistedConfig = snapshot;
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Failed to persist Umbrella config snapshot to " + configSnapshotStore.get().getPath(), ex);
+        }
+    }
+
+    private void flushErrorReports() {
+        httpEventErrors.flush();
+        publishErrors.flush();
+        customEventErrors.flush();
+    }
+
+    private static ScheduledThreadPoolExecutor createLane(String name, int threads) {
+        ScheduledThreadPoolExecutor lane = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setName(name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        lane.setRemoveOnCancelPolicy(true);
+        return lane;
+    }
+
+    private static Dispatcher createBlockingLaneDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_BLOCKING_CALLS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_BLOCKING_CALLS);
+        return dispatcher;
+    }
+
+    /**
+     * Tasks of a lane that are running or due and waiting for a thread; periodic tasks that are not yet due
+     * do not count.
+     */
+    private static int depth(ScheduledThreadPoolExecutor lane) {
+        if (lane == null) {
+            return 0;
+        }
+        int due = 0;
+        for (Runnable task : lane.getQueue()) {
+            if (task instanceof Delayed && ((Delayed) task).getDelay(TimeUnit.NANOSECONDS) <= 0L) {
+                due++;
+            }
+        }
+        return due + lane.getActiveCount();
     }
 
     private String constructNodeIdentifier(List<String> nodeIdentifierParts) {
@@ -221,6 +1281,16 @@ class UmbrellaServiceImpl implements UmbrellaService {
                 .collect(Collectors.joining("; "));
     }
 
+    private static class MonitorEvent {
+        private final HttpMetadata data;
+        private final String nodeIdentifier;
+
+        private MonitorEvent(HttpMetadata data, String nodeIdentifier) {
+            this.data = data;
+            this.nodeIdentifier = nodeIdentifier;
+        }
+    }
+
     private static class InstantTypeConverter
             implements JsonSerializer<Instant>, JsonDeserializer<Instant> {
         @Override
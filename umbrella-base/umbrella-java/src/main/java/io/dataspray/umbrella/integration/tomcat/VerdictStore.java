@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+
+import java.util.Optional;
+
+/**
+ * Remembers verdicts the server allowed us to reuse, keyed by client IP, so repeat requests from the same
+ * client can be decided without a network hop.
+ * <p>
+ * Only verdicts that fit in a few bytes are kept: an {@code ALLOW}, or a {@code BLOCK} carrying nothing but
+ * a status. Anything else is not stored and will be asked for again.
+ */
+interface VerdictStore {
+
+    /**
+     * @return Stored verdict for this IP if it has not yet expired
+     */
+    Optional<HttpAction> get(String ip, long nowEpochSeconds);
+
+    /**
+     * @return Whether the verdict was stored; false if it cannot be represented or there was no room
+     */
+    boolean put(String ip, HttpAction action, long expiresAtEpochSeconds, long nowEpochSeconds);
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Verifies verdict tokens issued by the Umbrella API, letting any node accept a verdict reached on another.
+ * <p>
+ * A token has the form {@code <expiresAtEpochSeconds>.<signature>} where the signature is the unpadded
+ * base64url HMAC-SHA256 of {@code <expiresAtEpochSeconds>.<subject>}, the subject being the client IP as
+ * reported in {@code HttpMetadata.ip}. Every configured key is accepted to allow rotation.
+ * <p>
+ * Verification is constant-time with respect to the signature and reuses per-thread buffers and MACs, so it
+ * does not allocate on the hot path.
+ */
+class VerdictTokenVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    /** Unpadded base64 of {@link #MAC_LENGTH} bytes */
+    private static final int SIGNATURE_LENGTH = 43;
+    /** Longest epoch seconds plus dot plus signature */
+    private static final int MAX_TOKEN_LENGTH = 19 + 1 + SIGNATURE_LENGTH;
+    /** Longest subject accepted; IPv6 addresses with a zone id fit comfortably */
+    private static final int MAX_SUBJECT_LENGTH = 64;
+    private static final Base64.Encoder SIGNATURE_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private final List<SecretKeySpec> keys;
+    private final ThreadLocal<State> state;
+
+    /**
+     * @param base64Keys Keys as base64, the first being the one currently used for signing.
+     * @throws IllegalArgumentException if a key is not valid base64 or no keys are given
+     */
+    VerdictTokenVerifier(List<String> base64Keys) {
+        if (base64Keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one verdict token key is required");
+        }
+        List<SecretKeySpec> keys = new ArrayList<>(base64Keys.size());
+        for (String base64Key : base64Keys) {
+            keys.add(new SecretKeySpec(Base64.getDecoder().decode(base64Key), ALGORITHM));
+        }
+        this.keys = List.copyOf(keys);
+        this.state = ThreadLocal.withInitial(() -> new State(this.keys));
+    }
+
+    boolean verify(String token, String subject, long nowEpochSeconds) {
+        if (token == null || subject == null
+            || token.length() > MAX_TOKEN_LENGTH
+            || subject.length() > MAX_SUBJECT_LENGTH) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || token.length() - dot - 1 != SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        // Cheap checks first, only expiry remains before spending a MAC
+        long expiresAt = 0L;
+        for (int i = 0; i < dot; i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || expiresAt > (Long.MAX_VALUE - 9) / 10) {
+                return false;
+            }
+            expiresAt = expiresAt * 10 + (c - '0');
+        }
+        if (expiresAt < nowEpochSeconds) {
+            return false;
+        }
+
+        State state = this.state.get();
+        int messageLength = 0;
+        for (int i = 0; i <= dot; i++) {
+            state.message[messageLength++] = (byte) token.charAt(i);
+        }
+        for (int i = 0; i < subject.length(); i++) {
+            char c = subject.charAt(i);
+            if (c > 0x7F) {
+                return false;
+            }
+            state.message[messageLength++] = (byte) c;
+        }
+
+        boolean valid = false;
+        for (Mac mac : state.macs) {
+            mac.update(state.message, 0, messageLength);
+            try {
+                mac.doFinal(state.mac, 0);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+            SIGNATURE_ENCODER.encode(state.mac, state.signature);
+            int diff = 0;
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                diff |= state.signature[i] ^ token.charAt(dot + 1 + i);
+            }
+            // Keep checking remaining keys regardless to not leak which key matched
+            valid |= diff == 0;
+        }
+        return valid;
+    }
+
+    /**
+     * Issues a token the same way the Umbrella API does. Only used for testing.
+     */
+    static String issue(String base64Key, long expiresAtEpochSeconds, String subject) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(Base64.getDecoder().decode(base64Key), ALGORITHM));
+            byte[] signature = mac.doFinal((expiresAtEpochSeconds + "." + subject).getBytes(StandardCharsets.US_ASCII));
+            return expiresAtEpochSeconds + "." + SIGNATURE_ENCODER.encodeToString(signature);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class State {
+        private final Mac[] macs;
+        private final byte[] message = new byte[MAX_TOKEN_LENGTH + MAX_SUBJECT_LENGTH];
+        private final byte[] mac = new byte[MAC_LENGTH];
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+
+        private State(List<SecretKeySpec> keys) {
+            this.macs = new Mac[keys.size()];
+            try {
+                for (int i = 0; i < macs.length; i++) {
+                    macs[i] = Mac.getInstance(ALGORITHM);
+                    macs[i].init(keys.get(i));
+                }
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
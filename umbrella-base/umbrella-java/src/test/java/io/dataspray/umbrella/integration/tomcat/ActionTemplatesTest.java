@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.Cookie;
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.RequestProcess;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionTemplatesTest {
+
+    private final ActionTemplates templates = ActionTemplates.create(Map.of("challenge", new HttpAction()
+            .requestProcess(RequestProcess.BLOCK)
+            .responseStatus(429L)
+            .responseHeaders(Map.of("Retry-After", "10"))
+            .responseCookies(List.of(new Cookie()
+                    .name("challenge")
+                    .value("abc")))));
+
+    @Test
+    void testResolvesToSharedTemplate() {
+        HttpAction first = templates.resolve(new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)).orElseThrow();
+        HttpAction second = templates.resolve(new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)).orElseThrow();
+
+        assertSame(first, second);
+        assertEquals("challenge", first.getTemplateId());
+        assertEquals(429L, first.getResponseStatus());
+        assertEquals("abc", first.getResponseCookies().get(0).getValue());
+        assertThrows(UnsupportedOperationException.class, () -> first.getResponseHeaders().put("k", "v"));
+    }
+
+    @Test
+    void testOverrides() {
+        HttpAction action = templates.resolve(new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)
+                .responseStatus(403L)).orElseThrow();
+
+        assertEquals(403L, action.getResponseStatus());
+        assertEquals(Map.of("Retry-After", "10"), action.getResponseHeaders());
+        assertEquals("abc", action.getResponseCookies().get(0).getValue());
+    }
+
+    @Test
+    void testUnknownTemplate() {
+        assertEquals(Optional.empty(), templates.resolve(new HttpAction()
+                .templateId("missing")
+                .requestProcess(RequestProcess.BLOCK)));
+    }
+
+    @Test
+    void testWithoutTemplate() {
+        HttpAction action = new HttpAction()
+                .requestProcess(RequestProcess.ALLOW);
+
+        assertSame(action, templates.resolve(action).orElseThrow());
+        assertSame(ActionTemplates.EMPTY, ActionTemplates.create(Map.of()));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BehaviorTrackerTest {
+
+    private static final long WINDOW_MS = 60_000L;
+
+    @Test
+    void testTrack() {
+        BehaviorTracker tracker = new BehaviorTracker(0L);
+        HttpMetadata data = null;
+        for (int i = 0; i < 10; i++) {
+            data = new HttpMetadata()
+                    .ip("1.2.3.4")
+                    .uri("/page/" + (i % 7))
+                    .hUserAgent("agent");
+            tracker.track(data, WINDOW_MS, 16, 1_000L);
+            if (i + 1 < BehaviorTracker.MIN_REQUESTS_TO_TRACK) {
+                assertNull(data.getClientDistinctUris());
+            }
+        }
+        assertEquals(10L, data.getClientRequests());
+        // Counted from the fourth request on, which covers all seven URIs
+        assertEquals(7L, data.getClientDistinctUris(), 1L);
+        assertEquals(1L, data.getClientDistinctUserAgents());
+
+        HttpMetadata other = new HttpMetadata().ip("5.6.7.8");
+        tracker.track(other, WINDOW_MS, 16, 2_000L);
+        assertEquals(1L, other.getClientRequests());
+        assertEquals(1, tracker.size());
+    }
+
+    @Test
+    void testMaxClients() {
+        BehaviorTracker tracker = new BehaviorTracker(0L);
+        for (int client = 0; client < 10; client++) {
+            for (int i = 0; i < BehaviorTracker.MIN_REQUESTS_TO_TRACK; i++) {
+                tracker.track(new HttpMetadata().ip("10.0.0." + client), WINDOW_MS, 3, 1_000L);
+            }
+        }
+        assertEquals(3, tracker.size());
+        HttpMetadata untracked = new HttpMetadata().ip("10.0.0.9").uri("/");
+        tracker.track(untracked, WINDOW_MS, 3, 1_000L);
+        assertEquals(5L, untracked.getClientRequests());
+        assertNull(untracked.getClientDistinctUris());
+    }
+
+    @Test
+    void testWindowRollover() {
+        BehaviorTracker tracker = new BehaviorTracker(0L);
+        for (int i = 0; i < 5; i++) {
+            tracker.track(new HttpMetadata().ip("1.2.3.4"), WINDOW_MS, 16, 1_000L);
+        }
+        HttpMetadata data = new HttpMetadata().ip("1.2.3.4");
+        tracker.track(data, WINDOW_MS, 16, WINDOW_MS + 1L);
+        assertEquals(1L, data.getClientRequests());
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    void testConcurrentCounts() throws Exception {
+        BehaviorTracker tracker = new BehaviorTracker(0L);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        tracker.track(new HttpMetadata().ip("1.2.3.4").uri("/" + (i % 50)), WINDOW_MS, 16, 1_000L);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        HttpMetadata data = new HttpMetadata().ip("1.2.3.4").uri("/0");
+        tracker.track(data, WINDOW_MS, 16, 1_000L);
+        assertEquals(8001L, data.getClientRequests());
+        assertEquals(50L, data.getClientDistinctUris(), 10L);
+        assertEquals(1, tracker.size());
+    }
+}
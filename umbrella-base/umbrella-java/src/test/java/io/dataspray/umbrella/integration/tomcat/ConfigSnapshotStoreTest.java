@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.Config;
+import io.dataspray.umbrella.client.model.OperationMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigSnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSaveLoad() throws Exception {
+        ConfigSnapshotStore store = new ConfigSnapshotStore(tempDir.resolve("nested").resolve("org.config"));
+        Config config = new Config()
+                .mode(OperationMode.BLOCKING)
+                .timeoutMs(100L)
+                .collectAdditionalHeaders(Arrays.asList("X-A", "X-B"));
+
+        store.save(config);
+
+        assertEquals(Optional.of(config), store.load());
+        try (var files = Files.list(store.getPath().getParent())) {
+            assertEquals(1L, files.count(), "Temporary file left behind");
+        }
+    }
+
+    @Test
+    void testOverwrite() throws Exception {
+        ConfigSnapshotStore store = new ConfigSnapshotStore(tempDir.resolve("org.config"));
+
+        store.save(new Config().mode(OperationMode.BLOCKING));
+        store.save(new Config().mode(OperationMode.MONITOR));
+
+        assertEquals(Optional.of(new Config().mode(OperationMode.MONITOR)), store.load());
+    }
+
+    @Test
+    void testLoadMissing() {
+        assertEquals(Optional.empty(), new ConfigSnapshotStore(tempDir.resolve("missing.config")).load());
+    }
+
+    @Test
+    void testLoadCorrupted() throws Exception {
+        ConfigSnapshotStore store = new ConfigSnapshotStore(tempDir.resolve("org.config"));
+        store.save(new Config().mode(OperationMode.MONITOR));
+
+        String content = Files.readString(store.getPath(), StandardCharsets.UTF_8);
+        Files.writeString(store.getPath(), content.replace("MONITOR", "BLOCKING"), StandardCharsets.UTF_8);
+
+        assertEquals(Optional.empty(), store.load());
+    }
+
+    @Test
+    void testLoadUnrecognized() throws Exception {
+        Path path = tempDir.resolve("org.config");
+        Files.writeString(path, "{\"mode\":\"BLOCKING\"}", StandardCharsets.UTF_8);
+
+        assertEquals(Optional.empty(), new ConfigSnapshotStore(path).load());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionWarmerTest {
+
+    private final OkHttpClient httpClient = new OkHttpClient();
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private MockWebServer mockWebServer;
+    private volatile boolean active = true;
+    private ConnectionWarmer warmer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        warmer = new ConnectionWarmer(
+                httpClient,
+                2,
+                60_000L,
+                300_000L,
+                executor,
+                () -> mockWebServer.url("/").toString(),
+                () -> active,
+                metrics);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void testOpensAndReusesConnections() throws Exception {
+        // Delay answers so both requests are in flight together and need a connection each
+        for (int i = 0; i < 4; i++) {
+            mockWebServer.enqueue(new MockResponse().setHeadersDelay(200, TimeUnit.MILLISECONDS));
+        }
+
+        warmer.warm();
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(2, httpClient.connectionPool().idleConnectionCount()));
+        warmer.warm();
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(4, mockWebServer.getRequestCount()));
+
+        for (int i = 0; i < 4; i++) {
+            RecordedRequest request = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+            assertEquals("HEAD", request.getMethod());
+            // Sequence number is per connection, so the second round must have reused the first round's
+            assertEquals(i < 2 ? 0 : 1, request.getSequenceNumber());
+        }
+        assertEquals(2, httpClient.connectionPool().connectionCount());
+        assertEquals(4L, metrics.snapshot().get("keepWarm.sent"));
+    }
+
+    @Test
+    void testIntervalRefreshesBeforePoolEviction() {
+        assertEquals(60_000L, warmer.getIntervalMs());
+
+        ConnectionWarmer clamped = new ConnectionWarmer(
+                httpClient,
+                2,
+                600_000L,
+                300_000L,
+                executor,
+                () -> mockWebServer.url("/").toString(),
+                () -> active,
+                metrics);
+
+        assertEquals(150_000L, clamped.getIntervalMs());
+    }
+
+    @Test
+    void testInactive() {
+        active = false;
+
+        warmer.warm();
+
+        assertEquals(0, mockWebServer.getRequestCount());
+        assertEquals(0L, metrics.snapshot().get("keepWarm.sent"));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiClient;
+import io.dataspray.umbrella.client.ApiException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndpointSelectorTest {
+
+    private final Endpoint near = new Endpoint(new ApiClient().setBasePath("https://near.example.com"));
+    private final Endpoint far = new Endpoint(new ApiClient().setBasePath("https://far.example.com"));
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
+    private final EndpointSelector selector = new EndpointSelector(Arrays.asList(far, near), metrics);
+
+    @Test
+    void testPrefersLowerLatency() {
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertSame(near, selector.best());
+        assertEquals(10d, metrics.snapshot().get("endpoint[https://near.example.com].latencyEwmaMs").doubleValue(), 0.001d);
+    }
+
+    @Test
+    void testAvoidsRecentlyFailed() {
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        near.recordFailure(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertSame(far, selector.best());
+        assertTrue(near.getErrorRate() > 0d);
+    }
+
+    @Test
+    void testRecoversAfterSuccess() {
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        near.recordFailure(TimeUnit.MILLISECONDS.toNanos(10));
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertFalse(near.isCoolingDown(System.nanoTime()));
+    }
+
+    @Test
+    void testFailoverOnConnectFailure() throws Exception {
+        String result = selector.call(endpoint -> {
+            if (endpoint == far) {
+                throw new ApiException(new ConnectException("Connection refused"));
+            }
+            return endpoint.getUrl();
+        });
+
+        assertEquals("https://near.example.com", result);
+        assertEquals(1L, metrics.snapshot().get("endpoint.failovers"));
+        assertEquals(1L, far.getFailures());
+    }
+
+    @Test
+    void testNoFailoverOnClientError() {
+        assertThrows(ApiException.class, () -> selector.call(endpoint -> {
+            throw new ApiException(403, "Forbidden");
+        }));
+
+        assertEquals(0L, metrics.snapshot().get("endpoint.failovers"));
+        assertEquals(0L, far.getFailures());
+        assertEquals(0L, near.getFailures());
+    }
+
+    @Test
+    void testAsyncFailoverOnConnectFailure() throws Exception {
+        String result = selector.<String>callAsync((endpoint, callback) -> {
+            if (endpoint == far) {
+                callback.onFailure(new ApiException(new ConnectException("Connection refused")), 0, null);
+            } else {
+                callback.onSuccess(endpoint.getUrl(), 200, null);
+            }
+        }).get();
+
+        assertEquals("https://near.example.com", result);
+        assertEquals(1L, metrics.snapshot().get("endpoint.failovers"));
+        assertTrue(far.isCoolingDown(System.nanoTime()));
+    }
+
+    @Test
+    void testHedgeWins() throws Exception {
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        HedgePolicy policy = primedHedgePolicy();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            String result = selector.<String>callHedged((endpoint, callback) -> {
+                // The usually faster endpoint is stuck this time
+                scheduler.schedule(() -> callback.onSuccess(endpoint.getUrl(), 200, null),
+                        endpoint == near ? 2_000L : 0L, TimeUnit.MILLISECONDS);
+                return null;
+            }, policy, scheduler).get(1, TimeUnit.SECONDS);
+
+            assertEquals("https://far.example.com", result);
+            assertEquals(1L, metrics.snapshot().get("hedge.sent"));
+            await().atMost(Duration.ofSeconds(1))
+                    .untilAsserted(() -> assertEquals(1L, metrics.snapshot().get("hedge.wins")));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testHedgeNotSentWithoutBudget() throws Exception {
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        HedgePolicy policy = new HedgePolicy(0d);
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            String result = selector.<String>callHedged((endpoint, callback) -> {
+                scheduler.schedule(() -> callback.onSuccess(endpoint.getUrl(), 200, null), 200L, TimeUnit.MILLISECONDS);
+                return null;
+            }, policy, scheduler).get(1, TimeUnit.SECONDS);
+
+            assertEquals("https://near.example.com", result);
+            assertEquals(0L, metrics.snapshot().get("hedge.sent"));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testHedgedLoserFailureNotRecorded() throws Exception {
+        near.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        far.recordSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        HedgePolicy policy = primedHedgePolicy();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            selector.<String>callHedged((endpoint, callback) -> {
+                if (endpoint == near) {
+                    // Fails only once cancelled after the hedge won
+                    scheduler.schedule(() -> callback.onFailure(new ApiException(new IOException("Canceled")), 0, null),
+                            500L, TimeUnit.MILLISECONDS);
+                } else {
+                    callback.onSuccess(endpoint.getUrl(), 200, null);
+                }
+                return null;
+            }, policy, scheduler).get(1, TimeUnit.SECONDS);
+            Thread.sleep(700L);
+
+            assertEquals(0L, near.getFailures());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testHedgeDelayIncludesFailures() throws Exception {
+        HedgePolicy policy = new HedgePolicy(0d);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+                CompletableFuture<String> result = selector.callHedged((endpoint, callback) -> {
+                    scheduler.schedule(() -> callback.onFailure(new ApiException(503, "Unavailable"), 503, null),
+                            20L, TimeUnit.MILLISECONDS);
+                    return null;
+                }, policy, scheduler);
+                assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+            }
+
+            assertTrue(policy.getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static HedgePolicy primedHedgePolicy() {
+        HedgePolicy policy = new HedgePolicy(1d);
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorReporterTest {
+
+    private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
+    private ErrorReporter reporter;
+
+    @BeforeEach
+    void setUp() {
+        Logger log = Logger.getLogger(ErrorReporterTest.class.getCanonicalName());
+        log.setUseParentHandlers(false);
+        for (Handler handler : log.getHandlers()) {
+            log.removeHandler(handler);
+        }
+        log.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        reporter = new ErrorReporter(log, Level.SEVERE, "Failed", 3, metrics, "test.tracesSuppressed");
+    }
+
+    @Test
+    void testLimitsTracesAndSummarizes() {
+        for (int i = 0; i < 20; i++) {
+            reporter.report(new ApiException(new ConnectException("Connection refused")));
+        }
+
+        assertEquals(3, records.size());
+        assertTrue(records.stream().allMatch(record -> record.getThrown() instanceof ApiException));
+        assertEquals(17L, metrics.snapshot().get("test.tracesSuppressed"));
+
+        records.clear();
+        reporter.flush();
+
+        assertEquals(1, records.size());
+        assertNull(records.get(0).getThrown());
+        assertEquals(20L, records.get(0).getParameters()[1]);
+        assertEquals(ApiException.class.getName(), records.get(0).getParameters()[3]);
+        assertEquals(ConnectException.class.getName(), records.get(0).getParameters()[4]);
+    }
+
+    @Test
+    void testGroupsByTypeAndCause() {
+        reporter.report(new ApiException(new ConnectException("Connection refused")));
+        reporter.report(new CompletionException(new ApiException(new ConnectException("Connection refused"))));
+        reporter.report(new ApiException(new IOException("timeout")));
+        reporter.report(new IllegalStateException());
+        records.clear();
+
+        reporter.flush();
+
+        List<String> summaries = records.stream()
+                .map(record -> record.getParameters()[3] + "/" + record.getParameters()[4] + "=" + record.getParameters()[1])
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(List.of(
+                ApiException.class.getName() + "/" + IOException.class.getName() + "=1",
+                ApiException.class.getName() + "/" + ConnectException.class.getName() + "=2",
+                IllegalStateException.class.getName() + "/" + IllegalStateException.class.getName() + "=1"), summaries);
+    }
+
+    @Test
+    void testFlushResetsInterval() {
+        for (int i = 0; i < 5; i++) {
+            reporter.report(new IllegalStateException());
+        }
+        reporter.flush();
+        records.clear();
+
+        reporter.report(new IllegalStateException());
+        reporter.flush();
+        reporter.flush();
+
+        assertEquals(2, records.size());
+        assertNotNull(records.get(0).getThrown());
+        assertEquals(1L, records.get(1).getParameters()[1]);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.ApiException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBatcherTest {
+
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testFlushInBatches() {
+        EventBatcher<String> batcher = new EventBatcher<>("test", 10, 2, 60_000, batch -> batches.add(new ArrayList<>(batch)), metrics);
+        batcher.offer("a");
+        batcher.offer("b");
+        batcher.offer("c");
+
+        batcher.flush();
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")), batches);
+        assertEquals(3L, metrics.snapshot().get("test.sent"));
+        assertEquals(0, batcher.size());
+    }
+
+    @Test
+    void testFlushOnBatchSize() throws Exception {
+        EventBatcher<String> batcher = new EventBatcher<>("test", 10, 2, 60_000, batch -> batches.add(new ArrayList<>(batch)), metrics);
+        batcher.start(executor);
+        batcher.offer("a");
+        batcher.offer("b");
+
+        executor.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), batches);
+        batcher.shutdown();
+    }
+
+    @Test
+    void testDropWhenFull() {
+        EventBatcher<String> batcher = new EventBatcher<>("test", 2, 10, 60_000, batch -> batches.add(new ArrayList<>(batch)), metrics);
+
+        assertTrue(batcher.offer("a"));
+        assertTrue(batcher.offer("b"));
+        assertFalse(batcher.offer("c"));
+
+        assertEquals(1L, metrics.snapshot().get("test.dropped"));
+        assertEquals(2, metrics.snapshot().get("test.queueDepth"));
+    }
+
+    @Test
+    void testRetryThenDrop() {
+        EventBatcher<String> batcher = new EventBatcher<>("test", 10, 10, 60_000, batch -> {
+            throw new ApiException(503, "Unavailable");
+        }, metrics);
+        batcher.offer("a");
+
+        for (int i = 0; i < EventBatcher.MAX_ATTEMPTS; i++) {
+            batcher.flush();
+        }
+
+        assertEquals(2L, metrics.snapshot().get("test.retried"));
+        assertEquals(1L, metrics.snapshot().get("test.failed"));
+        assertEquals(0L, metrics.snapshot().get("test.sent"));
+    }
+
+    @Test
+    void testNoRetryOnClientError() {
+        EventBatcher<String> batcher = new EventBatcher<>("test", 10, 10, 60_000, batch -> {
+            throw new ApiException(400, "Bad Request");
+        }, metrics);
+        batcher.offer("a");
+
+        batcher.flush();
+
+        assertEquals(0L, metrics.snapshot().get("test.retried"));
+        assertEquals(1L, metrics.snapshot().get("test.failed"));
+    }
+}
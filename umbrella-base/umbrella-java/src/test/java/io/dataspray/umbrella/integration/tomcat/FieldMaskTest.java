@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.BehaviorTrackingConfig;
+import io.dataspray.umbrella.client.model.Config;
+import io.dataspray.umbrella.client.model.FingerprintFilterConfig;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.MetadataField;
+import io.dataspray.umbrella.client.model.OperationMode;
+import io.dataspray.umbrella.client.model.RiskScoringConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldMaskTest {
+
+    @Test
+    void testWithoutMask() {
+        FieldMask fieldMask = FieldMask.create(new Config().mode(OperationMode.MONITOR));
+
+        assertSame(FieldMask.ALL, fieldMask);
+        for (MetadataField field : MetadataField.values()) {
+            assertTrue(fieldMask.collects(field), field.getValue());
+        }
+        assertEquals(34, fieldMask.getHeaderFields().size());
+    }
+
+    @Test
+    void testMask() {
+        FieldMask fieldMask = FieldMask.create(new Config()
+                .mode(OperationMode.MONITOR)
+                .fieldMask(FieldMask.bit(MetadataField.H_SEC_FETCH_SITE)
+                           | FieldMask.bit(MetadataField.H_X_FWD_FOR)
+                           | FieldMask.bit(MetadataField.COOKIE_NAMES)));
+
+        assertTrue(fieldMask.collects(MetadataField.COOKIE_NAMES));
+        assertFalse(fieldMask.collects(MetadataField.HEADER_NAMES));
+        assertFalse(fieldMask.collects(MetadataField.PROTO));
+        assertEquals(List.of("X-Forwarded-For", "Sec-Fetch-Site"), fieldMask.getHeaderFields().stream()
+                .map(FieldMask.HeaderField::getHeaderName)
+                .collect(Collectors.toList()));
+
+        HttpMetadata data = new HttpMetadata();
+        fieldMask.getHeaderFields().get(1).set(data, "same-origin");
+        assertEquals("same-origin", data.gethSecFetchSite());
+    }
+
+    @Test
+    void testMaskKeepsFieldsUsedLocally() {
+        FieldMask fieldMask = FieldMask.create(new Config()
+                .mode(OperationMode.HYBRID)
+                .fieldMask(0L)
+                .riskScoring(new RiskScoringConfig()
+                        .threshold(5)
+                        .missingAcceptLanguage(3)
+                        .missingUserAgent(0)
+                        .knownFingerprint(2))
+                .behaviorTracking(new BehaviorTrackingConfig().windowSeconds(60L)));
+
+        assertEquals(FieldMask.bit(MetadataField.H_ACCEPT_LANGUAGE)
+                     | FieldMask.bit(MetadataField.H_USER_AGENT)
+                     | FieldMask.bit(MetadataField.HEADER_NAMES), fieldMask.getBits());
+    }
+
+    @Test
+    void testMaskKeepsFieldsUsedByFingerprintFilter() {
+        FieldMask fieldMask = FieldMask.create(new Config()
+                .mode(OperationMode.BLOCKING)
+                .fieldMask(FieldMask.bit(MetadataField.H_ACCEPT))
+                .fingerprintFilter(new FingerprintFilterConfig()
+                        .version("v1")
+                        .numHashes(3)));
+
+        assertEquals(FieldMask.bit(MetadataField.H_ACCEPT)
+                     | FieldMask.bit(MetadataField.H_USER_AGENT)
+                     | FieldMask.bit(MetadataField.HEADER_NAMES), fieldMask.getBits());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintFilterTest {
+
+    @Test
+    void testMightContain() {
+        byte[] bits = new byte[1 << 12];
+        for (int i = 0; i < 1000; i++) {
+            FingerprintFilter.add(bits, 5, Fingerprints.ip("10.0." + (i / 256) + "." + (i % 256)));
+        }
+        FingerprintFilter filter = FingerprintFilter.create("v1", 5, bits);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(Fingerprints.ip("10.0." + (i / 256) + "." + (i % 256))));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(Fingerprints.ip("172.16." + (i / 256) + "." + (i % 256)))) {
+                falsePositives++;
+            }
+        }
+        // 32768 bits, 1000 entries and 5 hashes is about 0.02% expected
+        assertTrue(falsePositives < 20, "False positives " + falsePositives);
+    }
+
+    @Test
+    void testWithAddedBits() {
+        long fingerprint = Fingerprints.userAgent("BadBot/1.0");
+        byte[] delta = FingerprintFilter.add(new byte[64], 3, fingerprint);
+        List<Long> addedBits = new ArrayList<>();
+        for (int bit = 0; bit < delta.length * 8; bit++) {
+            if ((delta[bit >>> 3] & (1 << (bit & 7))) != 0) {
+                addedBits.add((long) bit);
+            }
+        }
+        FingerprintFilter filter = FingerprintFilter.create("v1", 3, new byte[64]);
+
+        FingerprintFilter updated = filter.withAddedBits("v2", addedBits);
+
+        assertFalse(filter.mightContain(fingerprint));
+        assertTrue(updated.mightContain(fingerprint));
+        assertEquals("v2", updated.getVersion());
+        assertThrows(IllegalArgumentException.class, () -> filter.withAddedBits("v3", List.of(512L)));
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> FingerprintFilter.create("v1", 0, new byte[64]));
+        assertThrows(IllegalArgumentException.class, () -> FingerprintFilter.create("v1", 3, new byte[48]));
+        assertThrows(IllegalArgumentException.class, () -> FingerprintFilter.create("v1", 3, new byte[4]));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintsTest {
+
+    @Test
+    void testMatchesUtf8Bytes() {
+        for (String value : List.of("", "10.0.0.1", "Mozilla/5.0 (X11; Linux x86_64)", "\u00dcn\u00efc\u00f6d\u00e9", "\u65e5\u672c\u8a9e", "emoji \ud83d\ude00")) {
+            assertEquals(fnv("ip:" + value), Fingerprints.ip(value), value);
+            assertEquals(fnv("ua:" + value), Fingerprints.userAgent(value), value);
+        }
+    }
+
+    @Test
+    void testHeaderOrder() {
+        assertEquals(fnv("ho:host,user-agent,accept"), Fingerprints.headerOrder(List.of("Host", "User-Agent", "accept")));
+        assertEquals(fnv("ho:"), Fingerprints.headerOrder(List.of()));
+        assertNotEquals(Fingerprints.headerOrder(List.of("Host", "Accept")), Fingerprints.headerOrder(List.of("Accept", "Host")));
+    }
+
+    @Test
+    void testHeaders() {
+        long cookieSum = fnv("ck:session") + fnv("ck:theme");
+        byte[] prefix = "hf:host,accept|".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = ByteBuffer.allocate(prefix.length + 8).put(prefix).putLong(cookieSum).array();
+        assertEquals(fnv(expected), Fingerprints.headers(List.of("Host", "Accept"), List.of("session", "theme")));
+
+        assertEquals(Fingerprints.headers(List.of("Host"), List.of("a", "b")), Fingerprints.headers(List.of("Host"), List.of("b", "a")));
+        assertNotEquals(Fingerprints.headers(List.of("Host", "Accept"), List.of()), Fingerprints.headers(List.of("Accept", "Host"), List.of()));
+        assertNotEquals(Fingerprints.headers(List.of("Host"), List.of()), Fingerprints.headers(List.of("Host"), List.of("a")));
+    }
+
+    private static long fnv(String value) {
+        return fnv(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long fnv(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
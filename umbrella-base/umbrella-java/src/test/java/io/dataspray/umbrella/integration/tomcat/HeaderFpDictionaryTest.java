@@ -0,0 +1,58 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeaderFpDictionaryTest {
+
+    @Test
+    void testAddContainsClear() {
+        HeaderFpDictionary dictionary = new HeaderFpDictionary(16);
+        assertFalse(dictionary.contains(42L));
+        dictionary.add(42L);
+        assertTrue(dictionary.contains(42L));
+        assertFalse(dictionary.contains(43L));
+        dictionary.clear();
+        assertFalse(dictionary.contains(42L));
+    }
+
+    @Test
+    void testCollidingHashReplaced() {
+        HeaderFpDictionary dictionary = new HeaderFpDictionary(16);
+        dictionary.add(1L);
+        dictionary.add(17L);
+        assertFalse(dictionary.contains(1L));
+        assertTrue(dictionary.contains(17L));
+    }
+
+    @Test
+    void testZeroNeverRemembered() {
+        HeaderFpDictionary dictionary = new HeaderFpDictionary(16);
+        dictionary.add(0L);
+        assertFalse(dictionary.contains(0L));
+        assertThrows(IllegalArgumentException.class, () -> new HeaderFpDictionary(12));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgePolicyTest {
+
+    @Test
+    void testDelayIsNinetiethPercentile() {
+        HedgePolicy policy = new HedgePolicy(0.05d);
+        for (int i = 1; i < HedgePolicy.MIN_SAMPLES; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertTrue(policy.getDelayNanos() < 0L);
+
+        for (int i = HedgePolicy.MIN_SAMPLES; i <= 100; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        // Recomputed on the 96th sample, so out of 1..96ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(86), policy.getDelayNanos());
+    }
+
+    @Test
+    void testSampleCountPastIntRange() {
+        HedgePolicy policy = new HedgePolicy(0.05d);
+        policy.sampleCount = Integer.MAX_VALUE - 10L;
+
+        for (int i = 1; i <= 2 * HedgePolicy.MIN_SAMPLES; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertTrue(policy.sampleCount > Integer.MAX_VALUE);
+        assertTrue(policy.getDelayNanos() > 0L);
+    }
+
+    @Test
+    void testBudget() {
+        HedgePolicy policy = new HedgePolicy(0.05d);
+        assertFalse(policy.tryAcquireHedge());
+
+        for (int i = 0; i < 40; i++) {
+            policy.recordCall();
+        }
+        assertTrue(policy.tryAcquireHedge());
+        assertTrue(policy.tryAcquireHedge());
+        assertFalse(policy.tryAcquireHedge());
+    }
+
+    @Test
+    void testBudgetBurstIsCapped() {
+        HedgePolicy policy = new HedgePolicy(0.05d);
+        for (int i = 0; i < 10_000; i++) {
+            policy.recordCall();
+        }
+
+        int hedges = 0;
+        while (policy.tryAcquireHedge()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+}
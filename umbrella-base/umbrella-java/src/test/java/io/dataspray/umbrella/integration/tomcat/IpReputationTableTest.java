@@ -0,0 +1,158 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpReputationTableTest {
+
+    @Test
+    void testLookup() throws Exception {
+        IpReputationTable table = IpReputationTable.read(new ByteArrayInputStream(snapshot(Map.of(
+                "10.0.0.1", 90,
+                "192.168.1.255", 20,
+                "2001:db8::1", 80,
+                "fe80::1:2:3:4", 70,
+                "1:2:3:4:5:6:7:8", 60))));
+
+        assertEquals(5, table.size());
+        assertEquals(90, table.score("10.0.0.1"));
+        assertEquals(20, table.score("192.168.1.255"));
+        assertEquals(80, table.score("2001:db8::1"));
+        assertEquals(80, table.score("2001:0DB8:0:0:0:0:0:1"));
+        assertEquals(70, table.score("fe80::1:2:3:4%eth0"));
+        assertEquals(60, table.score("1:2:3:4:5:6:7:8"));
+        // IPv4-mapped IPv6
+        assertEquals(90, table.score("::ffff:10.0.0.1"));
+        assertEquals(90, table.score("::ffff:a00:1"));
+        assertEquals(-1, table.score("10.0.0.2"));
+        assertEquals(-1, table.score("2001:db8::2"));
+    }
+
+    @Test
+    void testInvalidAddresses() throws Exception {
+        IpReputationTable table = IpReputationTable.read(new ByteArrayInputStream(snapshot(Map.of(
+                "10.0.0.1", 90,
+                "::1", 90))));
+
+        for (String ip : List.of("", "10.0.0", "10.0.0.1.", "10.0.0.256", "10.0.0.1000", "10..0.1", "abc",
+                ":", ":::1", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "12345::1", "1:", "::1.2.3",
+                "::g", "1:2:3:4:5:6:7:1.2.3.4")) {
+            assertEquals(-1, table.score(ip), ip);
+        }
+        assertEquals(-1, table.score(null));
+        assertEquals(90, table.score("::1"));
+        assertEquals(-1, table.score("::"));
+    }
+
+    @Test
+    void testMatchesJdkParsing() throws Exception {
+        List<String> ips = List.of("::", "::1", "1::", "1:2::7:8", "1:2:3:4:5:6::8", "1::3:4:5:6:7:8",
+                "::2:3:4:5:6:7:8", "ab:cd::ef", "::1.2.3.4", "64:ff9b::10.0.0.1", "1:2:3:4:5:6:1.2.3.4");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(IpReputationTable.MAGIC);
+        out.writeInt(IpReputationTable.FORMAT_VERSION);
+        out.writeInt(0);
+        out.writeInt(ips.size());
+        for (int i = 0; i < ips.size(); i++) {
+            ByteBuffer address = ByteBuffer.wrap(InetAddress.getByName(ips.get(i)).getAddress());
+            if (address.capacity() == 4) {
+                // Java collapses these into IPv4 but the table keys them as IPv6
+                address = ByteBuffer.allocate(16).putInt(12, address.getInt(0));
+            }
+            out.writeLong(address.getLong(0));
+            out.writeLong(address.getLong(8));
+            out.writeByte(i + 1);
+        }
+        IpReputationTable table = IpReputationTable.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(-1, table.score("::"));
+        for (int i = 1; i < ips.size(); i++) {
+            assertEquals(i + 1, table.score(ips.get(i)), ips.get(i));
+        }
+    }
+
+    @Test
+    void testInvalidSnapshot() {
+        assertThrows(IOException.class, () -> IpReputationTable.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4})));
+        byte[] truncated = snapshot(Map.of("10.0.0.1", 90));
+        assertThrows(IOException.class, () -> IpReputationTable.read(new ByteArrayInputStream(truncated, 0, truncated.length - 2)));
+    }
+
+    @Test
+    void testFootprint() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(IpReputationTable.MAGIC);
+        out.writeInt(IpReputationTable.FORMAT_VERSION);
+        int count = 100_000;
+        out.writeInt(count);
+        for (int i = 1; i <= count; i++) {
+            out.writeInt(i * 7919);
+            out.writeByte(i % 100);
+        }
+        out.writeInt(0);
+        IpReputationTable table = IpReputationTable.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(count, table.size());
+        assertTrue(table.footprintBytes() / count < 16, "Footprint per entry " + table.footprintBytes() / count);
+        assertEquals(5, table.score(InetAddress.getByAddress(ByteBuffer.allocate(4).putInt(5 * 7919).array()).getHostAddress()));
+    }
+
+    static byte[] snapshot(Map<String, Integer> scores) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(IpReputationTable.MAGIC);
+            out.writeInt(IpReputationTable.FORMAT_VERSION);
+            List<Map.Entry<String, Integer>> ipv4 = scores.entrySet().stream().filter(e -> !e.getKey().contains(":")).collect(Collectors.toList());
+            List<Map.Entry<String, Integer>> ipv6 = scores.entrySet().stream().filter(e -> e.getKey().contains(":")).collect(Collectors.toList());
+            out.writeInt(ipv4.size());
+            for (Map.Entry<String, Integer> entry : ipv4) {
+                out.write(InetAddress.getByName(entry.getKey()).getAddress());
+                out.writeByte(entry.getValue());
+            }
+            out.writeInt(ipv6.size());
+            for (Map.Entry<String, Integer> entry : ipv6) {
+                out.write(InetAddress.getByName(entry.getKey()).getAddress());
+                out.writeByte(entry.getValue());
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
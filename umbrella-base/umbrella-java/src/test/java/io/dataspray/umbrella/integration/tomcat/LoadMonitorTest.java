@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.LoadReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadMonitorTest {
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(LoadMonitor.SAMPLE_INTERVAL_MS);
+    private final AtomicInteger changes = new AtomicInteger();
+    private final LoadMonitor loadMonitor = new LoadMonitor(100, 200L, 0, changes::incrementAndGet, new UmbrellaMetrics());
+    private long nowNanos;
+
+    @Test
+    void testDegradesOnlyWhenSustained() {
+        for (int i = 1; i < LoadMonitor.DEGRADE_AFTER_SAMPLES; i++) {
+            sample(150, 0L);
+        }
+        // A single calm sample resets the count
+        sample(10, 0L);
+        for (int i = 1; i < LoadMonitor.DEGRADE_AFTER_SAMPLES; i++) {
+            sample(150, 0L);
+        }
+        assertFalse(loadMonitor.isDegraded());
+
+        sample(0, TimeUnit.MILLISECONDS.toNanos(300L));
+        assertTrue(loadMonitor.isDegraded());
+        assertEquals(1, changes.get());
+    }
+
+    @Test
+    void testRecoversWithHysteresis() {
+        for (int i = 0; i < LoadMonitor.DEGRADE_AFTER_SAMPLES; i++) {
+            sample(100, 0L);
+        }
+        assertTrue(loadMonitor.isDegraded());
+
+        // Below the limits, but not calm enough to recover
+        for (int i = 0; i < LoadMonitor.RECOVER_AFTER_SAMPLES * 2; i++) {
+            sample(80, 0L);
+        }
+        assertTrue(loadMonitor.isDegraded());
+
+        for (int i = 1; i < LoadMonitor.RECOVER_AFTER_SAMPLES; i++) {
+            sample(10, 0L);
+        }
+        assertTrue(loadMonitor.isDegraded());
+        sample(10, 0L);
+        assertFalse(loadMonitor.isDegraded());
+        assertEquals(2, changes.get());
+    }
+
+    @Test
+    void testReport() {
+        loadMonitor.requestStarted();
+        loadMonitor.requestStarted();
+        loadMonitor.requestFinished();
+        for (int i = 0; i < LoadMonitor.DEGRADE_AFTER_SAMPLES + 2; i++) {
+            sample(100, 0L);
+        }
+
+        LoadReport report = loadMonitor.report();
+        assertTrue(report.getDegraded());
+        assertEquals(1L, report.getDegradations());
+        assertEquals(2L * LoadMonitor.SAMPLE_INTERVAL_MS, report.getDegradedMs());
+        assertEquals(1.0, report.getPressure());
+
+        LoadReport next = loadMonitor.report();
+        assertEquals(0L, next.getDegradations());
+        assertEquals(0L, next.getDegradedMs());
+    }
+
+    private void sample(long inFlight, long lagNanos) {
+        nowNanos += INTERVAL_NANOS;
+        loadMonitor.update(inFlight, lagNanos, 0, nowNanos);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.RiskPathRule;
+import io.dataspray.umbrella.client.model.RiskScoringConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RiskScorerTest {
+
+    private static final RiskScoringConfig CONFIG = new RiskScoringConfig()
+            .threshold(10)
+            .missingSecFetch(4)
+            .missingAcceptLanguage(3)
+            .missingUserAgent(8)
+            .authorization(-5)
+            .pathRules(List.of(
+                    new RiskPathRule().prefix("/login").score(6),
+                    new RiskPathRule().prefix("/").score(1)));
+
+    @Test
+    void testScore() {
+        RiskScorer scorer = RiskScorer.create(CONFIG);
+        assertEquals(10, scorer.getThreshold());
+
+        HttpMetadata browser = new HttpMetadata()
+                .uri("/home")
+                .hSecFetchMode("navigate")
+                .hAcceptLanguage("en")
+                .hUserAgent("Mozilla/5.0");
+        assertEquals(1, scorer.score(browser, IpReputationTable.EMPTY, null));
+
+        HttpMetadata script = new HttpMetadata().uri("/login");
+        assertEquals(4 + 3 + 8 + 6, scorer.score(script, IpReputationTable.EMPTY, null));
+
+        script.hAuthPrefix("Bearer");
+        assertEquals(4 + 3 + 8 + 6 - 5, scorer.score(script, IpReputationTable.EMPTY, null));
+    }
+
+    @Test
+    void testKnownFingerprint() {
+        RiskScorer scorer = RiskScorer.create(new RiskScoringConfig()
+                .threshold(1)
+                .knownFingerprint(7));
+        FingerprintFilter filter = FingerprintFilter.create("v1", 1, new byte[8])
+                .withAddedBits("v2", List.of(Fingerprints.ip("1.2.3.4") & 63L));
+
+        assertEquals(7, scorer.score(new HttpMetadata().ip("1.2.3.4"), IpReputationTable.EMPTY, filter));
+        assertEquals(0, scorer.score(new HttpMetadata().ip("1.2.3.4"), IpReputationTable.EMPTY, null));
+    }
+
+    @Test
+    void testNoConfig() {
+        assertNull(RiskScorer.create(null));
+    }
+}
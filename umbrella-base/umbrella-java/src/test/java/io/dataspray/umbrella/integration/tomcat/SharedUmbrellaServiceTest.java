@@ -0,0 +1,187 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.JSON;
+import io.dataspray.umbrella.client.model.*;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedUmbrellaServiceTest {
+
+    private MockWebServer mockWebServer;
+    private final BlockingQueue<RecordedRequest> pings = new LinkedBlockingQueue<>();
+    private final BlockingQueue<HttpEventRequest> httpEvents = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/node/ping")) {
+                    pings.add(request);
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING))));
+                } else if (request.getPath().endsWith("/event/http")) {
+                    httpEvents.add(JSON.getGson().fromJson(request.getBody().readUtf8(), HttpEventRequest.class));
+                    return new MockResponse().setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction().requestProcess(RequestProcess.ALLOW))));
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        mockWebServer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void testSharedRuntime() throws Exception {
+        int runtimeCount = SharedUmbrellaService.runtimeCount();
+        SharedUmbrellaService first = init("api_key", "context=/first");
+        SharedUmbrellaService second = init("api_key", "context=/second");
+
+        assertSame(first.getService(), second.getService());
+        assertEquals(runtimeCount + 1, SharedUmbrellaService.runtimeCount());
+        assertNotEquals(first.getNodeIdentifier(), second.getNodeIdentifier());
+        // Only the runtime pings on startup
+        assertEquals(1, pings.size());
+
+        // Each context reports under its own identity
+        first.httpEvent(new HttpMetadata());
+        second.httpEvent(new HttpMetadata());
+        List<String> nodeIds = new ArrayList<>();
+        nodeIds.add(httpEvents.poll(5, TimeUnit.SECONDS).getNodeId());
+        nodeIds.add(httpEvents.poll(5, TimeUnit.SECONDS).getNodeId());
+        assertEquals(List.of(first.getNodeIdentifier(), second.getNodeIdentifier()), nodeIds);
+
+        first.shutdown();
+        first.shutdown();
+        assertFalse(second.getService().executor.isShutdown());
+        assertEquals(runtimeCount + 1, SharedUmbrellaService.runtimeCount());
+
+        second.shutdown();
+        assertTrue(second.getService().executor.isShutdown());
+        assertEquals(runtimeCount, SharedUmbrellaService.runtimeCount());
+    }
+
+    @Test
+    void testPrimaryNodeReelected() throws Exception {
+        SharedUmbrellaService first = init("api_key", "context=/first");
+        SharedUmbrellaService second = init("api_key", "context=/second");
+        SharedUmbrellaService third = init("api_key", "context=/third");
+        assertEquals(first.getNodeIdentifier(), first.getService().getNodeIdentifier());
+
+        // Batches move to the longest attached remaining node once the primary is gone
+        first.shutdown();
+        assertEquals(second.getNodeIdentifier(), second.getService().getNodeIdentifier());
+
+        second.shutdown();
+        assertEquals(third.getNodeIdentifier(), third.getService().getNodeIdentifier());
+        third.shutdown();
+        assertTrue(third.getService().executor.isShutdown());
+    }
+
+    @Test
+    void testSeparateRuntimePerApiKey() throws Exception {
+        SharedUmbrellaService first = init("api_key", "context=/first");
+        SharedUmbrellaService second = init("other_api_key", "context=/second");
+
+        assertNotSame(first.getService(), second.getService());
+        assertEquals(2, pings.size());
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    void testSlowStartDoesNotBlockOtherRuntimes() throws Exception {
+        CountDownLatch pingReceived = new CountDownLatch(1);
+        CountDownLatch pingReleased = new CountDownLatch(1);
+        MockWebServer slowServer = new MockWebServer();
+        slowServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                pingReceived.countDown();
+                pingReleased.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING))));
+            }
+        });
+        slowServer.start();
+        try {
+            SharedUmbrellaService slow = (SharedUmbrellaService) UmbrellaService.createShared();
+            CompletableFuture<Void> slowInit = CompletableFuture.runAsync(() -> slow.init(
+                    "org_name",
+                    "api_key",
+                    Collections.singletonList("context=/slow"),
+                    Collections.singletonList(slowServer.url("/").toString())));
+            assertTrue(pingReceived.await(5, TimeUnit.SECONDS));
+
+            // Another runtime starts while the first one is still waiting for its ping
+            SharedUmbrellaService other = CompletableFuture.supplyAsync(() -> init("api_key", "context=/other"))
+                    .get(2, TimeUnit.SECONDS);
+            assertFalse(slowInit.isDone());
+
+            pingReleased.countDown();
+            slowInit.get(5, TimeUnit.SECONDS);
+            slow.shutdown();
+            other.shutdown();
+        } finally {
+            pingReleased.countDown();
+            slowServer.shutdown();
+        }
+    }
+
+    private SharedUmbrellaService init(String apiKey, String context) {
+        SharedUmbrellaService service = (SharedUmbrellaService) UmbrellaService.createShared();
+        service.init(
+                "org_name",
+                apiKey,
+                Collections.singletonList(context),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        return service;
+    }
+}
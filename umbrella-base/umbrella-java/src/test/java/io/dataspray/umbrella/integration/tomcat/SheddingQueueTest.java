@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.integration.tomcat.SheddingQueue.Offer;
+import io.dataspray.umbrella.integration.tomcat.SheddingQueue.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SheddingQueueTest {
+
+    private final UmbrellaMetrics metrics = new UmbrellaMetrics();
+
+    @Test
+    void testShedsLowestPriorityFirst() {
+        SheddingQueue<String> queue = new SheddingQueue<>(3, metrics, "shed");
+        assertEquals(Offer.ADDED, queue.offer("low1", Priority.LOW));
+        assertEquals(Offer.ADDED, queue.offer("normal1", Priority.NORMAL));
+        assertEquals(Offer.ADDED, queue.offer("low2", Priority.LOW));
+
+        assertEquals(Offer.REPLACED, queue.offer("high1", Priority.HIGH));
+        assertEquals(Offer.REPLACED, queue.offer("normal2", Priority.NORMAL));
+        assertEquals(Offer.SHED, queue.offer("normal3", Priority.NORMAL));
+        assertEquals(Offer.SHED, queue.offer("low3", Priority.LOW));
+        assertEquals(3, queue.size());
+
+        assertEquals("high1", queue.poll());
+        assertEquals("normal1", queue.poll());
+        assertEquals("normal2", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+
+        assertEquals(3L, metrics.snapshot().get("shed.low"));
+        assertEquals(1L, metrics.snapshot().get("shed.normal"));
+        assertEquals(0L, metrics.snapshot().get("shed.high"));
+        assertEquals(4L, queue.shedCount());
+    }
+
+    @Test
+    void testRemove() {
+        SheddingQueue<String> queue = new SheddingQueue<>(3, metrics, "shed");
+        queue.offer("high1", Priority.HIGH);
+        queue.offer("low1", Priority.LOW);
+
+        assertTrue(queue.remove("low1", Priority.LOW));
+        assertFalse(queue.remove("low1", Priority.LOW));
+        assertFalse(queue.remove("high1", Priority.LOW));
+        assertEquals(1, queue.size());
+        assertEquals("high1", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testConcurrentOffersStayBounded() throws Exception {
+        SheddingQueue<Integer> queue = new SheddingQueue<>(100, metrics, "shed");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        queue.offer(i, Priority.values()[(i + offset) % 3]);
+                        if (i % 10 == 0) {
+                            queue.poll();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        int polled = 0;
+        while (queue.poll() != null) {
+            polled++;
+        }
+        assertEquals(100, polled);
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.integration.tomcat.SheddingQueue.Priority;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryPriorityTest {
+
+    @Test
+    void testPriority() {
+        assertEquals(Priority.HIGH, TelemetryPriority.of(new HttpMetadata().uri("/app.js"), false, false));
+        assertEquals(Priority.HIGH, TelemetryPriority.of(new HttpMetadata().uri("/app.js"), true, true));
+        assertEquals(Priority.HIGH, TelemetryPriority.of(new HttpMetadata().uri("/api/login"), true, false));
+        assertEquals(Priority.HIGH, TelemetryPriority.of(new HttpMetadata().uri("/api/orders").hAuthPrefix("Bearer"), true, false));
+        assertEquals(Priority.LOW, TelemetryPriority.of(new HttpMetadata().uri("/static/app.js?v=3"), true, false));
+        assertEquals(Priority.NORMAL, TelemetryPriority.of(new HttpMetadata().uri("/products/42"), true, false));
+        assertEquals(Priority.NORMAL, TelemetryPriority.of(new HttpMetadata(), true, false));
+    }
+
+    @Test
+    void testIsStaticAsset() {
+        assertTrue(TelemetryPriority.isStaticAsset("/fonts/Inter.WOFF2"));
+        assertTrue(TelemetryPriority.isStaticAsset("/favicon.ico"));
+        assertFalse(TelemetryPriority.isStaticAsset("/v1.2/users"));
+        assertFalse(TelemetryPriority.isStaticAsset("/download?file=a.css"));
+        assertFalse(TelemetryPriority.isStaticAsset("/"));
+        assertFalse(TelemetryPriority.isStaticAsset(""));
+    }
+}
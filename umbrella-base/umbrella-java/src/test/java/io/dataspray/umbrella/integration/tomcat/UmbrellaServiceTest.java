@@ -24,16 +24,31 @@ package io.dataspray.umbrella.integration.tomcat;
 
 import io.dataspray.umbrella.client.JSON;
 import io.dataspray.umbrella.client.model.*;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
@@ -63,7 +78,7 @@ class UmbrellaServiceTest {
                 "org_name",
                 "api_key",
                 Collections.singletonList("nodeIdentifier"),
-                Optional.of(mockWebServer.url("/").toString()));
+                Collections.singletonList(mockWebServer.url("/").toString()));
         assertFalse(umbrellaService.executor.isShutdown());
         assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
         assertEquals(3000L, umbrellaService.config.getTimeoutMs());
@@ -72,6 +87,20 @@ class UmbrellaServiceTest {
         assertTrue(umbrellaService.executor.isShutdown());
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    void testInitSingleEndpoint() throws Exception {
+        mockPingServerEndpoint(OperationMode.MONITOR, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Optional.of(mockWebServer.url("/").toString()));
+
+        assertEquals(OperationMode.MONITOR, umbrellaService.config.getMode());
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
     @Test
     void testHttpEventBlock() throws Exception {
         mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
@@ -79,7 +108,7 @@ class UmbrellaServiceTest {
                 "org_name",
                 "api_key",
                 Collections.singletonList("nodeIdentifier"),
-                Optional.of(mockWebServer.url("/").toString()));
+                Collections.singletonList(mockWebServer.url("/").toString()));
         HttpAction actionExpected = new HttpAction()
                 .requestProcess(RequestProcess.BLOCK)
                 .requestMetadata(Collections.singletonMap("attrKey", "attrVal"));
@@ -98,7 +127,7 @@ class UmbrellaServiceTest {
                 "org_name",
                 "api_key",
                 Collections.singletonList("nodeIdentifier"),
-                Optional.of(mockWebServer.url("/").toString()));
+                Collections.singletonList(mockWebServer.url("/").toString()));
         HttpAction actionReturned = new HttpAction()
                 .requestProcess(RequestProcess.BLOCK);
         mockHttpEventEndpoint(actionReturned, OperationMode.MONITOR, 300L);
@@ -109,6 +138,44 @@ class UmbrellaServiceTest {
         assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
     }
 
+    @Test
+    void testHttpEventRateLimited() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(429));
+
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(new HttpMetadata()));
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(new HttpMetadata()));
+
+        // Backs off without touching the config received from the server
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
+    }
+
+    @Test
+    void testHttpEventBlockingLaneFull() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        int permits = umbrellaService.blockingChecks.drainPermits();
+        assertEquals(permits, umbrellaService.metrics().get("lane.blocking.depth"));
+
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(new HttpMetadata()));
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEventAsync(new HttpMetadata()).get());
+
+        // Fails open without calling the API
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(2L, umbrellaService.metrics().get("lane.blocking.rejected"));
+        umbrellaService.blockingChecks.release(permits);
+    }
+
     @Test
     void testHttpEventMonitor() throws Exception {
         mockPingServerEndpoint(OperationMode.MONITOR, 1L);
@@ -116,7 +183,7 @@ class UmbrellaServiceTest {
                 "org_name",
                 "api_key",
                 Collections.singletonList("nodeIdentifier"),
-                Optional.of(mockWebServer.url("/").toString()));
+                Collections.singletonList(mockWebServer.url("/").toString()));
         HttpAction actionReturned = new HttpAction()
                 .requestProcess(RequestProcess.BLOCK);
         mockHttpEventEndpoint(actionReturned, OperationMode.BLOCKING, 100L);
@@ -136,7 +203,7 @@ class UmbrellaServiceTest {
                 "org_name",
                 "api_key",
                 Collections.singletonList("nodeIdentifier"),
-                Optional.of(mockWebServer.url("/").toString()));
+                Collections.singletonList(mockWebServer.url("/").toString()));
         HttpAction actionExpected = UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION;
 
         HttpAction actionActual = umbrellaService.httpEvent(new HttpMetadata());
@@ -145,6 +212,1107 @@ class UmbrellaServiceTest {
         assertEquals(OperationMode.DISABLED, umbrellaService.config.getMode());
     }
 
+    @Test
+    void testHttpEventAsyncBlock() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        HttpAction actionExpected = new HttpAction()
+                .requestProcess(RequestProcess.BLOCK);
+        mockHttpEventEndpoint(actionExpected, OperationMode.MONITOR, 0L);
+
+        HttpAction actionActual = umbrellaService.httpEventAsync(new HttpMetadata()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(actionExpected, actionActual);
+        assertEquals(OperationMode.MONITOR, umbrellaService.config.getMode());
+    }
+
+    @Test
+    void testHttpEventAsyncBlockTimeout() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 200L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.BLOCK), OperationMode.MONITOR, 2000L);
+
+        HttpAction actionActual = umbrellaService.httpEventAsync(new HttpMetadata()).get(1, TimeUnit.SECONDS);
+
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, actionActual);
+        assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
+    }
+
+    @Test
+    void testHttpEventAsyncMonitor() throws Exception {
+        mockPingServerEndpoint(OperationMode.MONITOR, 1L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.BLOCK), OperationMode.BLOCKING, 100L);
+
+        CompletableFuture<HttpAction> actionActual = umbrellaService.httpEventAsync(new HttpMetadata());
+
+        assertTrue(actionActual.isDone());
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, actionActual.get());
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode()));
+    }
+
+    @Test
+    void testTelemetryDoesNotDelayControlLane() throws Exception {
+        mockPingServerEndpoint(OperationMode.MONITOR, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        for (int i = 0; i < 8; i++) {
+            mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.BLOCK), OperationMode.MONITOR, 1000L);
+            umbrellaService.httpEvent(new HttpMetadata());
+        }
+
+        assertEquals(8, umbrellaService.metrics().get("lane.telemetry.pending"));
+        assertTrue(umbrellaService.metrics().get("lane.telemetry.depth").intValue() > 0);
+        umbrellaService.executor.submit(() -> {
+        }).get(500, TimeUnit.MILLISECONDS);
+        assertEquals(0, umbrellaService.metrics().get("lane.control.depth"));
+    }
+
+    @Test
+    void testHttpEventBlockHedged() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().hedging(true));
+        HttpAction actionExpected = new HttpAction()
+                .requestProcess(RequestProcess.BLOCK);
+        for (int i = 0; i < HedgePolicy.MIN_SAMPLES; i++) {
+            mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.ALLOW), OperationMode.BLOCKING, 0L);
+            umbrellaService.httpEvent(new HttpMetadata());
+        }
+        assertEquals(0L, umbrellaService.metrics().get("hedge.sent"));
+
+        // The first call gets stuck, the hedge is answered right away
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.ALLOW), OperationMode.BLOCKING, 2000L);
+        mockHttpEventEndpoint(actionExpected, OperationMode.BLOCKING, 0L);
+        HttpAction actionActual = umbrellaService.httpEvent(new HttpMetadata());
+
+        assertEquals(actionExpected, actionActual);
+        assertEquals(1L, umbrellaService.metrics().get("hedge.sent"));
+        await().atMost(Duration.ofSeconds(1))
+                .untilAsserted(() -> assertEquals(1L, umbrellaService.metrics().get("hedge.wins")));
+    }
+
+    @Test
+    void testHttpEventAsyncDisabled() throws Exception {
+        CompletableFuture<HttpAction> actionActual = umbrellaService.httpEventAsync(new HttpMetadata());
+
+        assertTrue(actionActual.isDone());
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, actionActual.get());
+    }
+
+    @Test
+    void testInitRestoresConfigSnapshot(@TempDir Path tempDir) throws Exception {
+        Path snapshotPath = tempDir.resolve("org_name.config");
+        new ConfigSnapshotStore(snapshotPath).save(new Config()
+                .mode(OperationMode.BLOCKING)
+                .timeoutMs(250L)
+                .collectAdditionalHeaders(Collections.singletonList("X-Custom")));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configSnapshotPath(snapshotPath));
+
+        assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
+        assertEquals(250L, umbrellaService.config.getTimeoutMs());
+        assertEquals(Collections.singletonList("X-Custom"), umbrellaService.additionalHeadersToCollect());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testInitInvalidApiKeyIgnoresConfigSnapshot(@TempDir Path tempDir) throws Exception {
+        Path snapshotPath = tempDir.resolve("org_name.config");
+        new ConfigSnapshotStore(snapshotPath).save(new Config()
+                .mode(OperationMode.BLOCKING));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(403));
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configSnapshotPath(snapshotPath));
+
+        assertEquals(OperationMode.DISABLED, umbrellaService.config.getMode());
+    }
+
+    @Test
+    void testConfigSnapshotPersisted(@TempDir Path tempDir) throws Exception {
+        Path snapshotPath = tempDir.resolve("org_name.config");
+        mockPingServerEndpoint(OperationMode.MONITOR, 3000L);
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configSnapshotPath(snapshotPath));
+
+        assertEquals(Optional.of(new Config()
+                        .mode(OperationMode.MONITOR)
+                        .timeoutMs(3000L)),
+                new ConfigSnapshotStore(snapshotPath).load());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testConfigWatch() throws Exception {
+        BlockingQueue<String> ifNoneMatchAfterChange = new LinkedBlockingQueue<>();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .version("1")
+                                    .mode(OperationMode.MONITOR))));
+                } else if (request.getPath().contains("/org/org_name/node/config?")
+                           && "\"1\"".equals(request.getHeader("If-None-Match"))) {
+                    return new MockResponse()
+                            .setHeader("ETag", "W/\"2-abc\"")
+                            .setBody(JSON.getGson().toJson(new Config()
+                                    .version("2")
+                                    .mode(OperationMode.BLOCKING)));
+                } else {
+                    if (request.getPath().contains("/org/org_name/node/config?") && request.getHeader("If-None-Match") != null) {
+                        ifNoneMatchAfterChange.add(request.getHeader("If-None-Match"));
+                    }
+                    return new MockResponse()
+                            .setHeadersDelay(100, TimeUnit.MILLISECONDS)
+                            .setResponseCode(304);
+                }
+            }
+        });
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configWatch(true));
+
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode()));
+        assertEquals("2", umbrellaService.config.getVersion());
+        assertTrue(umbrellaService.configWatcher.isRunning());
+        assertEquals("W/\"2-abc\"", ifNoneMatchAfterChange.poll(5, TimeUnit.SECONDS));
+
+        umbrellaService.shutdown();
+        assertFalse(umbrellaService.configWatcher.isRunning());
+    }
+
+    @Test
+    void testConfigWatchUnsupported() throws Exception {
+        mockPingServerEndpoint(OperationMode.MONITOR, 3000L);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configWatch(true));
+
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertFalse(umbrellaService.configWatcher.isRunning()));
+        assertEquals(OperationMode.MONITOR, umbrellaService.config.getMode());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testEndpointFailover() throws Exception {
+        MockWebServer deadServer = new MockWebServer();
+        deadServer.start();
+        String deadUrl = deadServer.url("/").toString();
+        deadServer.shutdown();
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Arrays.asList(deadUrl, mockWebServer.url("/").toString()));
+        HttpAction actionExpected = new HttpAction()
+                .requestProcess(RequestProcess.BLOCK);
+        mockHttpEventEndpoint(actionExpected, OperationMode.BLOCKING, 0L);
+
+        HttpAction actionActual = umbrellaService.httpEvent(new HttpMetadata());
+
+        assertEquals(actionExpected, actionActual);
+        assertEquals(OperationMode.BLOCKING, umbrellaService.config.getMode());
+        Map<String, Number> metrics = umbrellaService.metrics();
+        assertEquals(1L, metrics.get("endpoint.failovers"));
+        assertEquals(1L, metrics.get("endpoint[" + deadUrl + "].failures"));
+        assertEquals(2L, metrics.get("endpoint[" + mockWebServer.url("/") + "].requests"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testHttpOutcomeReported() throws Exception {
+        BlockingQueue<RecordedRequest> outcomeRequests = new LinkedBlockingQueue<>();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING)
+                                    .collectOutcome(true))));
+                } else if (request.getPath().endsWith("/org/org_name/event/http")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction()
+                                    .requestProcess(RequestProcess.ALLOW))));
+                } else if (request.getPath().endsWith("/org/org_name/event/http/outcome")) {
+                    outcomeRequests.add(request);
+                    return new MockResponse().setResponseCode(202);
+                } else {
+                    return new MockResponse().setResponseCode(404);
+                }
+            }
+        });
+
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        HttpMetadata metadata = new HttpMetadata();
+        umbrellaService.httpEvent(metadata);
+        assertNotNull(metadata.getEventId());
+
+        umbrellaService.httpOutcome(new HttpOutcome()
+                .eventId(metadata.getEventId())
+                .status(200L)
+                .failed(false));
+
+        RecordedRequest outcomeRequest = outcomeRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(outcomeRequest);
+        HttpOutcomeBatchRequest batch = JSON.getGson().fromJson(outcomeRequest.getBody().readUtf8(), HttpOutcomeBatchRequest.class);
+        assertEquals(1, batch.getOutcomes().size());
+        assertEquals(metadata.getEventId(), batch.getOutcomes().get(0).getEventId());
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(1L, umbrellaService.metrics().get("outcome.sent")));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testHttpOutcomeNotCollected() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.ALLOW), OperationMode.BLOCKING, 0L);
+
+        HttpMetadata metadata = new HttpMetadata();
+        umbrellaService.httpEvent(metadata);
+
+        assertNull(metadata.getEventId());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventBatched() throws Exception {
+        BlockingQueue<RecordedRequest> batchRequests = new LinkedBlockingQueue<>();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.MONITOR))));
+                } else if (request.getPath().endsWith("/org/org_name/event/custom/batch")) {
+                    batchRequests.add(request);
+                    return new MockResponse().setResponseCode(202);
+                } else {
+                    return new MockResponse().setResponseCode(404);
+                }
+            }
+        });
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+
+        umbrellaService.customEvent("login", "user1", Map.of("result", "failure"));
+        umbrellaService.customEvent("login", "user2", Map.of("result", "success"));
+        assertEquals(2, umbrellaService.metrics().get("lane.telemetry.pending"));
+
+        RecordedRequest batchRequest = batchRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batchRequest);
+        CustomEventBatchRequest batch = JSON.getGson().fromJson(batchRequest.getBody().readUtf8(), CustomEventBatchRequest.class);
+        assertEquals(2, batch.getEvents().size());
+        assertEquals("login", batch.getEvents().get(0).getEventType());
+        assertEquals("user1", batch.getEvents().get(0).getKey());
+        assertEquals("failure", batch.getEvents().get(0).getMetadata().get("result"));
+        assertNull(batch.getEvents().get(0).getSampleRate());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventSampledOut() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.MONITOR)
+                                .customEventSampleRate(0d)))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+
+        umbrellaService.customEvent("login", "user1", Map.of());
+
+        assertEquals(1L, umbrellaService.metrics().get("customEvent.sampledOut"));
+        assertEquals(0, umbrellaService.metrics().get("customEvent.queueDepth"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventDecision() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new EventResponse()
+                        .action(Map.of("challenge", "captcha")))));
+
+        Map<String, String> action = umbrellaService.customEventDecision("signup", "user1", Map.of()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("challenge", "captcha"), action);
+        mockWebServer.takeRequest();
+        assertTrue(mockWebServer.takeRequest().getPath().endsWith("/org/org_name/event/signup"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventDecisionFailure() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        Map<String, String> action = umbrellaService.customEventDecision("signup", "user1", Map.of()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of(), action);
+        assertEquals(1L, umbrellaService.metrics().get("customEventDecision.failed"));
+        assertEquals(0, umbrellaService.metrics().get("customEventDecision.pending"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventDecisionTimeout() throws Exception {
+        // The transport only enforces the timeout when blocking, leaving the deadline to the future
+        mockPingServerEndpoint(OperationMode.MONITOR, 200L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.enqueue(new MockResponse()
+                .setHeadersDelay(3, TimeUnit.SECONDS)
+                .setBody(JSON.getGson().toJson(new EventResponse()
+                        .action(Map.of("challenge", "captcha")))));
+
+        long startedAt = System.nanoTime();
+        Map<String, String> action = umbrellaService.customEventDecision("signup", "user1", Map.of()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of(), action);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) < 2_000L);
+        assertEquals(1L, umbrellaService.metrics().get("customEventDecision.timedOut"));
+        assertEquals(0L, umbrellaService.metrics().get("customEventDecision.failed"));
+        assertEquals(0, umbrellaService.metrics().get("customEventDecision.pending"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testCustomEventDecisionDisabled() throws Exception {
+        Map<String, String> action = umbrellaService.customEventDecision("signup", "user1", Map.of()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of(), action);
+    }
+
+    @Test
+    void testVerdictToken(@TempDir Path tempDir) throws Exception {
+        Path snapshotPath = tempDir.resolve("org_name.config");
+        String key = Base64.getEncoder().encodeToString(new byte[32]);
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .verdictToken(new VerdictTokenConfig()
+                                        .cookieName("umbrella_vt")
+                                        .keys(List.of(key)))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().configSnapshotPath(snapshotPath));
+        long expiresAt = System.currentTimeMillis() / 1000L + 60L;
+
+        assertEquals(Optional.of("umbrella_vt"), umbrellaService.verdictTokenCookieName());
+        assertTrue(umbrellaService.verifyVerdictToken(VerdictTokenVerifier.issue(key, expiresAt, "10.0.0.1"), "10.0.0.1"));
+        assertFalse(umbrellaService.verifyVerdictToken(VerdictTokenVerifier.issue(key, expiresAt, "10.0.0.1"), "10.0.0.2"));
+        assertEquals(1L, umbrellaService.metrics().get("verdictToken.accepted"));
+        assertEquals(1L, umbrellaService.metrics().get("verdictToken.rejected"));
+        // Signing keys are not persisted
+        assertNull(new ConfigSnapshotStore(snapshotPath).load().orElseThrow().getVerdictToken());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testVerdictTokenMonitor() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.MONITOR)
+                                .verdictToken(new VerdictTokenConfig()
+                                        .cookieName("umbrella_vt")
+                                        .keys(List.of(Base64.getEncoder().encodeToString(new byte[32]))))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+
+        // Token holders keep showing up in telemetry
+        assertEquals(Optional.empty(), umbrellaService.verdictTokenCookieName());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testVerdictTokenIpReputationBlocked() throws Exception {
+        String key = Base64.getEncoder().encodeToString(new byte[32]);
+        byte[] snapshot = IpReputationTableTest.snapshot(Map.of("10.0.0.1", 90));
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING)
+                                    .verdictToken(new VerdictTokenConfig()
+                                            .cookieName("umbrella_vt")
+                                            .keys(List.of(key)))
+                                    .ipReputation(new IpReputationConfig()
+                                            .version("v1")
+                                            .blockScore(50)))));
+                } else if (request.getPath().contains("/org/org_name/node/reputation?version=v1")) {
+                    return new MockResponse().setBody(new okio.Buffer().write(snapshot));
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(1, umbrellaService.metrics().get("ipReputation.size")));
+        long expiresAt = System.currentTimeMillis() / 1000L + 60L;
+
+        // Listed after its token was issued, the IP is still blocked locally
+        assertFalse(umbrellaService.verifyVerdictToken(VerdictTokenVerifier.issue(key, expiresAt, "10.0.0.1"), "10.0.0.1"));
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        assertTrue(umbrellaService.verifyVerdictToken(VerdictTokenVerifier.issue(key, expiresAt, "10.0.0.2"), "10.0.0.2"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testVerdictTokenNotConfigured() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+
+        assertEquals(Optional.empty(), umbrellaService.verdictTokenCookieName());
+        assertFalse(umbrellaService.verifyVerdictToken("1.abc", "10.0.0.1"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testVerdictStoreShared(@TempDir Path tempDir) throws Exception {
+        Path verdictStorePath = tempDir.resolve("verdicts");
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().verdictStorePath(verdictStorePath));
+        mockHttpEventEndpoint(new HttpAction()
+                .requestProcess(RequestProcess.BLOCK)
+                .responseStatus(403L)
+                .verdictTtlSeconds(60L), OperationMode.BLOCKING, 0L);
+
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        HttpAction storedAction = umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1"));
+        assertEquals(RequestProcess.BLOCK, storedAction.getRequestProcess());
+        assertEquals(403L, storedAction.getResponseStatus());
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(1L, umbrellaService.metrics().get("verdictStore.hits"));
+
+        // Another process on the same host picks up the verdict without asking
+        UmbrellaServiceImpl otherUmbrellaService = (UmbrellaServiceImpl) UmbrellaService.create();
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        otherUmbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("otherNodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions().verdictStorePath(verdictStorePath));
+        assertEquals(RequestProcess.BLOCK, otherUmbrellaService.httpEventAsync(new HttpMetadata().ip("10.0.0.1")).get().getRequestProcess());
+        assertEquals(3, mockWebServer.getRequestCount());
+        umbrellaService.shutdown();
+        otherUmbrellaService.shutdown();
+    }
+
+    @Test
+    void testVerdictStoreWithoutTtl() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.BLOCK), OperationMode.BLOCKING, 0L);
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.ALLOW), OperationMode.BLOCKING, 0L);
+
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        assertEquals(0L, umbrellaService.metrics().get("verdictStore.hits"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testIpReputation() throws Exception {
+        byte[] snapshot = IpReputationTableTest.snapshot(Map.of(
+                "10.0.0.1", 90,
+                "10.0.0.2", 10));
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING)
+                                    .ipReputation(new IpReputationConfig()
+                                            .version("v1")
+                                            .blockScore(50)))));
+                } else if (request.getPath().contains("/org/org_name/node/reputation?version=v1")) {
+                    return new MockResponse().setBody(new okio.Buffer().write(snapshot));
+                } else if (request.getPath().endsWith("/org/org_name/event/http")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction().requestProcess(RequestProcess.ALLOW))));
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(2, umbrellaService.metrics().get("ipReputation.size")));
+        int requestCount = mockWebServer.getRequestCount();
+
+        HttpAction blockedAction = umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1"));
+        assertEquals(RequestProcess.BLOCK, blockedAction.getRequestProcess());
+        assertEquals(403L, blockedAction.getResponseStatus());
+        assertEquals(requestCount, mockWebServer.getRequestCount());
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.2")).getRequestProcess());
+        assertEquals(requestCount + 1, mockWebServer.getRequestCount());
+        assertEquals(1L, umbrellaService.metrics().get("ipReputation.blocked"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testIpReputationSupersededWhileLoading() throws Exception {
+        byte[] snapshot = IpReputationTableTest.snapshot(Map.of(
+                "10.0.0.1", 90,
+                "10.0.0.2", 10));
+        CountDownLatch downloadStarted = new CountDownLatch(1);
+        CountDownLatch downloadReleased = new CountDownLatch(1);
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING)
+                                    .ipReputation(new IpReputationConfig()
+                                            .version("v1")
+                                            .blockScore(50)))));
+                } else if (request.getPath().contains("/org/org_name/node/reputation?version=v1")) {
+                    downloadStarted.countDown();
+                    downloadReleased.await(5, TimeUnit.SECONDS);
+                    return new MockResponse().setBody(new okio.Buffer().write(snapshot));
+                } else if (request.getPath().endsWith("/org/org_name/event/http")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction().requestProcess(RequestProcess.ALLOW))
+                            .configRefresh(new Config()
+                                    .mode(OperationMode.BLOCKING))));
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        assertTrue(downloadStarted.await(5, TimeUnit.SECONDS));
+        // A stalled download does not hold up the control lane
+        umbrellaService.executor.submit(() -> {
+        }).get(1, TimeUnit.SECONDS);
+
+        // The snapshot is withdrawn while still downloading
+        umbrellaService.httpEvent(new HttpMetadata());
+        assertNull(umbrellaService.config.getIpReputation());
+        downloadReleased.countDown();
+
+        // The late snapshot must not replace the withdrawal that was announced after it
+        await().during(Duration.ofMillis(500)).atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(0, umbrellaService.metrics().get("ipReputation.size")));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testFingerprintFilter() throws Exception {
+        byte[] bits = FingerprintFilter.add(new byte[1024], 4, Fingerprints.userAgent("BadBot/1.0"));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .fingerprintFilter(new FingerprintFilterConfig()
+                                        .version("v1")
+                                        .numHashes(4)
+                                        .bits(Base64.getEncoder().encodeToString(bits)))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+        HttpAction blockAction = new HttpAction().requestProcess(RequestProcess.BLOCK);
+        MockResponse blockResponse = new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse().action(blockAction)));
+
+        // Known-bad user agent waits for the API
+        mockWebServer.enqueue(blockResponse);
+        assertEquals(blockAction, umbrellaService.httpEvent(new HttpMetadata().hUserAgent("BadBot/1.0")));
+        assertTrue(mockWebServer.takeRequest().getBody().readUtf8().contains("\"currentMode\":\"BLOCKING\""));
+
+        // Anything else is let through and reported in the background
+        mockWebServer.enqueue(blockResponse);
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(new HttpMetadata().hUserAgent("Mozilla/5.0")));
+        RecordedRequest monitorRequest = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(monitorRequest);
+        assertTrue(monitorRequest.getBody().readUtf8().contains("\"currentMode\":\"MONITOR\""));
+        assertEquals(1L, umbrellaService.metrics().get("fingerprintFilter.hits"));
+        assertEquals(1L, umbrellaService.metrics().get("fingerprintFilter.misses"));
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testFingerprintFilterIncrementalUpdate() throws Exception {
+        long fingerprint = Fingerprints.ip("10.0.0.1");
+        byte[] delta = FingerprintFilter.add(new byte[64], 2, fingerprint);
+        List<Long> addedBits = new ArrayList<>();
+        for (int bit = 0; bit < delta.length * 8; bit++) {
+            if ((delta[bit >>> 3] & (1 << (bit & 7))) != 0) {
+                addedBits.add((long) bit);
+            }
+        }
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .fingerprintFilter(new FingerprintFilterConfig()
+                                        .version("v1")
+                                        .numHashes(2)
+                                        .bits(Base64.getEncoder().encodeToString(new byte[64])))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                        .action(new HttpAction().requestProcess(RequestProcess.ALLOW))
+                        .configRefresh(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .fingerprintFilter(new FingerprintFilterConfig()
+                                        .version("v2")
+                                        .numHashes(2)
+                                        .baseVersion("v1")
+                                        .addedBits(addedBits))))));
+
+        umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1"));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals("v2", umbrellaService.config.getFingerprintFilter().getVersion()));
+
+        mockHttpEventEndpoint(new HttpAction().requestProcess(RequestProcess.BLOCK), OperationMode.BLOCKING, 0L);
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        umbrellaService.shutdown();
+    }
+
+    @Test
+    void testActionTemplate() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .timeoutMs(3000L)
+                                .actionTemplates(Map.of("challenge", new HttpAction()
+                                        .requestProcess(RequestProcess.BLOCK)
+                                        .responseStatus(429L)
+                                        .responseCookies(List.of(new Cookie()
+                                                .name("challenge")
+                                                .value("abc")))))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        for (String templateId : List.of("challenge", "challenge", "missing")) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction()
+                                    .templateId(templateId)
+                                    .requestProcess(RequestProcess.BLOCK)))));
+        }
+
+        HttpAction first = umbrellaService.httpEvent(new HttpMetadata());
+        HttpAction second = umbrellaService.httpEvent(new HttpMetadata());
+        HttpAction missing = umbrellaService.httpEvent(new HttpMetadata());
+
+        assertSame(first, second);
+        assertEquals(429L, first.getResponseStatus());
+        assertEquals("abc", first.getResponseCookies().get(0).getValue());
+        assertEquals(RequestProcess.BLOCK, missing.getRequestProcess());
+        assertNull(missing.getResponseStatus());
+        assertEquals(1L, umbrellaService.metrics().get("actionTemplate.missing"));
+    }
+
+    @Test
+    void testMonitorRollup() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.MONITOR)
+                                .collectOutcome(true)
+                                .monitorRollup(new MonitorRollupConfig()
+                                        .windowSeconds(1L))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+
+        for (int i = 0; i < 5; i++) {
+            HttpMetadata data = new HttpMetadata()
+                    .ip("1.2.3.4")
+                    .method("GET")
+                    .uri("/users/" + i);
+            assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(data));
+            assertNull(data.getEventId());
+        }
+        umbrellaService.httpEventAsync(new HttpMetadata()
+                .ip("5.6.7.8")
+                .method("GET")
+                .uri("/")).get();
+
+        RecordedRequest request = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertTrue(request.getPath().endsWith("/event/http/rollup"));
+        HttpEventRollupRequest rollupRequest = JSON.getGson().fromJson(request.getBody().readUtf8(), HttpEventRollupRequest.class);
+        assertEquals(2, rollupRequest.getRollups().size());
+        HttpEventRollup rollup = rollupRequest.getRollups().stream()
+                .filter(r -> "1.2.3.4".equals(r.getIp()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("/users/:id", rollup.getUri());
+        assertEquals(5L, rollup.getCount());
+        assertEquals(6L, umbrellaService.metrics().get("rollup.events"));
+        await().atMost(Duration.ofSeconds(1))
+                .untilAsserted(() -> assertEquals(1L, umbrellaService.metrics().get("rollup.sent")));
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void testShutdownFlushesTelemetry() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.MONITOR)
+                                .monitorRollup(new MonitorRollupConfig()
+                                        .windowSeconds(3600L))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+
+        umbrellaService.httpEvent(new HttpMetadata()
+                .ip("1.2.3.4")
+                .method("GET")
+                .uri("/"));
+        umbrellaService.customEvent("login", "user1", Map.of());
+        umbrellaService.shutdown();
+
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            paths.add(request.getPath().substring(request.getPath().indexOf("/event/")));
+        }
+        assertEquals(Set.of("/event/http/rollup", "/event/custom/batch"), paths);
+        assertEquals(1L, umbrellaService.metrics().get("rollup.sent"));
+    }
+
+    @Test
+    void testHeaderNamesSentOncePerFingerprint() throws Exception {
+        mockPingServerEndpoint(OperationMode.BLOCKING, 3000L);
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                        .action(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION))));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                        .action(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION)
+                        .configRefresh(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .timeoutMs(3000L)
+                                .headerFpEpoch(2L)))));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                        .action(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION))));
+
+        List<HttpMetadata> sent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            umbrellaService.httpEvent(new HttpMetadata()
+                    .headerNames(List.of("Host", "Accept"))
+                    .cookieNames(List.of("session")));
+            sent.add(JSON.getGson().fromJson(mockWebServer.takeRequest().getBody().readUtf8(), HttpEventRequest.class).getHttpMetadata());
+        }
+
+        long headerFp = Fingerprints.headers(List.of("Host", "Accept"), List.of("session"));
+        sent.forEach(data -> assertEquals(headerFp, data.getHeaderFp()));
+        assertEquals(List.of("Host", "Accept"), sent.get(0).getHeaderNames());
+        assertEquals(List.of("session"), sent.get(0).getCookieNames());
+        assertTrue(sent.get(1).getHeaderNames().isEmpty());
+        assertTrue(sent.get(1).getCookieNames().isEmpty());
+        // The epoch changed, so the names are sent again
+        assertEquals(List.of("Host", "Accept"), sent.get(2).getHeaderNames());
+        assertEquals(1L, umbrellaService.metrics().get("headerFp.elided"));
+    }
+
+    @Test
+    void testFieldMask() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .timeoutMs(3000L)
+                                .fieldMask(FieldMask.bit(MetadataField.H_USER_AGENT))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+
+        FieldMask fieldMask = umbrellaService.fieldMask();
+        assertTrue(fieldMask.collects(MetadataField.H_USER_AGENT));
+        assertFalse(fieldMask.collects(MetadataField.HEADER_NAMES));
+
+        // Masked out header and cookie names leave nothing to fingerprint
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                        .action(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION)
+                        .configRefresh(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .timeoutMs(3000L)))));
+        umbrellaService.httpEvent(new HttpMetadata()
+                .hUserAgent("test-agent")
+                .headerNames(null)
+                .cookieNames(null));
+        HttpMetadata sent = JSON.getGson().fromJson(mockWebServer.takeRequest().getBody().readUtf8(), HttpEventRequest.class).getHttpMetadata();
+
+        assertNull(sent.getHeaderFp());
+        assertEquals("test-agent", sent.gethUserAgent());
+        assertSame(FieldMask.ALL, umbrellaService.fieldMask());
+    }
+
+    @Test
+    void testBehaviorTracking() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.BLOCKING)
+                                .timeoutMs(3000L)
+                                .behaviorTracking(new BehaviorTrackingConfig()
+                                        .windowSeconds(60L))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+
+        HttpMetadata sent = null;
+        for (int i = 0; i < 4; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION))));
+            umbrellaService.httpEvent(new HttpMetadata()
+                    .ip("1.2.3.4")
+                    .uri("/" + i));
+            sent = JSON.getGson().fromJson(mockWebServer.takeRequest().getBody().readUtf8(), HttpEventRequest.class).getHttpMetadata();
+        }
+
+        assertEquals(4L, sent.getClientRequests());
+        assertEquals(1L, sent.getClientDistinctUris());
+        assertEquals(1, umbrellaService.metrics().get("behavior.clients"));
+    }
+
+    @Test
+    void testHybridMode() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(JSON.getGson().toJson(new PingResponse()
+                        .config(new Config()
+                                .mode(OperationMode.HYBRID)
+                                .timeoutMs(3000L)
+                                .riskScoring(new RiskScoringConfig()
+                                        .threshold(5)
+                                        .missingSecFetch(5))))));
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()));
+        mockWebServer.takeRequest();
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction().requestProcess(RequestProcess.BLOCK)))));
+        }
+
+        HttpAction risky = umbrellaService.httpEvent(new HttpMetadata());
+        HttpAction allowed = umbrellaService.httpEvent(new HttpMetadata().hSecFetchSite("same-origin"));
+
+        assertEquals(RequestProcess.BLOCK, risky.getRequestProcess());
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, allowed);
+        HttpEventRequest riskyRequest = JSON.getGson().fromJson(mockWebServer.takeRequest().getBody().readUtf8(), HttpEventRequest.class);
+        assertEquals(OperationMode.BLOCKING, riskyRequest.getCurrentMode());
+        assertEquals(5, riskyRequest.getHttpMetadata().getRiskScore());
+        RecordedRequest monitored = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(monitored);
+        HttpEventRequest allowedRequest = JSON.getGson().fromJson(monitored.getBody().readUtf8(), HttpEventRequest.class);
+        assertEquals(OperationMode.MONITOR, allowedRequest.getCurrentMode());
+        assertEquals(0, allowedRequest.getHttpMetadata().getRiskScore());
+        assertEquals(1L, umbrellaService.metrics().get("risk.high"));
+        assertEquals(1L, umbrellaService.metrics().get("risk.low"));
+    }
+
+    @Test
+    void testOverloadProtection() throws Exception {
+        BlockingQueue<PingRequest> pings = new LinkedBlockingQueue<>();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/org/org_name/node/ping")) {
+                    pings.add(JSON.getGson().fromJson(request.getBody().readUtf8(), PingRequest.class));
+                    return new MockResponse().setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING))));
+                } else if (request.getPath().endsWith("/org/org_name/event/http")) {
+                    return new MockResponse().setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction()
+                                    .requestProcess(RequestProcess.BLOCK))));
+                } else {
+                    return new MockResponse().setResponseCode(404);
+                }
+            }
+        });
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                Collections.singletonList("nodeIdentifier"),
+                Collections.singletonList(mockWebServer.url("/").toString()),
+                new UmbrellaOptions()
+                        .keepWarmConnections(0)
+                        .overloadProtection(true)
+                        .overloadMaxInFlight(2)
+                        .overloadMaxLagMs(0L)
+                        .overloadMaxThreadPoolUtilization(0));
+        assertNull(pings.take().getLoad());
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata()).getRequestProcess());
+
+        umbrellaService.requestStarted();
+        umbrellaService.requestStarted();
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(1, umbrellaService.metrics().get("load.degraded")));
+
+        assertEquals(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, umbrellaService.httpEvent(new HttpMetadata()));
+        assertEquals(1L, umbrellaService.metrics().get("load.degradedEvents"));
+        PingRequest ping = pings.poll(5, TimeUnit.SECONDS);
+        assertNotNull(ping);
+        assertTrue(ping.getLoad().getDegraded());
+        assertEquals(1L, ping.getLoad().getDegradations());
+        umbrellaService.requestFinished();
+        umbrellaService.requestFinished();
+        assertEquals(0L, umbrellaService.metrics().get("load.inFlight"));
+    }
+
     private void mockPingServerEndpoint(OperationMode mode, long timeoutMs) {
         mockWebServer.enqueue(new MockResponse()
                 .setResponseCode(200)
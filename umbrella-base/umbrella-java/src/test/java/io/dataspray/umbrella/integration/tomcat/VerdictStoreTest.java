@@ -0,0 +1,150 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.RequestProcess;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VerdictStoreTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final HttpAction BLOCK = new HttpAction()
+            .requestProcess(RequestProcess.BLOCK)
+            .responseStatus(429L);
+
+    @Test
+    void testPutGet() {
+        VerdictStore store = new HeapVerdictStore(16);
+
+        assertEquals(Optional.empty(), store.get("10.0.0.1", NOW));
+        assertTrue(store.put("10.0.0.1", BLOCK, NOW + 60L, NOW));
+        assertTrue(store.put("10.0.0.2", UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION, NOW + 60L, NOW));
+
+        assertEquals(Optional.of(BLOCK), store.get("10.0.0.1", NOW));
+        assertEquals(Optional.of(UmbrellaServiceImpl.DEFAULT_ALLOW_ACTION), store.get("10.0.0.2", NOW));
+        assertEquals(Optional.empty(), store.get("10.0.0.3", NOW));
+    }
+
+    @Test
+    void testExpiry() {
+        VerdictStore store = new HeapVerdictStore(16);
+        assertTrue(store.put("10.0.0.1", BLOCK, NOW + 60L, NOW));
+
+        assertTrue(store.get("10.0.0.1", NOW + 59L).isPresent());
+        assertEquals(Optional.empty(), store.get("10.0.0.1", NOW + 60L));
+        assertFalse(store.put("10.0.0.2", BLOCK, NOW, NOW));
+    }
+
+    @Test
+    void testUnrepresentableNotStored() {
+        VerdictStore store = new HeapVerdictStore(16);
+
+        assertFalse(store.put("10.0.0.1", new HttpAction()
+                .requestProcess(RequestProcess.BLOCK)
+                .responseHeaders(Collections.singletonMap("Retry-After", "60")), NOW + 60L, NOW));
+        assertFalse(store.put("10.0.0.1", new HttpAction()
+                .requestProcess(RequestProcess.ALLOW)
+                .requestMetadata(Collections.singletonMap("risk", "high")), NOW + 60L, NOW));
+        assertEquals(Optional.empty(), store.get("10.0.0.1", NOW));
+    }
+
+    @Test
+    void testFullTableReclaimsExpired() {
+        VerdictStore store = new HeapVerdictStore(OpenAddressingVerdictStore.MAX_PROBES);
+        for (int i = 0; i < OpenAddressingVerdictStore.MAX_PROBES; i++) {
+            assertTrue(store.put("10.0.0." + i, BLOCK, NOW + 10L, NOW));
+        }
+        assertFalse(store.put("10.0.1.1", BLOCK, NOW + 60L, NOW));
+
+        // Once the earlier verdicts expired, their slots are reused
+        assertTrue(store.put("10.0.1.1", BLOCK, NOW + 60L, NOW + 10L));
+        assertEquals(Optional.of(BLOCK), store.get("10.0.1.1", NOW + 10L));
+    }
+
+    @Test
+    void testMappedShared(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("verdicts");
+        VerdictStore first = MappedVerdictStore.open(path, 1024);
+        VerdictStore second = MappedVerdictStore.open(path, 1024);
+
+        assertTrue(first.put("2001:db8::1", BLOCK, NOW + 60L, NOW));
+
+        assertEquals(Optional.of(BLOCK), second.get("2001:db8::1", NOW));
+        assertThrows(IOException.class, () -> MappedVerdictStore.open(path, 2048));
+    }
+
+    @Test
+    void testMappedRefusesWritableByOthers(@TempDir Path tempDir) throws IOException {
+        assumeTrue(tempDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path created = tempDir.resolve("verdicts");
+        MappedVerdictStore.open(created, 1024);
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(created));
+
+        Path shared = tempDir.resolve("shared");
+        Files.createFile(shared);
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rw-rw-rw-"));
+
+        assertThrows(IOException.class, () -> MappedVerdictStore.open(shared, 1024));
+    }
+
+    @Test
+    void testConcurrentPuts(@TempDir Path tempDir) throws Exception {
+        VerdictStore store = MappedVerdictStore.open(tempDir.resolve("verdicts"), 4096);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        store.put("10.1." + (i / 256) + "." + (i % 256), BLOCK, NOW + 60L, NOW);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Optional.of(BLOCK), store.get("10.1." + (i / 256) + "." + (i % 256), NOW));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.tomcat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerdictTokenVerifierTest {
+
+    private static final String KEY = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+    private static final String OLD_KEY = Base64.getEncoder().encodeToString("fedcba9876543210fedcba9876543210".getBytes());
+    private static final long NOW = 1_700_000_000L;
+    private final VerdictTokenVerifier verifier = new VerdictTokenVerifier(List.of(KEY, OLD_KEY));
+
+    @Test
+    void testValid() {
+        assertTrue(verifier.verify(VerdictTokenVerifier.issue(KEY, NOW + 60, "10.0.0.1"), "10.0.0.1", NOW));
+        assertTrue(verifier.verify(VerdictTokenVerifier.issue(KEY, NOW + 60, "2001:db8::1"), "2001:db8::1", NOW));
+    }
+
+    @Test
+    void testRotatedKey() {
+        assertTrue(verifier.verify(VerdictTokenVerifier.issue(OLD_KEY, NOW + 60, "10.0.0.1"), "10.0.0.1", NOW));
+        String unknownKey = Base64.getEncoder().encodeToString("another key that is not known...".getBytes());
+        assertFalse(verifier.verify(VerdictTokenVerifier.issue(unknownKey, NOW + 60, "10.0.0.1"), "10.0.0.1", NOW));
+    }
+
+    @Test
+    void testExpired() {
+        assertFalse(verifier.verify(VerdictTokenVerifier.issue(KEY, NOW - 1, "10.0.0.1"), "10.0.0.1", NOW));
+    }
+
+    @Test
+    void testOtherSubject() {
+        assertFalse(verifier.verify(VerdictTokenVerifier.issue(KEY, NOW + 60, "10.0.0.1"), "10.0.0.2", NOW));
+    }
+
+    @Test
+    void testTampered() {
+        String token = VerdictTokenVerifier.issue(KEY, NOW + 60, "10.0.0.1");
+        String extended = (NOW + 3600) + token.substring(token.indexOf('.'));
+        char last = token.charAt(token.length() - 1);
+        String flipped = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+
+        assertFalse(verifier.verify(extended, "10.0.0.1", NOW));
+        assertFalse(verifier.verify(flipped, "10.0.0.1", NOW));
+    }
+
+    @Test
+    void testMalformed() {
+        String token = VerdictTokenVerifier.issue(KEY, NOW + 60, "10.0.0.1");
+        String signature = token.substring(token.indexOf('.') + 1);
+
+        assertFalse(verifier.verify(null, "10.0.0.1", NOW));
+        assertFalse(verifier.verify("", "10.0.0.1", NOW));
+        assertFalse(verifier.verify(signature, "10.0.0.1", NOW));
+        assertFalse(verifier.verify("." + signature, "10.0.0.1", NOW));
+        assertFalse(verifier.verify("-1." + signature, "10.0.0.1", NOW));
+        assertFalse(verifier.verify("99999999999999999999." + signature, "10.0.0.1", NOW));
+        assertFalse(verifier.verify(token + "A", "10.0.0.1", NOW));
+        assertFalse(verifier.verify(token, "10.0.0.1\u00e9", NOW));
+        assertFalse(verifier.verify(token, "1".repeat(100), NOW));
+    }
+
+    @Test
+    void testInvalidKey() {
+        assertThrows(IllegalArgumentException.class, () -> new VerdictTokenVerifier(List.of("not base64!")));
+        assertThrows(IllegalArgumentException.class, () -> new VerdictTokenVerifier(List.of()));
+    }
+}
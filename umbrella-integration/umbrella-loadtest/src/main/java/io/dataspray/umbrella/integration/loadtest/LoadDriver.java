@@ -0,0 +1,261 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import io.dataspray.umbrella.integration.tomcat.UmbrellaFilter;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an embedded Tomcat, with and without {@link UmbrellaFilter}, at a fixed request rate and reports the
+ * latency, throughput and allocation of each.
+ * <p>
+ * Requests are sent open-loop: each is scheduled at a fixed offset from the start regardless of whether
+ * earlier ones completed, and its latency is measured from that scheduled time.
+ */
+public class LoadDriver {
+
+    private int targetRps = 200;
+    private Duration warmup = Duration.ofSeconds(5);
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration requestTimeout = Duration.ofSeconds(10);
+    private Map<String, String> filterInitParameters = new HashMap<>();
+
+    public LoadDriver targetRps(int targetRps) {
+        if (targetRps <= 0) {
+            throw new IllegalArgumentException("Target rps must be positive");
+        }
+        this.targetRps = targetRps;
+        return this;
+    }
+
+    /**
+     * Load applied before measuring, to let the JIT, connection pools and Umbrella config settle.
+     */
+    public LoadDriver warmup(Duration warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    public LoadDriver duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    public LoadDriver requestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    /**
+     * Init parameters of the {@link UmbrellaFilter}, e.g. {@code org}, {@code api-key} and {@code endpoint-url}.
+     */
+    public LoadDriver filterInitParameters(Map<String, String> filterInitParameters) {
+        this.filterInitParameters = new HashMap<>(filterInitParameters);
+        return this;
+    }
+
+    /**
+     * Run once without and once with the filter to isolate the overhead it adds.
+     */
+    public Comparison compare() throws Exception {
+        LoadReport baseline = run(false);
+        LoadReport filtered = run(true);
+        return new Comparison(baseline, filtered);
+    }
+
+    public LoadReport run(boolean withFilter) throws Exception {
+        Tomcat tomcat = startTomcat(withFilter);
+        ExecutorService clientExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Load Driver Client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(clientExecutor)
+                    .build();
+            URI uri = URI.create("http://localhost:" + tomcat.getConnector().getLocalPort() + "/");
+            if (!warmup.isZero()) {
+                drive(client, uri, warmup);
+            }
+            return drive(client, uri, duration);
+        } finally {
+            clientExecutor.shutdownNow();
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    private LoadReport drive(HttpClient client, URI uri, Duration phase) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / targetRps;
+        int total = (int) Math.max(1L, phase.toNanos() / intervalNanos);
+        long[] latencies = new long[total];
+        Arrays.fill(latencies, -1L);
+        AtomicLong failed = new AtomicLong();
+        AtomicLong non2xx = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(total);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+
+        long allocatedBefore = allocatedBytes();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduledAt = startedAt + i * intervalNanos;
+            long delay;
+            while ((delay = scheduledAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            int index = i;
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+                if (ex != null) {
+                    failed.incrementAndGet();
+                } else {
+                    latencies[index] = System.nanoTime() - scheduledAt;
+                    if (response.statusCode() / 100 != 2) {
+                        non2xx.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await(requestTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1_000_000_000d;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long[] completedLatencies = Arrays.stream(latencies)
+                .filter(latency -> latency >= 0)
+                .toArray();
+        return new LoadReport(total, completedLatencies.length, failed.get(), non2xx.get(), elapsedSeconds, completedLatencies, allocated);
+    }
+
+    private Tomcat startTomcat(boolean withFilter) throws IOException, LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("umbrella-loadtest").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "hello", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setContentType("text/plain");
+                resp.getWriter().write("hello");
+            }
+        });
+        context.addServletMappingDecoded("/*", "hello");
+        if (withFilter) {
+            FilterDef filterDef = new FilterDef();
+            filterDef.setFilterName("UmbrellaFilter");
+            filterDef.setFilter(new UmbrellaFilter());
+            filterDef.setFilterClass(UmbrellaFilter.class.getName());
+            filterInitParameters.forEach(filterDef::addInitParameter);
+            context.addFilterDef(filterDef);
+            FilterMap filterMap = new FilterMap();
+            filterMap.setFilterName("UmbrellaFilter");
+            filterMap.addURLPatternDecoded("/*");
+            context.addFilterMap(filterMap);
+        }
+        tomcat.start();
+        return tomcat;
+    }
+
+    /**
+     * Sum of bytes allocated by all live threads. Threads that terminate during a phase are not accounted for.
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return 0L;
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0L;
+        for (long allocated : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (allocated > 0L) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    public static class Comparison {
+
+        private final LoadReport baseline;
+        private final LoadReport filtered;
+
+        Comparison(LoadReport baseline, LoadReport filtered) {
+            this.baseline = baseline;
+            this.filtered = filtered;
+        }
+
+        public LoadReport getBaseline() {
+            return baseline;
+        }
+
+        public LoadReport getFiltered() {
+            return filtered;
+        }
+
+        public double getAddedLatencyMs(double percentile) {
+            return filtered.getLatencyMs(percentile) - baseline.getLatencyMs(percentile);
+        }
+
+        public double getAddedAllocatedBytesPerRequest() {
+            return filtered.getAllocatedBytesPerRequest() - baseline.getAllocatedBytesPerRequest();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "baseline: %s%nfiltered: %s%nadded: p50=%.2fms p99=%.2fms alloc=%.0fB/req",
+                    baseline, filtered, getAddedLatencyMs(50), getAddedLatencyMs(99), getAddedAllocatedBytesPerRequest());
+        }
+    }
+}
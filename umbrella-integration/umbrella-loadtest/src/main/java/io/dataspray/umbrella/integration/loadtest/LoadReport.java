@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Result of a single {@link LoadDriver} run.
+ */
+public class LoadReport {
+
+    private final long requests;
+    private final long completed;
+    private final long failed;
+    private final long non2xx;
+    private final double elapsedSeconds;
+    private final long[] sortedLatenciesNanos;
+    private final long allocatedBytes;
+
+    LoadReport(long requests, long completed, long failed, long non2xx, double elapsedSeconds, long[] latenciesNanos, long allocatedBytes) {
+        this.requests = requests;
+        this.completed = completed;
+        this.failed = failed;
+        this.non2xx = non2xx;
+        this.elapsedSeconds = elapsedSeconds;
+        this.sortedLatenciesNanos = latenciesNanos.clone();
+        Arrays.sort(this.sortedLatenciesNanos);
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Requests that failed to get any response, e.g. due to a timeout.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Requests answered with a non-2xx status, e.g. blocked by Umbrella.
+     */
+    public long getNon2xx() {
+        return non2xx;
+    }
+
+    public double getThroughputRps() {
+        return completed / elapsedSeconds;
+    }
+
+    /**
+     * Latency at the given percentile between 0 and 100, measured from when the request was scheduled to be
+     * sent so that a stalled server is not hidden by the driver falling behind.
+     */
+    public double getLatencyMs(double percentile) {
+        if (sortedLatenciesNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile / 100d * sortedLatenciesNanos.length) - 1;
+        return sortedLatenciesNanos[Math.max(0, Math.min(sortedLatenciesNanos.length - 1, index))] / 1_000_000d;
+    }
+
+    /**
+     * Heap allocated by the server and driver per completed request, approximated from per-thread
+     * allocation counters.
+     */
+    public double getAllocatedBytesPerRequest() {
+        return completed == 0 ? Double.NaN : (double) allocatedBytes / completed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "requests=%d completed=%d failed=%d non2xx=%d throughput=%.1frps p50=%.2fms p99=%.2fms alloc=%.0fB/req",
+                requests, completed, failed, non2xx, getThroughputRps(), getLatencyMs(50), getLatencyMs(99), getAllocatedBytesPerRequest());
+    }
+}
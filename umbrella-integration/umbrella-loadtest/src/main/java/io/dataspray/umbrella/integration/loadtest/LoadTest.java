@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import io.dataspray.umbrella.client.model.OperationMode;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Command line entry point measuring the filter's overhead against a local stand-in API.
+ * <p>
+ * Configured via system properties, e.g.
+ * {@code -Dumbrella.loadtest.rps=500 -Dumbrella.loadtest.mode=BLOCKING -Dumbrella.loadtest.api.p99Ms=200}.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        OperationMode mode = OperationMode.fromValue(System.getProperty("umbrella.loadtest.mode", OperationMode.BLOCKING.getValue()));
+        long timeoutMs = Long.getLong("umbrella.loadtest.timeoutMs", 100L);
+        double apiMedianMs = Double.parseDouble(System.getProperty("umbrella.loadtest.api.medianMs", "5"));
+        double apiP99Ms = Double.parseDouble(System.getProperty("umbrella.loadtest.api.p99Ms", "50"));
+        double errorRate = Double.parseDouble(System.getProperty("umbrella.loadtest.api.errorRate", "0"));
+        double rateLimitRate = Double.parseDouble(System.getProperty("umbrella.loadtest.api.rateLimitRate", "0"));
+
+        try (UmbrellaStandInServer standIn = UmbrellaStandInServer.start()) {
+            standIn.latency(LatencyDistribution.logNormal(apiMedianMs, apiP99Ms))
+                    .errorRate(errorRate)
+                    .rateLimitRate(rateLimitRate)
+                    .config(standIn.getConfig()
+                            .mode(mode)
+                            .timeoutMs(timeoutMs));
+
+            LoadDriver.Comparison comparison = new LoadDriver()
+                    .targetRps(Integer.getInteger("umbrella.loadtest.rps", 200))
+                    .warmup(Duration.ofSeconds(Long.getLong("umbrella.loadtest.warmupSeconds", 5L)))
+                    .duration(Duration.ofSeconds(Long.getLong("umbrella.loadtest.durationSeconds", 30L)))
+                    .filterInitParameters(Map.of(
+                            "org", "loadtest",
+                            "api-key", "loadtest",
+                            "endpoint-url", standIn.getUrl(),
+                            "config-snapshot-path", Files.createTempDirectory("umbrella-loadtest").resolve("config").toString()))
+                    .compare();
+
+            System.out.println(comparison);
+            System.out.println("stand-in: httpEvent=" + standIn.getRequestCount("httpEvent")
+                               + " nodePing=" + standIn.getRequestCount("nodePing"));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dataspray.umbrella.client.JSON;
+import io.dataspray.umbrella.client.model.Config;
+import io.dataspray.umbrella.client.model.EventResponse;
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.HttpEventResponse;
+import io.dataspray.umbrella.client.model.OperationMode;
+import io.dataspray.umbrella.client.model.PingResponse;
+import io.dataspray.umbrella.client.model.RequestProcess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Umbrella API as defined in {@code umbrella-api.yaml}, so the client's overhead can be
+ * measured without the real service.
+ * <p>
+ * Latency, server errors and rate limiting are injected into every operation except the config long-poll,
+ * which instead returns as soon as the config is changed via {@link #config} or {@link #mode}.
+ */
+public class UmbrellaStandInServer implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(UmbrellaStandInServer.class.getCanonicalName());
+    private static final Pattern PATH_PATTERN = Pattern.compile("^/+org/([^/]+)/(.+)$");
+    private static final HttpAction ALLOW_ACTION = new HttpAction()
+            .requestProcess(RequestProcess.ALLOW);
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final Object configLock = new Object();
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile HttpAction httpAction = ALLOW_ACTION;
+    private volatile Map<String, String> customAction = Map.of();
+    private volatile byte[] ipReputation = ipReputationSnapshot(Map.of());
+    private volatile Config config = new Config()
+            .version("1")
+            .mode(OperationMode.MONITOR);
+
+    private UmbrellaStandInServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static UmbrellaStandInServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // Handlers sleep to simulate latency, so each request needs its own thread
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Umbrella Stand-In");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        UmbrellaStandInServer standIn = new UmbrellaStandInServer(server, executor);
+        server.createContext("/", standIn::handle);
+        server.start();
+        return standIn;
+    }
+
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public UmbrellaStandInServer latency(LatencyDistribution latency) {
+        this.latency = Objects.requireNonNull(latency);
+        return this;
+    }
+
+    /**
+     * Fraction of requests, between 0 and 1, answered with a 503.
+     */
+    public UmbrellaStandInServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of requests, between 0 and 1, answered with a 429.
+     */
+    public UmbrellaStandInServer rateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+        return this;
+    }
+
+    /**
+     * Action returned for every HTTP event.
+     */
+    public UmbrellaStandInServer httpAction(HttpAction httpAction) {
+        this.httpAction = Objects.requireNonNull(httpAction);
+        return this;
+    }
+
+    /**
+     * Action returned for every custom event.
+     */
+    public UmbrellaStandInServer customAction(Map<String, String> customAction) {
+        this.customAction = Objects.requireNonNull(customAction);
+        return this;
+    }
+
+    /**
+     * Scores, from 0 to 255, served as the IP reputation snapshot regardless of the version asked for. Clients
+     * only download it once announced in the {@link #config}.
+     */
+    public UmbrellaStandInServer ipReputation(Map<InetAddress, Integer> scores) {
+        this.ipReputation = ipReputationSnapshot(scores);
+        return this;
+    }
+
+    /**
+     * Replace the config handed out to clients, assigning it a new version and waking up watching clients.
+     */
+    public UmbrellaStandInServer config(Config config) {
+        synchronized (configLock) {
+            this.config = JSON.getGson().fromJson(JSON.getGson().toJson(config), Config.class)
+                    .version(Long.toString(Long.parseLong(this.config.getVersion()) + 1));
+            configLock.notifyAll();
+        }
+        return this;
+    }
+
+    public UmbrellaStandInServer mode(OperationMode mode) {
+        return config(getConfig().mode(mode));
+    }
+
+    public Config getConfig() {
+        return JSON.getGson().fromJson(JSON.getGson().toJson(config), Config.class);
+    }
+
+    /**
+     * Number of requests received for the given operation, e.g. {@code httpEvent}, as named in
+     * {@code umbrella-api.yaml}.
+     */
+    public long getRequestCount(String operationId) {
+        LongAdder count = requestCounts.get(operationId);
+        return count == null ? 0L : count.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            drain(exchange.getRequestBody());
+            Matcher matcher = PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                respond(exchange, 404, null);
+                return;
+            }
+            String path = matcher.group(2);
+            String method = exchange.getRequestMethod();
+            if ("GET".equals(method) && "node/config".equals(path)) {
+                count("nodeConfig");
+                watchConfig(exchange);
+                return;
+            }
+            if ("GET".equals(method) && "node/reputation".equals(path)) {
+                count("ipReputation");
+                injectLatency();
+                if (!respondInjectedError(exchange)) {
+                    byte[] snapshot = ipReputation;
+                    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                    exchange.sendResponseHeaders(200, snapshot.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(snapshot);
+                    }
+                }
+                return;
+            }
+            if (!"POST".equals(method)) {
+                respond(exchange, 405, null);
+                return;
+            }
+            String operationId;
+            Object body;
+            switch (path) {
+                case "node/ping":
+                    operationId = "nodePing";
+                    body = new PingResponse().config(config);
+                    break;
+                case "event/http":
+                    operationId = "httpEvent";
+                    body = new HttpEventResponse().action(httpAction);
+                    break;
+                case "event/http/rollup":
+                    operationId = "httpEventRollup";
+                    body = null;
+                    break;
+                case "event/http/outcome":
+                    operationId = "httpOutcomeBatch";
+                    body = null;
+                    break;
+                case "event/custom/batch":
+                    operationId = "customEventBatch";
+                    body = null;
+                    break;
+                default:
+                    if (!path.startsWith("event/") || path.indexOf('/', "event/".length()) != -1) {
+                        respond(exchange, 404, null);
+                        return;
+                    }
+                    operationId = "customEvent";
+                    body = new EventResponse().action(customAction);
+            }
+            count(operationId);
+            injectLatency();
+            if (!respondInjectedError(exchange)) {
+                respond(exchange, body == null ? 202 : 200, body);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            log.log(Level.FINE, "Failed to respond", ex);
+        }
+    }
+
+    private void watchConfig(HttpExchange exchange) throws IOException, InterruptedException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        long waitMillis = TimeUnit.SECONDS.toMillis(parseWaitSeconds(exchange.getRequestURI().getQuery()));
+        long deadline = System.currentTimeMillis() + waitMillis;
+        Config current;
+        synchronized (configLock) {
+            while (Objects.equals(ifNoneMatch, "\"" + (current = config).getVersion() + "\"")) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    respond(exchange, 304, null);
+                    return;
+                }
+                configLock.wait(remaining);
+            }
+        }
+        respond(exchange, 200, current);
+    }
+
+    /**
+     * Answers with a 429 or 503 at the configured rates, returning whether it did.
+     */
+    private boolean respondInjectedError(HttpExchange exchange) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRate) {
+            respond(exchange, 429, null);
+            return true;
+        } else if (roll < rateLimitRate + errorRate) {
+            respond(exchange, 503, null);
+            return true;
+        }
+        return false;
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long millis = latency.sampleMillis();
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private void count(String operationId) {
+        requestCounts.computeIfAbsent(operationId, o -> new LongAdder()).increment();
+    }
+
+    private static long parseWaitSeconds(String query) {
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("waitSeconds=")) {
+                    try {
+                        return Long.parseLong(param.substring("waitSeconds=".length()));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Encodes scores in the format of the {@code ipReputation} operation in {@code umbrella-api.yaml}.
+     */
+    private static byte[] ipReputationSnapshot(Map<InetAddress, Integer> scores) {
+        Map<Inet4Address, Integer> ipv4 = new HashMap<>();
+        Map<Inet6Address, Integer> ipv6 = new HashMap<>();
+        scores.forEach((address, score) -> {
+            if (address instanceof Inet4Address) {
+                ipv4.put((Inet4Address) address, score);
+            } else {
+                ipv6.put((Inet6Address) address, score);
+            }
+        });
+        ByteBuffer buf = ByteBuffer.allocate(16 + ipv4.size() * 5 + ipv6.size() * 17)
+                .putInt(0x554d4952)
+                .putInt(1)
+                .putInt(ipv4.size());
+        ipv4.forEach((address, score) -> buf
+                .put(address.getAddress())
+                .put(score.byteValue()));
+        buf.putInt(ipv6.size());
+        ipv6.forEach((address, score) -> buf
+                .put(address.getAddress())
+                .put(score.byteValue()));
+        return buf.array();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while (in.read(buf) != -1) {
+            // Discard
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = JSON.getGson().toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.OperationMode;
+import io.dataspray.umbrella.client.model.RequestProcess;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadDriverTest {
+
+    private UmbrellaStandInServer standIn;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        standIn = UmbrellaStandInServer.start()
+                .latency(LatencyDistribution.fixed(1L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        standIn.close();
+    }
+
+    @Test
+    void testCompare(@TempDir Path tempDir) throws Exception {
+        standIn.config(standIn.getConfig()
+                .mode(OperationMode.BLOCKING)
+                .timeoutMs(1_000L));
+
+        LoadDriver.Comparison comparison = createDriver(tempDir).compare();
+
+        assertEquals(50L, comparison.getBaseline().getCompleted());
+        assertEquals(50L, comparison.getFiltered().getCompleted());
+        assertEquals(0L, comparison.getFiltered().getNon2xx());
+        assertEquals(50L, standIn.getRequestCount("httpEvent"));
+        assertTrue(comparison.getFiltered().getLatencyMs(50) > 0d);
+        assertTrue(comparison.getFiltered().getThroughputRps() > 0d);
+        assertFalse(Double.isNaN(comparison.getAddedLatencyMs(99)));
+    }
+
+    @Test
+    void testBlocked(@TempDir Path tempDir) throws Exception {
+        standIn.mode(OperationMode.BLOCKING)
+                .httpAction(new HttpAction()
+                        .requestProcess(RequestProcess.BLOCK)
+                        .responseStatus(403L));
+
+        LoadReport report = createDriver(tempDir).run(true);
+
+        assertEquals(50L, report.getCompleted());
+        assertEquals(50L, report.getNon2xx());
+    }
+
+    private LoadDriver createDriver(Path tempDir) {
+        return new LoadDriver()
+                .targetRps(50)
+                .warmup(Duration.ZERO)
+                .duration(Duration.ofSeconds(1))
+                .filterInitParameters(Map.of(
+                        "org", "org_name",
+                        "api-key", "api_key",
+                        "endpoint-url", standIn.getUrl(),
+                        "config-snapshot-path", tempDir.resolve("config").toString(),
+                        "config-watch", "false"));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.loadtest;
+
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.IpReputationConfig;
+import io.dataspray.umbrella.client.model.MonitorRollupConfig;
+import io.dataspray.umbrella.client.model.OperationMode;
+import io.dataspray.umbrella.client.model.RequestProcess;
+import io.dataspray.umbrella.integration.tomcat.UmbrellaOptions;
+import io.dataspray.umbrella.integration.tomcat.UmbrellaService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UmbrellaStandInServerTest {
+
+    private static final HttpAction BLOCK_ACTION = new HttpAction()
+            .requestProcess(RequestProcess.BLOCK)
+            .responseStatus(403L);
+    private UmbrellaStandInServer standIn;
+    private UmbrellaService umbrellaService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        standIn = UmbrellaStandInServer.start()
+                .httpAction(BLOCK_ACTION);
+        umbrellaService = UmbrellaService.create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        umbrellaService.shutdown();
+        standIn.close();
+    }
+
+    @Test
+    void testModeChangePushedToWatchingClient() throws Exception {
+        init(true);
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata()).getRequestProcess());
+
+        standIn.mode(OperationMode.BLOCKING);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (umbrellaService.httpEvent(new HttpMetadata()).getRequestProcess() != RequestProcess.BLOCK) {
+            assertTrue(System.nanoTime() < deadline, "Mode change was not picked up");
+            Thread.sleep(50);
+        }
+        assertEquals(1L, standIn.getRequestCount("nodePing"));
+        assertTrue(standIn.getRequestCount("nodeConfig") >= 1L);
+    }
+
+    @Test
+    void testRateLimited() {
+        standIn.mode(OperationMode.BLOCKING);
+        init(false);
+        standIn.rateLimitRate(1d);
+
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata()).getRequestProcess());
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata()).getRequestProcess());
+
+        // Client disables itself after the first 429
+        assertEquals(1L, standIn.getRequestCount("httpEvent"));
+    }
+
+    @Test
+    void testSlowApiExceedsTimeout() {
+        standIn.config(standIn.getConfig()
+                .mode(OperationMode.BLOCKING)
+                .timeoutMs(100L));
+        init(false);
+        standIn.latency(LatencyDistribution.fixed(1_000L));
+
+        long startedAt = System.nanoTime();
+        HttpAction action = umbrellaService.httpEvent(new HttpMetadata());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertEquals(RequestProcess.ALLOW, action.getRequestProcess());
+        assertTrue(elapsedMs < 900L, "Took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void testCustomEventDecision() throws Exception {
+        standIn.mode(OperationMode.BLOCKING)
+                .customAction(Map.of("challenge", "captcha"));
+        init(false);
+
+        assertEquals(Map.of("challenge", "captcha"), umbrellaService.customEventDecision("login", "user1", Map.of())
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(1L, standIn.getRequestCount("customEvent"));
+    }
+
+    @Test
+    void testIpReputationDownloaded() throws Exception {
+        standIn.ipReputation(Map.of(InetAddress.getByName("10.0.0.1"), 200))
+                .config(standIn.getConfig()
+                .mode(OperationMode.BLOCKING)
+                .ipReputation(new IpReputationConfig()
+                        .version("1")
+                        .blockScore(50)));
+        init(false);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (umbrellaService.metrics().get("ipReputation.size").longValue() != 1L) {
+            assertTrue(System.nanoTime() < deadline, "IP reputation snapshot was not loaded");
+            Thread.sleep(50);
+        }
+        assertEquals(RequestProcess.BLOCK, umbrellaService.httpEvent(new HttpMetadata().ip("10.0.0.1")).getRequestProcess());
+        assertEquals(1L, standIn.getRequestCount("ipReputation"));
+        assertEquals(0L, standIn.getRequestCount("httpEvent"));
+    }
+
+    @Test
+    void testMonitorRollup() throws Exception {
+        standIn.config(standIn.getConfig()
+                .monitorRollup(new MonitorRollupConfig()
+                        .windowSeconds(1L)));
+        init(false);
+
+        assertEquals(RequestProcess.ALLOW, umbrellaService.httpEvent(new HttpMetadata().ip("1.2.3.4")).getRequestProcess());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (standIn.getRequestCount("httpEventRollup") == 0L) {
+            assertTrue(System.nanoTime() < deadline, "Rollup was not sent");
+            Thread.sleep(50);
+        }
+        assertEquals(0L, standIn.getRequestCount("httpEvent"));
+    }
+
+    @Test
+    void testLogNormalLatency() {
+        LatencyDistribution latency = LatencyDistribution.logNormal(10d, 100d);
+        long[] samples = new long[10_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleMillis();
+        }
+        Arrays.sort(samples);
+
+        assertEquals(10d, samples[samples.length / 2], 2d);
+        assertEquals(100d, samples[samples.length * 99 / 100], 30d);
+    }
+
+    private void init(boolean configWatch) {
+        umbrellaService.init(
+                "org_name",
+                "api_key",
+                List.of("nodeIdentifier"),
+                List.of(standIn.getUrl()),
+                new UmbrellaOptions().configWatch(configWatch));
+    }
+}
@@ -22,19 +22,25 @@
 
 package io.dataspray.umbrella.integration.tomcat;
 
+import io.dataspray.umbrella.client.model.Config;
 import io.dataspray.umbrella.client.model.Cookie;
 import io.dataspray.umbrella.client.model.HttpAction;
 import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
+import io.dataspray.umbrella.client.model.MetadataField;
+import io.dataspray.umbrella.client.model.OperationMode;
 import io.dataspray.umbrella.client.model.RequestProcess;
 import jakarta.annotation.Nullable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Optional;
@@ -51,6 +57,7 @@ class UmbrellaFilterTest {
     @BeforeEach
     void setUp() {
         umbrellaService = mock(UmbrellaService.class);
+        when(umbrellaService.fieldMask()).thenReturn(FieldMask.ALL);
         umbrellaFilter = new UmbrellaFilter(umbrellaService);
     }
 
@@ -59,7 +66,7 @@ class UmbrellaFilterTest {
         assertThrows(ServletException.class, () -> {
             init("org1", null, null, null);
         });
-        verify(umbrellaService, times(0)).init(any(), any(), any(), any());
+        verify(umbrellaService, times(0)).init(any(), any(), any(), any(), any());
     }
 
     @Test
@@ -67,14 +74,14 @@ class UmbrellaFilterTest {
         assertThrows(ServletException.class, () -> {
             init(null, "apiKey", null, null);
         });
-        verify(umbrellaService, times(0)).init(any(), any(), any(), any());
+        verify(umbrellaService, times(0)).init(any(), any(), any(), any(), any());
     }
 
     @Test
     void testInitDisabled() throws Exception {
         init("org1", "apikey", "false", null);
         assertFalse(umbrellaFilter.enabled);
-        verify(umbrellaService, times(0)).init(any(), any(), any(), any());
+        verify(umbrellaService, times(0)).init(any(), any(), any(), any(), any());
     }
 
     @Test
@@ -85,7 +92,8 @@ class UmbrellaFilterTest {
                 eq("org1"),
                 eq("apikey"),
                 eq(Arrays.asList(InetAddress.getLocalHost().getHostName(), "ServletContextName", "ServerInfo", "VirtualServerName")),
-                eq(Optional.empty()));
+                eq(Collections.emptyList()),
+                any(UmbrellaOptions.class));
     }
 
     @Test
@@ -96,7 +104,60 @@ class UmbrellaFilterTest {
                 eq("org1"),
                 eq("apikey"),
                 eq(Arrays.asList(InetAddress.getLocalHost().getHostName(), "ServletContextName", "ServerInfo", "VirtualServerName")),
-                eq(Optional.of("https://example.com")));
+                eq(Collections.singletonList("https://example.com")),
+                any(UmbrellaOptions.class));
+    }
+
+    @Test
+    void testInitMultipleEndpoints() throws Exception {
+        init("org1", "apikey", null, "https://us.example.com, https://eu.example.com,");
+        assertTrue(umbrellaFilter.enabled);
+        verify(umbrellaService, times(1)).init(
+                eq("org1"),
+                eq("apikey"),
+                any(),
+                eq(Arrays.asList("https://us.example.com", "https://eu.example.com")),
+                any(UmbrellaOptions.class));
+    }
+
+    @Test
+    void testInitNoConfigSnapshotByDefault() throws Exception {
+        umbrellaFilter.init(mockFilterConfig("org1", "apikey", null, null));
+        ArgumentCaptor<UmbrellaOptions> optionsCaptor = ArgumentCaptor.forClass(UmbrellaOptions.class);
+        verify(umbrellaService, times(1)).init(any(), any(), any(), any(), optionsCaptor.capture());
+        assertEquals(Optional.empty(), optionsCaptor.getValue().getConfigSnapshotPath());
+    }
+
+    @Test
+    void testInitConfigWatch() throws Exception {
+        umbrellaFilter.init(mockFilterConfig("org1", "apikey", null, null));
+        FilterConfig filterConfig = mockFilterConfig("org1", "apikey", null, null);
+        when(filterConfig.getInitParameter("config-watch")).thenReturn("true");
+        umbrellaFilter.init(filterConfig);
+        ArgumentCaptor<UmbrellaOptions> optionsCaptor = ArgumentCaptor.forClass(UmbrellaOptions.class);
+        verify(umbrellaService, times(2)).init(any(), any(), any(), any(), optionsCaptor.capture());
+        assertFalse(optionsCaptor.getAllValues().get(0).isConfigWatch());
+        assertTrue(optionsCaptor.getAllValues().get(1).isConfigWatch());
+    }
+
+    @Test
+    void testInitConfigSnapshotPath() throws Exception {
+        FilterConfig filterConfig = mockFilterConfig("org1", "apikey", null, null);
+        when(filterConfig.getInitParameter("config-snapshot-path")).thenReturn("/var/lib/umbrella/config");
+        umbrellaFilter.init(filterConfig);
+        ArgumentCaptor<UmbrellaOptions> optionsCaptor = ArgumentCaptor.forClass(UmbrellaOptions.class);
+        verify(umbrellaService, times(1)).init(any(), any(), any(), any(), optionsCaptor.capture());
+        assertEquals(Optional.of(Path.of("/var/lib/umbrella/config")), optionsCaptor.getValue().getConfigSnapshotPath());
+    }
+
+    @Test
+    void testInitOverloadProtection() throws Exception {
+        FilterConfig filterConfig = mockFilterConfig("org1", "apikey", null, null);
+        when(filterConfig.getInitParameter("overload-protection")).thenReturn("true");
+        umbrellaFilter.init(filterConfig);
+        ArgumentCaptor<UmbrellaOptions> optionsCaptor = ArgumentCaptor.forClass(UmbrellaOptions.class);
+        verify(umbrellaService, times(1)).init(any(), any(), any(), any(), optionsCaptor.capture());
+        assertTrue(optionsCaptor.getValue().isOverloadProtection());
     }
 
     private void init(
@@ -105,6 +166,15 @@ class UmbrellaFilterTest {
             @Nullable String enabled,
             @Nullable String endpointUrl
     ) throws ServletException {
+        umbrellaFilter.init(mockFilterConfig(orgName, apiKey, enabled, endpointUrl));
+    }
+
+    private FilterConfig mockFilterConfig(
+            @Nullable String orgName,
+            @Nullable String apiKey,
+            @Nullable String enabled,
+            @Nullable String endpointUrl
+    ) {
         ServletContext servletContext = mock(ServletContext.class);
         when(servletContext.getServletContextName()).thenReturn("ServletContextName");
         when(servletContext.getServerInfo()).thenReturn("ServerInfo");
@@ -116,8 +186,7 @@ class UmbrellaFilterTest {
         when(filterConfig.getInitParameter("api-key")).thenReturn(apiKey);
         when(filterConfig.getInitParameter("enabled")).thenReturn(enabled);
         when(filterConfig.getInitParameter("endpoint-url")).thenReturn(endpointUrl);
-
-        umbrellaFilter.init(filterConfig);
+        return filterConfig;
     }
 
     @Test
@@ -178,6 +247,56 @@ class UmbrellaFilterTest {
         assertEquals(543L, dataCaptor.getValue().getContentLength());
     }
 
+    @Test
+    void testDoFilterCollectsMaskedFieldsOnly() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.fieldMask()).thenReturn(FieldMask.create(new Config()
+                .mode(OperationMode.MONITOR)
+                .fieldMask(FieldMask.bit(MetadataField.H_USER_AGENT) | FieldMask.bit(MetadataField.H_AUTH_SIZE))));
+        when(umbrellaService.httpEvent(any())).thenReturn(new HttpAction()
+                .requestProcess(RequestProcess.ALLOW));
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(request.getHeader("User-Agent")).thenReturn("test-agent");
+        when(request.getHeader("Authorization")).thenReturn("Bearer token");
+        when(request.getHeader("Accept")).thenReturn("*/*");
+
+        umbrellaFilter.doFilter(request, response, chain);
+
+        ArgumentCaptor<HttpMetadata> dataCaptor = ArgumentCaptor.forClass(HttpMetadata.class);
+        verify(umbrellaService, times(1)).httpEvent(dataCaptor.capture());
+        HttpMetadata data = dataCaptor.getValue();
+        assertEquals("10.0.0.1", data.getIp());
+        assertEquals("test-agent", data.gethUserAgent());
+        assertEquals(12L, data.gethAuthSize());
+        assertNull(data.gethAuthPrefix());
+        assertNull(data.gethAccept());
+        assertNull(data.getPort());
+        assertNull(data.getHeaderNames());
+        verify(request, never()).getHeader("Accept");
+        verify(request, never()).getHeaderNames();
+    }
+
+    @Test
+    void testDoFilterCountsRequestUntilChainFails() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.httpEvent(any())).thenReturn(new HttpAction()
+                .requestProcess(RequestProcess.ALLOW));
+        doThrow(new ServletException("app failed")).when(chain).doFilter(any(), any());
+
+        assertThrows(ServletException.class, () -> umbrellaFilter.doFilter(request, response, chain));
+
+        InOrder inOrder = inOrder(umbrellaService, chain);
+        inOrder.verify(umbrellaService).requestStarted();
+        inOrder.verify(chain).doFilter(eq(request), eq(response));
+        inOrder.verify(umbrellaService).requestFinished();
+    }
+
     @Test
     void testDoFilterBlock() throws Exception {
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -205,6 +324,137 @@ class UmbrellaFilterTest {
         verify(response, times(1)).setHeader(eq("headerName"), eq("headerValue"));
     }
 
+    @Test
+    void testDoFilterTemplateCookies() throws Exception {
+        HttpAction template = new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)
+                .responseCookies(Collections.singletonList(new Cookie()
+                        .name("cookieName")
+                        .value("cookieValue")));
+        HttpAction templateUpdated = new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)
+                .responseCookies(Collections.singletonList(new Cookie()
+                        .name("cookieName")
+                        .value("cookieValueUpdated")));
+        when(umbrellaService.httpEvent(any())).thenReturn(template, template, templateUpdated);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ArgumentCaptor<javax.servlet.http.Cookie> firstCookieCaptor = ArgumentCaptor.forClass(javax.servlet.http.Cookie.class);
+        umbrellaFilter.doFilter(mock(HttpServletRequest.class), response, mock(FilterChain.class));
+        verify(response).addCookie(firstCookieCaptor.capture());
+        // Changes to a handed out cookie must not leak into later responses
+        firstCookieCaptor.getValue().setValue("changed");
+        for (int i = 0; i < 2; i++) {
+            umbrellaFilter.doFilter(mock(HttpServletRequest.class), response, mock(FilterChain.class));
+        }
+
+        ArgumentCaptor<javax.servlet.http.Cookie> cookieCaptor = ArgumentCaptor.forClass(javax.servlet.http.Cookie.class);
+        verify(response, times(3)).addCookie(cookieCaptor.capture());
+        assertNotSame(cookieCaptor.getAllValues().get(0), cookieCaptor.getAllValues().get(1));
+        assertEquals("cookieValue", cookieCaptor.getAllValues().get(1).getValue());
+        assertEquals("cookieValueUpdated", cookieCaptor.getAllValues().get(2).getValue());
+    }
+
+    @Test
+    void testDoFilterReportsOutcome() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.httpEvent(any())).thenAnswer(invocation -> {
+            invocation.<HttpMetadata>getArgument(0).setEventId("event1");
+            return new HttpAction()
+                    .requestProcess(RequestProcess.ALLOW);
+        });
+        when(response.getStatus()).thenReturn(403);
+        when(response.getHeader("Content-Length")).thenReturn("123");
+
+        umbrellaFilter.doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(eq(request), eq(response));
+        ArgumentCaptor<HttpOutcome> outcomeCaptor = ArgumentCaptor.forClass(HttpOutcome.class);
+        verify(umbrellaService, times(1)).httpOutcome(outcomeCaptor.capture());
+        assertEquals("event1", outcomeCaptor.getValue().getEventId());
+        assertEquals(403L, outcomeCaptor.getValue().getStatus());
+        assertEquals(123L, outcomeCaptor.getValue().getResponseSize());
+        assertTrue(outcomeCaptor.getValue().getAppRejected());
+        assertFalse(outcomeCaptor.getValue().getFailed());
+    }
+
+    @Test
+    void testDoFilterReportsFailedOutcome() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.httpEvent(any())).thenAnswer(invocation -> {
+            invocation.<HttpMetadata>getArgument(0).setEventId("event1");
+            return new HttpAction()
+                    .requestProcess(RequestProcess.ALLOW);
+        });
+        doThrow(new ServletException("Handler failed")).when(chain).doFilter(any(), any());
+
+        assertThrows(ServletException.class, () -> umbrellaFilter.doFilter(request, response, chain));
+
+        ArgumentCaptor<HttpOutcome> outcomeCaptor = ArgumentCaptor.forClass(HttpOutcome.class);
+        verify(umbrellaService, times(1)).httpOutcome(outcomeCaptor.capture());
+        assertTrue(outcomeCaptor.getValue().getFailed());
+        assertNull(outcomeCaptor.getValue().getResponseSize());
+    }
+
+    @Test
+    void testDoFilterNoOutcomeWithoutEventId() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.httpEvent(any())).thenReturn(new HttpAction()
+                .requestProcess(RequestProcess.ALLOW));
+
+        umbrellaFilter.doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(eq(request), eq(response));
+        verify(umbrellaService, times(0)).httpOutcome(any());
+    }
+
+    @Test
+    void testDoFilterValidVerdictToken() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.verdictTokenCookieName()).thenReturn(Optional.of("umbrella_vt"));
+        when(request.getCookies()).thenReturn(new javax.servlet.http.Cookie[]{new javax.servlet.http.Cookie("umbrella_vt", "token")});
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(umbrellaService.verifyVerdictToken("token", "10.0.0.1")).thenReturn(true);
+
+        umbrellaFilter.doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(eq(request), eq(response));
+        verify(umbrellaService, times(0)).httpEvent(any());
+    }
+
+    @Test
+    void testDoFilterInvalidVerdictToken() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        when(umbrellaService.verdictTokenCookieName()).thenReturn(Optional.of("umbrella_vt"));
+        when(request.getCookies()).thenReturn(new javax.servlet.http.Cookie[]{new javax.servlet.http.Cookie("umbrella_vt", "forged")});
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(umbrellaService.httpEvent(any())).thenReturn(new HttpAction()
+                .requestProcess(RequestProcess.BLOCK));
+
+        umbrellaFilter.doFilter(request, response, chain);
+
+        verify(umbrellaService, times(1)).verifyVerdictToken("forged", "10.0.0.1");
+        verify(umbrellaService, times(1)).httpEvent(any());
+        verify(chain, times(0)).doFilter(any(), any());
+    }
+
     @Test
     void testDestroy() throws Exception {
         umbrellaFilter.destroy();
@@ -24,6 +24,8 @@ package io.dataspray.umbrella.integration.tomcat;
 
 import io.dataspray.umbrella.client.model.HttpAction;
 import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
+import io.dataspray.umbrella.client.model.MetadataField;
 import io.dataspray.umbrella.client.model.RequestProcess;
 import jakarta.servlet.*;
 import jakarta.servlet.http.Cookie;
@@ -34,8 +36,11 @@ import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,9 +51,11 @@ public class UmbrellaFilter implements Filter {
     private static final Logger log = Logger.getLogger(UmbrellaFilter.class.getCanonicalName());
     private final UmbrellaService umbrellaService;
     boolean enabled = true;
+    /** Cookie fields copied from action templates, by template id */
+    private final ConcurrentHashMap<String, TemplateCookies> templateCookies = new ConcurrentHashMap<>();
 
     public UmbrellaFilter() {
-        this(UmbrellaService.create());
+        this(UmbrellaService.createShared());
     }
 
     UmbrellaFilter(UmbrellaService umbrellaService) {
@@ -75,15 +82,45 @@ public class UmbrellaFilter implements Filter {
         String apiKey = getProperty("api-key", "umbrella.api.key", "UMBRELLA_API_KEY", filterConfig)
                 .orElseThrow(() -> new ServletException("Umbrella API key property is missing"));
 
-        // Endpoint URL property
-        Optional<String> endpointUrlOpt = getProperty("endpoint-url", "umbrella.endpoint.url", "UMBRELLA_ENDPOINT_URL", filterConfig);
-        endpointUrlOpt.ifPresent(endpointUrl -> log.log(Level.INFO, "Umbrella using endpoint: {0}", endpointUrl));
+        // Endpoint URL property, comma-separated for multiple endpoints
+        List<String> endpointUrls = getProperty("endpoint-url", "umbrella.endpoint.url", "UMBRELLA_ENDPOINT_URL", filterConfig)
+                .map(endpointUrlsStr -> Arrays.stream(endpointUrlsStr.split(","))
+                        .map(String::trim)
+                        .filter(Predicate.not(String::isEmpty))
+                        .collect(Collectors.toList()))
+                .orElse(Collections.emptyList());
+        if (!endpointUrls.isEmpty()) {
+            log.log(Level.INFO, "Umbrella using endpoints: {0}", endpointUrls);
+        }
+
+        // Config snapshot path property, only opted into as the snapshot is trusted on startup
+        Optional<Path> configSnapshotPath = getProperty("config-snapshot-path", "umbrella.config.snapshot.path", "UMBRELLA_CONFIG_SNAPSHOT_PATH", filterConfig)
+                .map(Path::of);
+
+        // Config watch property, off until the server supports watching
+        boolean configWatch = getProperty("config-watch", "umbrella.config.watch", "UMBRELLA_CONFIG_WATCH", filterConfig)
+                .map(configWatchStr -> "true".equalsIgnoreCase(configWatchStr) || "1".equals(configWatchStr))
+                .orElse(false);
+
+        // Verdict store path property
+        Optional<Path> verdictStorePath = getProperty("verdict-store-path", "umbrella.verdict.store.path", "UMBRELLA_VERDICT_STORE_PATH", filterConfig)
+                .map(Path::of);
+
+        // Overload protection property
+        boolean overloadProtection = getProperty("overload-protection", "umbrella.overload.protection", "UMBRELLA_OVERLOAD_PROTECTION", filterConfig)
+                .map(overloadProtectionStr -> "true".equalsIgnoreCase(overloadProtectionStr) || "1".equals(overloadProtectionStr))
+                .orElse(false);
 
         umbrellaService.init(
                 orgName,
                 apiKey,
                 getServerIdentifierParts(filterConfig.getServletContext()),
-                endpointUrlOpt);
+                endpointUrls,
+                new UmbrellaOptions()
+                        .configSnapshotPath(configSnapshotPath.orElse(null))
+                        .configWatch(configWatch)
+                        .verdictStorePath(verdictStorePath.orElse(null))
+                        .overloadProtection(overloadProtection));
 
         log.log(Level.INFO, "Umbrella enabled successfully");
     }
@@ -97,6 +134,16 @@ public class UmbrellaFilter implements Filter {
             return;
         }
 
+        // Counted for overload protection until the rest of the chain has handled the request
+        umbrellaService.requestStarted();
+        try {
+            doFilterStarted(servletRequest, servletResponse, filterChain);
+        } finally {
+            umbrellaService.requestFinished();
+        }
+    }
+
+    private void doFilterStarted(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
         if (!(servletRequest instanceof HttpServletRequest)) {
             log.log(Level.FINE, "Skipping non-HTTP request");
             filterChain.doFilter(servletRequest, servletResponse);
@@ -111,72 +158,72 @@ public class UmbrellaFilter implements Filter {
         }
         HttpServletResponse httpServletResponse = (HttpServletResponse) servletResponse;
 
-        // Prepare request
+        // Skip the remote check for clients holding a valid verdict token, possibly issued via another node
+        if (hasValidVerdictToken(httpServletRequest)) {
+            log.log(Level.FINEST, "Skipping due to valid verdict token");
+            filterChain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        // Prepare request, collecting only the fields the server asks for
+        FieldMask fieldMask = umbrellaService.fieldMask();
         HttpMetadata data = new HttpMetadata();
         data.setTs(Instant.now());
         data.setUri(httpServletRequest.getRequestURI());
         data.setMethod(httpServletRequest.getMethod());
-        data.setProto(httpServletRequest.getScheme());
         data.setIp(httpServletRequest.getRemoteAddr());
-        data.sethXFwdProto(httpServletRequest.getHeader("X-Forwarded-Proto"));
-        data.sethCfConnIp(httpServletRequest.getHeader("CF-Connecting-IP"));
-        data.sethTrueClientIp(httpServletRequest.getHeader("True-Client-IP"));
-        data.sethXRealIp(httpServletRequest.getHeader("X-Real-IP"));
-        data.sethFwd(httpServletRequest.getHeader("Forwarded"));
-        data.sethXFwdFor(httpServletRequest.getHeader("X-Forwarded-For"));
-        data.sethVia(httpServletRequest.getHeader("Via"));
-        data.setPort((long) httpServletRequest.getRemotePort());
-        data.sethXFwdPort(httpServletRequest.getHeader("X-Forwarded-Port"));
-        data.sethXFwdHost(httpServletRequest.getHeader("X-Forwarded-Host"));
-        data.sethXReqWith(httpServletRequest.getHeader("X-Requested-With"));
-        data.sethUserAgent(httpServletRequest.getHeader("User-Agent"));
-        String headerAuthorization = httpServletRequest.getHeader("Authorization");
-        if (headerAuthorization != null) {
-            String[] headerAuthorizationSplit = headerAuthorization.split(" +");
-            if (headerAuthorizationSplit.length > 1) {
-                data.sethAuthPrefix(headerAuthorizationSplit[0]);
+        if (fieldMask.collects(MetadataField.PROTO)) {
+            data.setProto(httpServletRequest.getScheme());
+        }
+        if (fieldMask.collects(MetadataField.PORT)) {
+            data.setPort((long) httpServletRequest.getRemotePort());
+        }
+        for (FieldMask.HeaderField headerField : fieldMask.getHeaderFields()) {
+            headerField.set(data, httpServletRequest.getHeader(headerField.getHeaderName()));
+        }
+        if (fieldMask.collects(MetadataField.H_AUTH_PREFIX) || fieldMask.collects(MetadataField.H_AUTH_SIZE)) {
+            String headerAuthorization = httpServletRequest.getHeader("Authorization");
+            if (headerAuthorization != null) {
+                String[] headerAuthorizationSplit = headerAuthorization.split(" +");
+                if (headerAuthorizationSplit.length > 1 && fieldMask.collects(MetadataField.H_AUTH_PREFIX)) {
+                    data.sethAuthPrefix(headerAuthorizationSplit[0]);
+                }
+                if (fieldMask.collects(MetadataField.H_AUTH_SIZE)) {
+                    data.sethAuthSize((long) headerAuthorization.length());
+                }
             }
-            data.sethAuthSize((long) headerAuthorization.length());
-        }
-        data.sethXReqId(httpServletRequest.getHeader("X-Request-ID"));
-        data.sethAccept(httpServletRequest.getHeader("Accept"));
-        data.sethAcceptLanguage(httpServletRequest.getHeader("Accept-Language"));
-        data.sethAcceptCharset(httpServletRequest.getHeader("Accept-Charset"));
-        data.sethAcceptEncoding(httpServletRequest.getHeader("Accept-Encoding"));
-        data.sethConnection(httpServletRequest.getHeader("Connection"));
-        data.sethContentType(httpServletRequest.getHeader("Content-Type"));
-        data.sethFrom(httpServletRequest.getHeader("From"));
-        data.sethHost(httpServletRequest.getHeader("Host"));
-        data.sethOrigin(httpServletRequest.getHeader("Origin"));
-        data.setContentLength(httpServletRequest.getContentLengthLong());
-        data.sethPragma(httpServletRequest.getHeader("Pragma"));
-        data.sethReferer(httpServletRequest.getHeader("Referer"));
-        data.sethSecChDevMem(httpServletRequest.getHeader("Sec-CH-Device-Memory"));
-        data.sethSecChUa(httpServletRequest.getHeader("Sec-CH-UA"));
-        data.sethSecChUaModel(httpServletRequest.getHeader("Sec-CH-UA-Model"));
-        data.sethSecChUaFull(httpServletRequest.getHeader("Sec-CH-UA-Full-Version"));
-        data.sethSecChUaMobile(httpServletRequest.getHeader("Sec-CH-UA-Mobile"));
-        data.sethSecChUaPlatform(httpServletRequest.getHeader("Sec-CH-UA-Platform"));
-        data.sethSecChUaArch(httpServletRequest.getHeader("Sec-CH-UA-Arch"));
-        data.sethSecFetchDest(httpServletRequest.getHeader("Sec-Fetch-Dest"));
-        data.sethSecFetchMode(httpServletRequest.getHeader("Sec-Fetch-Mode"));
-        data.sethSecFetchSite(httpServletRequest.getHeader("Sec-Fetch-Site"));
-        data.sethSecFetchUser(httpServletRequest.getHeader("Sec-Fetch-User"));
-        Object sslSessionAttr = httpServletRequest.getAttribute("javax.servlet.request.ssl_session");
-        if (sslSessionAttr instanceof SSLSession) {
-            SSLSession sslSession = (SSLSession) sslSessionAttr;
-            data.setTlsCipher(sslSession.getProtocol());
-            data.setTlsProto(sslSession.getCipherSuite());
-        }
-        Enumeration<String> headerNames = httpServletRequest.getHeaderNames();
-        if (headerNames != null) {
-            data.setHeaderNames(Collections.list(headerNames));
         }
-        Cookie[] cookies = httpServletRequest.getCookies();
-        if (cookies != null) {
-            data.setCookieNames(Arrays.stream(cookies)
-                    .map(Cookie::getName)
-                    .collect(Collectors.toList()));
+        if (fieldMask.collects(MetadataField.CONTENT_LENGTH)) {
+            data.setContentLength(httpServletRequest.getContentLengthLong());
+        }
+        if (fieldMask.collects(MetadataField.TLS_CIPHER) || fieldMask.collects(MetadataField.TLS_PROTO)) {
+            Object sslSessionAttr = httpServletRequest.getAttribute("javax.servlet.request.ssl_session");
+            if (sslSessionAttr instanceof SSLSession) {
+                SSLSession sslSession = (SSLSession) sslSessionAttr;
+                if (fieldMask.collects(MetadataField.TLS_CIPHER)) {
+                    data.setTlsCipher(sslSession.getProtocol());
+                }
+                if (fieldMask.collects(MetadataField.TLS_PROTO)) {
+                    data.setTlsProto(sslSession.getCipherSuite());
+                }
+            }
+        }
+        // Lists default to empty, cleared so that masked out names are not sent at all
+        data.setHeaderNames(null);
+        if (fieldMask.collects(MetadataField.HEADER_NAMES)) {
+            Enumeration<String> headerNames = httpServletRequest.getHeaderNames();
+            if (headerNames != null) {
+                data.setHeaderNames(Collections.list(headerNames));
+            }
+        }
+        data.setCookieNames(null);
+        if (fieldMask.collects(MetadataField.COOKIE_NAMES)) {
+            Cookie[] cookies = httpServletRequest.getCookies();
+            if (cookies != null) {
+                data.setCookieNames(Arrays.stream(cookies)
+                        .map(Cookie::getName)
+                        .collect(Collectors.toList()));
+            }
         }
         if (!umbrellaService.additionalHeadersToCollect().isEmpty()) {
             Map<String, String> additionalHeaders = new HashMap<>();
@@ -199,29 +246,10 @@ public class UmbrellaFilter implements Filter {
         if (httpAction.getResponseHeaders() != null) {
             httpAction.getResponseHeaders().forEach(httpServletResponse::setHeader);
         }
-        if (httpAction.getResponseCookies() != null) {
-            httpAction.getResponseCookies().forEach(cookie -> {
-                Cookie servletCookie = new Cookie(cookie.getName(), cookie.getValue());
-                if (cookie.getDomain() != null) {
-                    servletCookie.setDomain(cookie.getDomain());
-                }
-                if (cookie.getPath() != null) {
-                    servletCookie.setPath(cookie.getPath());
-                }
-                if (cookie.getMaxAge() != null) {
-                    servletCookie.setMaxAge(cookie.getMaxAge().intValue());
-                }
-                if (cookie.getSecure() != null) {
-                    servletCookie.setSecure(cookie.getSecure());
-                }
-                if (cookie.getHttpOnly() != null) {
-                    servletCookie.setHttpOnly(cookie.getHttpOnly());
-                }
-                if (cookie.getSameSite() != null) {
-                    servletCookie.setAttribute("SameSite", cookie.getSameSite());
-                }
+        if (httpAction.getResponseCookies() != null && !httpAction.getResponseCookies().isEmpty()) {
+            for (Cookie servletCookie : getServletCookies(httpAction)) {
                 httpServletResponse.addCookie(servletCookie);
-            });
+            }
         }
         if (httpAction.getResponseStatus() != null) {
             httpServletResponse.setStatus(httpAction.getResponseStatus().intValue());
@@ -229,7 +257,121 @@ public class UmbrellaFilter implements Filter {
 
         // Continue processing if allowed
         if (RequestProcess.ALLOW.equals(httpAction.getRequestProcess())) {
-            filterChain.doFilter(servletRequest, servletResponse);
+            if (data.getEventId() == null) {
+                filterChain.doFilter(servletRequest, servletResponse);
+            } else {
+                doFilterAndReportOutcome(data.getEventId(), httpServletRequest, httpServletResponse, filterChain);
+            }
+        }
+    }
+
+    /**
+     * Cookie fields of an action based on a template are copied once and reused for as long as the template
+     * stays the same. Servlet cookies are mutable, so a new one is still created for every response.
+     */
+    private Cookie[] getServletCookies(HttpAction httpAction) {
+        List<io.dataspray.umbrella.client.model.Cookie> cookies = httpAction.getResponseCookies();
+        CookieTemplate[] cookieTemplates;
+        if (httpAction.getTemplateId() == null) {
+            cookieTemplates = toCookieTemplates(cookies);
+        } else {
+            TemplateCookies cached = templateCookies.get(httpAction.getTemplateId());
+            if (cached == null || cached.source != cookies) {
+                cached = new TemplateCookies(cookies, toCookieTemplates(cookies));
+                templateCookies.put(httpAction.getTemplateId(), cached);
+            }
+            cookieTemplates = cached.cookieTemplates;
+        }
+        Cookie[] servletCookies = new Cookie[cookieTemplates.length];
+        for (int i = 0; i < servletCookies.length; i++) {
+            servletCookies[i] = cookieTemplates[i].toServletCookie();
+        }
+        return servletCookies;
+    }
+
+    private static CookieTemplate[] toCookieTemplates(List<io.dataspray.umbrella.client.model.Cookie> cookies) {
+        CookieTemplate[] cookieTemplates = new CookieTemplate[cookies.size()];
+        for (int i = 0; i < cookieTemplates.length; i++) {
+            cookieTemplates[i] = new CookieTemplate(cookies.get(i));
+        }
+        return cookieTemplates;
+    }
+
+    private boolean hasValidVerdictToken(HttpServletRequest httpServletRequest) {
+        Optional<String> cookieNameOpt = umbrellaService.verdictTokenCookieName();
+        if (cookieNameOpt.isEmpty()) {
+            return false;
+        }
+        Cookie[] cookies = httpServletRequest.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookieNameOpt.get().equals(cookie.getName())) {
+                return umbrellaService.verifyVerdictToken(cookie.getValue(), httpServletRequest.getRemoteAddr());
+            }
+        }
+        return false;
+    }
+
+    private void doFilterAndReportOutcome(
+            String eventId,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse,
+            FilterChain filterChain) throws IOException, ServletException {
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(httpServletRequest, httpServletResponse);
+            failed = false;
+        } finally {
+            if (!failed && httpServletRequest.isAsyncStarted()) {
+                // Response is not final yet, report once the async processing completes
+                httpServletRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        reportOutcome(eventId, httpServletResponse, startedAt, false);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        reportOutcome(eventId, httpServletResponse, startedAt, true);
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                reportOutcome(eventId, httpServletResponse, startedAt, failed);
+            }
+        }
+    }
+
+    private void reportOutcome(String eventId, HttpServletResponse httpServletResponse, long startedAt, boolean failed) {
+        int status = httpServletResponse.getStatus();
+        umbrellaService.httpOutcome(new HttpOutcome()
+                .eventId(eventId)
+                .status((long) status)
+                .responseSize(getResponseSize(httpServletResponse))
+                .handlerLatencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt))
+                .appRejected(status == 401 || status == 403 || status == 429)
+                .failed(failed));
+    }
+
+    private static Long getResponseSize(HttpServletResponse httpServletResponse) {
+        String contentLength = httpServletResponse.getHeader("Content-Length");
+        if (contentLength == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(contentLength);
+        } catch (NumberFormatException ex) {
+            return null;
         }
     }
 
@@ -286,4 +428,65 @@ public class UmbrellaFilter implements Filter {
 
         return valueOpt;
     }
+
+    private static class TemplateCookies {
+        private final List<io.dataspray.umbrella.client.model.Cookie> source;
+        private final CookieTemplate[] cookieTemplates;
+
+        private TemplateCookies(List<io.dataspray.umbrella.client.model.Cookie> source, CookieTemplate[] cookieTemplates) {
+            this.source = source;
+            this.cookieTemplates = cookieTemplates;
+        }
+    }
+
+    private static class CookieTemplate {
+        private final String name;
+        private final String value;
+        /** Only set if the template sets a domain */
+        private final String domain;
+        /** Only set if the template sets a path */
+        private final String path;
+        /** Only set if the template sets a max age */
+        private final Integer maxAge;
+        /** Only set if the template sets the secure flag */
+        private final Boolean secure;
+        /** Only set if the template sets the HttpOnly flag */
+        private final Boolean httpOnly;
+        /** Only set if the template sets a SameSite policy */
+        private final String sameSite;
+
+        private CookieTemplate(io.dataspray.umbrella.client.model.Cookie cookie) {
+            this.name = cookie.getName();
+            this.value = cookie.getValue();
+            this.domain = cookie.getDomain();
+            this.path = cookie.getPath();
+            this.maxAge = cookie.getMaxAge() == null ? null : cookie.getMaxAge().intValue();
+            this.secure = cookie.getSecure();
+            this.httpOnly = cookie.getHttpOnly();
+            this.sameSite = cookie.getSameSite();
+        }
+
+        private Cookie toServletCookie() {
+            Cookie servletCookie = new Cookie(name, value);
+            if (domain != null) {
+                servletCookie.setDomain(domain);
+            }
+            if (path != null) {
+                servletCookie.setPath(path);
+            }
+            if (maxAge != null) {
+                servletCookie.setMaxAge(maxAge);
+            }
+            if (secure != null) {
+                servletCookie.setSecure(secure);
+            }
+            if (httpOnly != null) {
+                servletCookie.setHttpOnly(httpOnly);
+            }
+            if (sameSite != null) {
+                servletCookie.setAttribute("SameSite", sameSite);
+            }
+            return servletCookie;
+        }
+    }
 }
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.webflux;
+
+import io.dataspray.umbrella.client.model.Cookie;
+import io.dataspray.umbrella.client.model.HttpAction;
+import io.dataspray.umbrella.client.model.HttpMetadata;
+import io.dataspray.umbrella.client.model.HttpOutcome;
+import io.dataspray.umbrella.client.model.MetadataField;
+import io.dataspray.umbrella.client.model.RequestProcess;
+import io.dataspray.umbrella.integration.tomcat.FieldMask;
+import io.dataspray.umbrella.integration.tomcat.UmbrellaOptions;
+import io.dataspray.umbrella.integration.tomcat.UmbrellaService;
+import org.springframework.core.SpringVersion;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Spring WebFlux counterpart of the servlet {@code UmbrellaFilter} for Netty and other event-loop servers.
+ * <p>
+ * The check is issued via {@link UmbrellaService#httpEventAsync} so the event loop is never blocked while
+ * waiting on the Umbrella API. Properties are read from the given map, falling back to system properties
+ * and environment variables, using the same names as the servlet filter's init parameters.
+ */
+public class UmbrellaWebFilter implements WebFilter, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(UmbrellaWebFilter.class.getCanonicalName());
+    private final UmbrellaService umbrellaService;
+    final boolean enabled;
+    /** Response cookies built for action templates, by template id */
+    private final ConcurrentHashMap<String, TemplateCookies> templateCookies = new ConcurrentHashMap<>();
+
+    public UmbrellaWebFilter() {
+        this(Collections.emptyMap());
+    }
+
+    public UmbrellaWebFilter(Map<String, String> properties) {
+        this(UmbrellaService.createShared(), properties);
+    }
+
+    UmbrellaWebFilter(UmbrellaService umbrellaService, Map<String, String> properties) {
+        this.umbrellaService = umbrellaService;
+
+        // Enabled property
+        enabled = getProperty("enabled", "umbrella.enabled", "UMBRELLA_ENABLED", properties)
+                .map(enabledStr -> !"false".equalsIgnoreCase(enabledStr) && !"0".equals(enabledStr))
+                .orElse(true);
+        if (!enabled) {
+            log.log(Level.INFO, "Umbrella WebFilter is disabled via configuration");
+            return;
+        }
+
+        // Organization key property
+        String orgName = getProperty("org", "umbrella.org", "UMBRELLA_ORG", properties)
+                .orElseThrow(() -> new IllegalArgumentException("Umbrella Organization name property is missing"));
+
+        // Api key property
+        String apiKey = getProperty("api-key", "umbrella.api.key", "UMBRELLA_API_KEY", properties)
+                .orElseThrow(() -> new IllegalArgumentException("Umbrella API key property is missing"));
+
+        // Endpoint URL property, comma-separated for multiple endpoints
+        List<String> endpointUrls = getProperty("endpoint-url", "umbrella.endpoint.url", "UMBRELLA_ENDPOINT_URL", properties)
+                .map(endpointUrlsStr -> Arrays.stream(endpointUrlsStr.split(","))
+                        .map(String::trim)
+                        .filter(Predicate.not(String::isEmpty))
+                        .collect(Collectors.toList()))
+                .orElse(Collections.emptyList());
+        if (!endpointUrls.isEmpty()) {
+            log.log(Level.INFO, "Umbrella using endpoints: {0}", endpointUrls);
+        }
+
+        // Config snapshot path property, only opted into as the snapshot is trusted on startup
+        Optional<Path> configSnapshotPath = getProperty("config-snapshot-path", "umbrella.config.snapshot.path", "UMBRELLA_CONFIG_SNAPSHOT_PATH", properties)
+                .map(Path::of);
+
+        // Config watch property, off until the server supports watching
+        boolean configWatch = getProperty("config-watch", "umbrella.config.watch", "UMBRELLA_CONFIG_WATCH", properties)
+                .map(configWatchStr -> "true".equalsIgnoreCase(configWatchStr) || "1".equals(configWatchStr))
+                .orElse(false);
+
+        // Verdict store path property
+        Optional<Path> verdictStorePath = getProperty("verdict-store-path", "umbrella.verdict.store.path", "UMBRELLA_VERDICT_STORE_PATH", properties)
+                .map(Path::of);
+
+        // Overload protection property
+        boolean overloadProtection = getProperty("overload-protection", "umbrella.overload.protection", "UMBRELLA_OVERLOAD_PROTECTION", properties)
+                .map(overloadProtectionStr -> "true".equalsIgnoreCase(overloadProtectionStr) || "1".equals(overloadProtectionStr))
+                .orElse(false);
+
+        umbrellaService.init(
+                orgName,
+                apiKey,
+                getServerIdentifierParts(),
+                endpointUrls,
+                new UmbrellaOptions()
+                        .configSnapshotPath(configSnapshotPath.orElse(null))
+                        .configWatch(configWatch)
+                        .verdictStorePath(verdictStorePath.orElse(null))
+                        .overloadProtection(overloadProtection)
+                        // Event loop servers have no request thread pool to watch
+                        .overloadMaxThreadPoolUtilization(0));
+
+        log.log(Level.INFO, "Umbrella enabled successfully");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        if (!enabled) {
+            log.log(Level.FINEST, "Skipping due to filter being disabled");
+            return chain.filter(exchange);
+        }
+
+        // Counted for overload protection until the rest of the chain has handled the request
+        return Mono.defer(() -> {
+                    umbrellaService.requestStarted();
+                    return filterStarted(exchange, chain);
+                })
+                .doFinally(signalType -> umbrellaService.requestFinished());
+    }
+
+    private Mono<Void> filterStarted(ServerWebExchange exchange, WebFilterChain chain) {
+        // Skip the remote check for clients holding a valid verdict token, possibly issued via another node
+        if (hasValidVerdictToken(exchange.getRequest())) {
+            log.log(Level.FINEST, "Skipping due to valid verdict token");
+            return chain.filter(exchange);
+        }
+
+        // Prepare request
+        HttpMetadata data = extractMetadata(exchange.getRequest());
+
+        // Perform check without holding up the event loop
+        CompletableFuture<HttpAction> httpActionFuture = umbrellaService.httpEventAsync(data);
+        Mono<HttpAction> httpActionMono = httpActionFuture.isDone()
+                ? Mono.just(httpActionFuture.join())
+                // Hop off the Umbrella client's I/O thread before running the rest of the chain
+                : Mono.fromFuture(httpActionFuture).publishOn(Schedulers.parallel());
+
+        return httpActionMono.flatMap(httpAction -> {
+
+            // Apply action
+            applyAction(httpAction, exchange);
+
+            // Continue processing if allowed
+            if (!RequestProcess.ALLOW.equals(httpAction.getRequestProcess())) {
+                return exchange.getResponse().setComplete();
+            }
+            if (data.getEventId() == null) {
+                return chain.filter(exchange);
+            }
+            long startedAt = System.nanoTime();
+            return chain.filter(exchange)
+                    .doFinally(signalType -> reportOutcome(data.getEventId(), exchange.getResponse(), startedAt, signalType == SignalType.ON_ERROR));
+        });
+    }
+
+    private boolean hasValidVerdictToken(ServerHttpRequest request) {
+        Optional<String> cookieNameOpt = umbrellaService.verdictTokenCookieName();
+        if (cookieNameOpt.isEmpty()) {
+            return false;
+        }
+        HttpCookie cookie = request.getCookies().getFirst(cookieNameOpt.get());
+        if (cookie == null) {
+            return false;
+        }
+        return umbrellaService.verifyVerdictToken(cookie.getValue(), getRemoteIp(request));
+    }
+
+    HttpMetadata extractMetadata(ServerHttpRequest request) {
+        // Collect only the fields the server asks for
+        FieldMask fieldMask = umbrellaService.fieldMask();
+        HttpHeaders headers = request.getHeaders();
+        HttpMetadata data = new HttpMetadata();
+        data.setTs(Instant.now());
+        data.setUri(request.getPath().value());
+        data.setMethod(request.getMethod().name());
+        data.setIp(getRemoteIp(request));
+        if (fieldMask.collects(MetadataField.PROTO)) {
+            data.setProto(request.getURI().getScheme());
+        }
+        if (fieldMask.collects(MetadataField.PORT) && request.getRemoteAddress() != null) {
+            data.setPort((long) request.getRemoteAddress().getPort());
+        }
+        for (FieldMask.HeaderField headerField : fieldMask.getHeaderFields()) {
+            headerField.set(data, headers.getFirst(headerField.getHeaderName()));
+        }
+        if (fieldMask.collects(MetadataField.H_AUTH_PREFIX) || fieldMask.collects(MetadataField.H_AUTH_SIZE)) {
+            String headerAuthorization = headers.getFirst("Authorization");
+            if (headerAuthorization != null) {
+                String[] headerAuthorizationSplit = headerAuthorization.split(" +");
+                if (headerAuthorizationSplit.length > 1 && fieldMask.collects(MetadataField.H_AUTH_PREFIX)) {
+                    data.sethAuthPrefix(headerAuthorizationSplit[0]);
+                }
+                if (fieldMask.collects(MetadataField.H_AUTH_SIZE)) {
+                    data.sethAuthSize((long) headerAuthorization.length());
+                }
+            }
+        }
+        if (fieldMask.collects(MetadataField.CONTENT_LENGTH)) {
+            data.setContentLength(headers.getContentLength());
+        }
+        // Lists default to empty, cleared so that masked out names are not sent at all
+        data.setHeaderNames(fieldMask.collects(MetadataField.HEADER_NAMES)
+                ? new ArrayList<>(headers.keySet())
+                : null);
+        data.setCookieNames(null);
+        if (fieldMask.collects(MetadataField.COOKIE_NAMES) && !request.getCookies().isEmpty()) {
+            data.setCookieNames(new ArrayList<>(request.getCookies().keySet()));
+        }
+        if (!umbrellaService.additionalHeadersToCollect().isEmpty()) {
+            Map<String, String> additionalHeaders = new HashMap<>();
+            data.additionalHeaders(additionalHeaders);
+            umbrellaService.additionalHeadersToCollect().forEach(header -> {
+                String value = headers.getFirst(header);
+                if (value != null) {
+                    additionalHeaders.put(header, value);
+                }
+            });
+        }
+        return data;
+    }
+
+    private static String getRemoteIp(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return null;
+        }
+        return remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : remoteAddress.getHostString();
+    }
+
+    private void applyAction(HttpAction httpAction, ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (httpAction.getRequestMetadata() != null) {
+            exchange.getAttributes().putAll(httpAction.getRequestMetadata());
+        }
+        if (httpAction.getResponseHeaders() != null) {
+            httpAction.getResponseHeaders().forEach(response.getHeaders()::set);
+        }
+        if (httpAction.getResponseCookies() != null && !httpAction.getResponseCookies().isEmpty()) {
+            getResponseCookies(httpAction).forEach(response::addCookie);
+        }
+        if (httpAction.getResponseStatus() != null) {
+            response.setStatusCode(HttpStatusCode.valueOf(httpAction.getResponseStatus().intValue()));
+        }
+    }
+
+    /**
+     * Cookies of an action based on a template are built once and reused for as long as the template
+     * stays the same, which is safe as response cookies and the list holding them are immutable.
+     */
+    private List<ResponseCookie> getResponseCookies(HttpAction httpAction) {
+        List<Cookie> cookies = httpAction.getResponseCookies();
+        if (httpAction.getTemplateId() == null) {
+            return toResponseCookies(cookies);
+        }
+        TemplateCookies cached = templateCookies.get(httpAction.getTemplateId());
+        if (cached == null || cached.source != cookies) {
+            cached = new TemplateCookies(cookies, toResponseCookies(cookies));
+            templateCookies.put(httpAction.getTemplateId(), cached);
+        }
+        return cached.responseCookies;
+    }
+
+    private static List<ResponseCookie> toResponseCookies(List<Cookie> cookies) {
+        List<ResponseCookie> responseCookies = new ArrayList<>(cookies.size());
+        for (Cookie cookie : cookies) {
+            ResponseCookie.ResponseCookieBuilder responseCookie = ResponseCookie.from(cookie.getName(), cookie.getValue());
+            if (cookie.getDomain() != null) {
+                responseCookie.domain(cookie.getDomain());
+            }
+            if (cookie.getPath() != null) {
+                responseCookie.path(cookie.getPath());
+            }
+            if (cookie.getMaxAge() != null) {
+                responseCookie.maxAge(Duration.ofSeconds(cookie.getMaxAge()));
+            }
+            if (cookie.getSecure() != null) {
+                responseCookie.secure(cookie.getSecure());
+            }
+            if (cookie.getHttpOnly() != null) {
+                responseCookie.httpOnly(cookie.getHttpOnly());
+            }
+            if (cookie.getSameSite() != null) {
+                responseCookie.sameSite(cookie.getSameSite());
+            }
+            responseCookies.add(responseCookie.build());
+        }
+        return Collections.unmodifiableList(responseCookies);
+    }
+
+    private void reportOutcome(String eventId, ServerHttpResponse response, long startedAt, boolean failed) {
+        int status = response.getStatusCode() == null ? 200 : response.getStatusCode().value();
+        long contentLength = response.getHeaders().getContentLength();
+        umbrellaService.httpOutcome(new HttpOutcome()
+                .eventId(eventId)
+                .status((long) status)
+                .responseSize(contentLength >= 0 ? contentLength : null)
+                .handlerLatencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt))
+                .appRejected(status == 401 || status == 403 || status == 429)
+                .failed(failed));
+    }
+
+    @Override
+    public void close() {
+        if (enabled) {
+            umbrellaService.shutdown();
+        }
+    }
+
+    private List<String> getServerIdentifierParts() {
+        List<String> uniqueIdentifierParts = new ArrayList<>();
+
+        // Host name of the server
+        try {
+            uniqueIdentifierParts.add(InetAddress.getLocalHost().getHostName());
+        } catch (UnknownHostException ignored) {
+        }
+
+        // Framework info (e.g. Spring WebFlux/6.1.14)
+        String springVersion = SpringVersion.getVersion();
+        uniqueIdentifierParts.add(springVersion == null ? "Spring WebFlux" : "Spring WebFlux/" + springVersion);
+
+        return uniqueIdentifierParts;
+    }
+
+    private Optional<String> getProperty(
+            String nameFromMap,
+            String nameFromProperty,
+            String nameFromEnv,
+            Map<String, String> properties) {
+        Optional<String> valueOpt = Optional.ofNullable(properties.get(nameFromMap))
+                .filter(Predicate.not(String::isBlank));
+
+        if (valueOpt.isEmpty()) {
+            valueOpt = Optional.ofNullable(System.getProperty(nameFromProperty))
+                    .filter(Predicate.not(String::isBlank));
+        }
+
+        if (valueOpt.isEmpty()) {
+            valueOpt = Optional.ofNullable(System.getenv(nameFromEnv))
+                    .filter(Predicate.not(String::isBlank));
+        }
+
+        return valueOpt;
+    }
+
+    private static class TemplateCookies {
+        private final List<Cookie> source;
+        private final List<ResponseCookie> responseCookies;
+
+        private TemplateCookies(List<Cookie> source, List<ResponseCookie> responseCookies) {
+            this.source = source;
+            this.responseCookies = responseCookies;
+        }
+    }
+}
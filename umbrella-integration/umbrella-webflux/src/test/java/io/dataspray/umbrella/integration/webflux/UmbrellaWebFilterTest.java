@@ -0,0 +1,288 @@
+/*
+ * Copyright 2026 Matus Faro
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.dataspray.umbrella.integration.webflux;
+
+import io.dataspray.umbrella.client.JSON;
+import io.dataspray.umbrella.client.model.*;
+import io.dataspray.umbrella.integration.tomcat.FieldMask;
+import io.dataspray.umbrella.integration.tomcat.UmbrellaService;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UmbrellaWebFilterTest {
+
+    private UmbrellaService umbrellaService;
+    private final AtomicBoolean chainCalled = new AtomicBoolean();
+    private final WebFilterChain chain = exchange -> {
+        chainCalled.set(true);
+        return Mono.empty();
+    };
+
+    @BeforeEach
+    void setUp() {
+        umbrellaService = mock(UmbrellaService.class);
+        when(umbrellaService.fieldMask()).thenReturn(FieldMask.ALL);
+    }
+
+    @Test
+    void testInitNoApiKey() {
+        assertThrows(IllegalArgumentException.class, () -> new UmbrellaWebFilter(umbrellaService, Map.of("org", "org1")));
+        verify(umbrellaService, times(0)).init(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testInitDisabled() {
+        UmbrellaWebFilter umbrellaWebFilter = new UmbrellaWebFilter(umbrellaService, Map.of("enabled", "false"));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+        umbrellaWebFilter.filter(exchange, chain).block();
+
+        assertFalse(umbrellaWebFilter.enabled);
+        assertTrue(chainCalled.get());
+        verify(umbrellaService, times(0)).init(any(), any(), any(), any(), any());
+        verify(umbrellaService, times(0)).httpEventAsync(any());
+    }
+
+    @Test
+    void testInitMultipleEndpoints() {
+        new UmbrellaWebFilter(umbrellaService, Map.of(
+                "org", "org1",
+                "api-key", "apiKey",
+                "endpoint-url", "https://a.example.com, https://b.example.com"));
+
+        verify(umbrellaService, times(1)).init(
+                eq("org1"),
+                eq("apiKey"),
+                any(),
+                eq(List.of("https://a.example.com", "https://b.example.com")),
+                any());
+    }
+
+    @Test
+    void testFilterCountsRequestUntilChainCompletes() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.httpEventAsync(any())).thenReturn(CompletableFuture.completedFuture(new HttpAction()
+                .requestProcess(RequestProcess.ALLOW)));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+        Mono<Void> result = umbrellaWebFilter.filter(exchange, chain);
+        verify(umbrellaService, times(0)).requestStarted();
+        result.block();
+
+        assertTrue(chainCalled.get());
+        verify(umbrellaService, times(1)).requestStarted();
+        verify(umbrellaService, times(1)).requestFinished();
+    }
+
+    @Test
+    void testFilterAllow() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.httpEventAsync(any())).thenReturn(CompletableFuture.completedFuture(new HttpAction()
+                .requestProcess(RequestProcess.ALLOW)
+                .requestMetadata(Map.of("attrKey", "attrVal"))
+                .responseHeaders(Map.of("X-Umbrella", "checked"))));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/path?q=1")
+                .header("User-Agent", "test-agent")
+                .header("Authorization", "Bearer token")
+                .cookie(new HttpCookie("session", "abc")));
+
+        umbrellaWebFilter.filter(exchange, chain).block();
+
+        assertTrue(chainCalled.get());
+        assertEquals("attrVal", exchange.getAttribute("attrKey"));
+        assertEquals("checked", exchange.getResponse().getHeaders().getFirst("X-Umbrella"));
+        ArgumentCaptor<HttpMetadata> metadataCaptor = ArgumentCaptor.forClass(HttpMetadata.class);
+        verify(umbrellaService).httpEventAsync(metadataCaptor.capture());
+        HttpMetadata metadata = metadataCaptor.getValue();
+        assertEquals("/path", metadata.getUri());
+        assertEquals("GET", metadata.getMethod());
+        assertEquals("test-agent", metadata.gethUserAgent());
+        assertEquals("Bearer", metadata.gethAuthPrefix());
+        assertEquals(List.of("session"), metadata.getCookieNames());
+    }
+
+    @Test
+    void testFilterBlock() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.httpEventAsync(any())).thenReturn(CompletableFuture.completedFuture(new HttpAction()
+                .requestProcess(RequestProcess.BLOCK)
+                .responseStatus(403L)
+                .responseCookies(List.of(new Cookie()
+                        .name("challenge")
+                        .value("123")
+                        .maxAge(60L)
+                        .httpOnly(true)))));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+        umbrellaWebFilter.filter(exchange, chain).block();
+
+        assertFalse(chainCalled.get());
+        assertEquals(HttpStatus.FORBIDDEN, exchange.getResponse().getStatusCode());
+        ResponseCookie cookie = exchange.getResponse().getCookies().getFirst("challenge");
+        assertNotNull(cookie);
+        assertEquals("123", cookie.getValue());
+        assertEquals(Duration.ofSeconds(60), cookie.getMaxAge());
+        assertTrue(cookie.isHttpOnly());
+    }
+
+    @Test
+    void testFilterTemplateCookiesReused() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        HttpAction template = new HttpAction()
+                .templateId("challenge")
+                .requestProcess(RequestProcess.BLOCK)
+                .responseCookies(List.of(new Cookie()
+                        .name("challenge")
+                        .value("123")));
+        when(umbrellaService.httpEventAsync(any())).thenReturn(CompletableFuture.completedFuture(template));
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+        umbrellaWebFilter.filter(first, chain).block();
+        umbrellaWebFilter.filter(second, chain).block();
+
+        assertSame(first.getResponse().getCookies().getFirst("challenge"),
+                second.getResponse().getCookies().getFirst("challenge"));
+    }
+
+    @Test
+    void testFilterReportsOutcome() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.httpEventAsync(any())).thenAnswer(invocation -> {
+            invocation.<HttpMetadata>getArgument(0).setEventId("event1");
+            return CompletableFuture.completedFuture(new HttpAction()
+                    .requestProcess(RequestProcess.ALLOW));
+        });
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+        umbrellaWebFilter.filter(exchange, ex -> {
+            ex.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            return Mono.empty();
+        }).block();
+
+        ArgumentCaptor<HttpOutcome> outcomeCaptor = ArgumentCaptor.forClass(HttpOutcome.class);
+        verify(umbrellaService, times(1)).httpOutcome(outcomeCaptor.capture());
+        assertEquals("event1", outcomeCaptor.getValue().getEventId());
+        assertEquals(429L, outcomeCaptor.getValue().getStatus());
+        assertTrue(outcomeCaptor.getValue().getAppRejected());
+        assertFalse(outcomeCaptor.getValue().getFailed());
+    }
+
+    @Test
+    void testFilterValidVerdictToken() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.verdictTokenCookieName()).thenReturn(Optional.of("umbrella_vt"));
+        when(umbrellaService.verifyVerdictToken(eq("token"), any())).thenReturn(true);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/")
+                .cookie(new HttpCookie("umbrella_vt", "token")));
+
+        umbrellaWebFilter.filter(exchange, chain).block();
+
+        assertTrue(chainCalled.get());
+        verify(umbrellaService, times(0)).httpEventAsync(any());
+    }
+
+    @Test
+    void testFilterInvalidVerdictToken() {
+        UmbrellaWebFilter umbrellaWebFilter = initFilter();
+        when(umbrellaService.verdictTokenCookieName()).thenReturn(Optional.of("umbrella_vt"));
+        when(umbrellaService.httpEventAsync(any())).thenReturn(CompletableFuture.completedFuture(new HttpAction()
+                .requestProcess(RequestProcess.BLOCK)));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/")
+                .cookie(new HttpCookie("umbrella_vt", "forged")));
+
+        umbrellaWebFilter.filter(exchange, chain).block();
+
+        assertFalse(chainCalled.get());
+        verify(umbrellaService, times(1)).verifyVerdictToken(eq("forged"), any());
+        verify(umbrellaService, times(1)).httpEventAsync(any());
+    }
+
+    @Test
+    void testFilterDoesNotBlockWhileWaiting(@TempDir Path tempDir) throws Exception {
+        try (MockWebServer umbrellaApi = new MockWebServer()) {
+            umbrellaApi.enqueue(new MockResponse()
+                    .setBody(JSON.getGson().toJson(new PingResponse()
+                            .config(new Config()
+                                    .mode(OperationMode.BLOCKING)
+                                    .timeoutMs(5000L)))));
+            umbrellaApi.enqueue(new MockResponse()
+                    .setBodyDelay(500, TimeUnit.MILLISECONDS)
+                    .setBody(JSON.getGson().toJson(new HttpEventResponse()
+                            .action(new HttpAction()
+                                    .requestProcess(RequestProcess.BLOCK)
+                                    .responseStatus(403L)))));
+            umbrellaApi.start();
+            UmbrellaWebFilter umbrellaWebFilter = new UmbrellaWebFilter(UmbrellaService.create(), Map.of(
+                    "org", "org1",
+                    "api-key", "apiKey",
+                    "endpoint-url", umbrellaApi.url("/").toString(),
+                    "config-snapshot-path", tempDir.resolve("config").toString(),
+                    "config-watch", "false"));
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+            long startedAt = System.nanoTime();
+            CompletableFuture<Void> result = umbrellaWebFilter.filter(exchange, chain).toFuture();
+            long subscribeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+            assertTrue(subscribeMs < 400, "Subscribing took " + subscribeMs + "ms");
+            assertFalse(result.isDone());
+            result.get(5, TimeUnit.SECONDS);
+            assertFalse(chainCalled.get());
+            assertEquals(HttpStatus.FORBIDDEN, exchange.getResponse().getStatusCode());
+            umbrellaWebFilter.close();
+        }
+    }
+
+    private UmbrellaWebFilter initFilter() {
+        when(umbrellaService.additionalHeadersToCollect()).thenReturn(Collections.emptyList());
+        return new UmbrellaWebFilter(umbrellaService, Map.of(
+                "org", "org1",
+                "api-key", "apiKey"));
+    }
+}